@@ -0,0 +1,137 @@
+package wtf.choco.dragoneggdrop.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shared utilities for benchmarks operating on the particle shapes bundled with the plugin.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class BenchmarkSupport {
+
+    private static Path shapeDirectory;
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Extract a bundled particle shape to a temporary file so that it may be loaded the
+     * same way the plugin loads shapes from its particles directory.
+     *
+     * @param id the id of the bundled shape (its file name without extension)
+     *
+     * @return the extracted file
+     *
+     * @throws IOException if the shape could not be extracted
+     */
+    @NotNull
+    static synchronized File extractShape(@NotNull String id) throws IOException {
+        if (shapeDirectory == null) {
+            shapeDirectory = Files.createTempDirectory("dragoneggdrop-benchmark");
+            shapeDirectory.toFile().deleteOnExit();
+        }
+
+        Path target = shapeDirectory.resolve(id + ".json");
+
+        try (InputStream in = BenchmarkSupport.class.getResourceAsStream("/particles/" + id + ".json")) {
+            if (in == null) {
+                throw new IOException("No bundled particle shape with id \"" + id + "\"");
+            }
+
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        File file = target.toFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Extract a bundled particle shape in which the conditions of every equation are replaced
+     * by a single condition on the name of the world. The condition is met in the named world,
+     * so the shape animates exactly like the bundled shape, but it is no longer deterministic.
+     * Sessions of the extracted shape evaluate their expressions every tick instead of
+     * replaying precomputed keyframes.
+     *
+     * @param id the id of the bundled shape (its file name without extension)
+     * @param worldName the name of the world in which the shape will be animated
+     *
+     * @return the extracted file
+     *
+     * @throws IOException if the shape could not be extracted
+     */
+    @NotNull
+    static File extractLiveShape(@NotNull String id, @NotNull String worldName) throws IOException {
+        File bundled = extractShape(id);
+        JsonObject root;
+
+        try (Reader reader = Files.newBufferedReader(bundled.toPath(), StandardCharsets.UTF_8)) {
+            root = new JsonParser().parse(reader).getAsJsonObject();
+        }
+
+        JsonObject arguments = new JsonObject();
+        arguments.addProperty("value", worldName);
+
+        JsonObject condition = new JsonObject();
+        condition.addProperty("name", "world");
+        condition.add("arguments", arguments);
+
+        for (JsonElement equation : root.getAsJsonArray("equations")) {
+            JsonArray conditions = new JsonArray();
+            conditions.add(condition);
+            equation.getAsJsonObject().add("conditions", conditions);
+        }
+
+        File file = new File(bundled.getParentFile(), id + "_live.json");
+        file.deleteOnExit();
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(root.toString());
+        }
+
+        return file;
+    }
+
+    /**
+     * Read every x and z expression string declared by a particle shape file.
+     *
+     * @param file the shape file
+     *
+     * @return all expression strings in declaration order
+     *
+     * @throws IOException if the file could not be read
+     */
+    @NotNull
+    static List<@NotNull String> readExpressions(@NotNull File file) throws IOException {
+        List<String> expressions = new ArrayList<>();
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject root = new JsonParser().parse(reader).getAsJsonObject();
+
+            for (JsonElement equation : root.getAsJsonArray("equations")) {
+                JsonObject equationObject = equation.getAsJsonObject();
+                expressions.add(equationObject.get("x").getAsString());
+                expressions.add(equationObject.get("z").getAsString());
+            }
+        }
+
+        return expressions;
+    }
+
+}
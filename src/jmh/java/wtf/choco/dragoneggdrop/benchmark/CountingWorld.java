@@ -0,0 +1,124 @@
+package wtf.choco.dragoneggdrop.benchmark;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A stubbed {@link World} that counts calls to {@code spawnParticle()} rather than
+ * rendering anything. The world may be populated with stubbed {@link Player Players}
+ * standing on the x axis (at the origin by default) whose {@code spawnParticle()} calls are counted as well.
+ * All other methods return a default value (null, 0 or false) with the exception of a
+ * handful of identity methods required by particle sessions.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class CountingWorld implements InvocationHandler {
+
+    private long spawnParticleCalls = 0;
+
+    private final String name;
+    private final UUID uuid = UUID.randomUUID();
+    private final World world;
+    private final List<@NotNull Player> players;
+    private final double viewerX;
+
+    CountingWorld(@NotNull String name, int players, double viewerX) {
+        this.name = name;
+        this.viewerX = viewerX;
+        this.world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, this);
+        this.players = new ArrayList<>(players);
+
+        for (int i = 0; i < players; i++) {
+            this.players.add((Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class }, this::invokePlayer));
+        }
+    }
+
+    CountingWorld(@NotNull String name, int players) {
+        this(name, players, 0.0);
+    }
+
+    CountingWorld(@NotNull String name) {
+        this(name, 0);
+    }
+
+    /**
+     * Get the stubbed world instance.
+     *
+     * @return the world
+     */
+    @NotNull
+    World getWorld() {
+        return world;
+    }
+
+    /**
+     * Get and reset the amount of spawnParticle() calls made since the last drain.
+     *
+     * @return the amount of calls
+     */
+    long drainSpawnParticleCalls() {
+        long calls = spawnParticleCalls;
+        this.spawnParticleCalls = 0;
+        return calls;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "spawnParticle":
+                this.spawnParticleCalls++;
+                return null;
+            case "getName": return name;
+            case "getUID": return uuid;
+            case "getPlayers": return Collections.unmodifiableList(players);
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            case "toString": return "CountingWorld[" + name + "]";
+            default: return defaultValue(method.getReturnType());
+        }
+    }
+
+    private Object invokePlayer(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "spawnParticle":
+                this.spawnParticleCalls++;
+                return null;
+            case "getWorld": return world;
+            case "getLocation":
+                if (args == null || args.length == 0) {
+                    return new Location(world, viewerX, 64.0, 0.0);
+                }
+
+                Location location = (Location) args[0];
+                location.setWorld(world);
+                location.setX(viewerX);
+                location.setY(64.0);
+                location.setZ(0.0);
+                return location;
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            case "toString": return "CountingPlayer[" + name + "]";
+            default: return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static Object defaultValue(@NotNull Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+}
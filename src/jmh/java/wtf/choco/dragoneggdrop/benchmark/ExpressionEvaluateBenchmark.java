@@ -0,0 +1,77 @@
+package wtf.choco.dragoneggdrop.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionBackend;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+import wtf.choco.dragoneggdrop.utils.math.MathExpression;
+
+/**
+ * Measures the evaluation of a single representative expression under each backend. The
+ * variables cycle through a full revolution of theta so results are not skewed by a
+ * single input.
+ *
+ * @author Parker Hawke - Choco
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExpressionEvaluateBenchmark {
+
+    private static final int VARIABLE_SETS = 72; // One full revolution at a theta increment of 5 degrees
+
+    @Param({
+        "0",
+        "cos(theta) * 1.2",
+        "sin(theta) * (100 / t)",
+        "x * cos(theta) + z * sin(theta) - t / 2",
+        "sqrt(abs(x - z)) * log(t + 1) + random"
+    })
+    public String expression;
+
+    @Param({ "INTERPRETED", "GENERATED" })
+    public ExpressionBackend backend;
+
+    private MathExpression compiled;
+    private ParticleVariables[] variables;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        ExpressionUtils.setBackend(backend);
+        ExpressionUtils.clearCache();
+
+        this.compiled = ExpressionUtils.parseExpression(expression);
+        this.variables = new ParticleVariables[VARIABLE_SETS];
+        for (int i = 0; i < VARIABLE_SETS; i++) {
+            this.variables[i] = new ParticleVariables(0.5, 180.0 - i, 0.5, i + 1, i * 5.0);
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        ParticleVariables current = variables[index];
+        if (++index == VARIABLE_SETS) {
+            this.index = 0;
+        }
+
+        return compiled.evaluate(current);
+    }
+
+}
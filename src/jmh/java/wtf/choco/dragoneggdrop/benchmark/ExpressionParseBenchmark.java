@@ -0,0 +1,65 @@
+package wtf.choco.dragoneggdrop.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionBackend;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+
+/**
+ * Measures the cost of parsing the expressions declared by each bundled particle shape,
+ * as well as loading the shape file as a whole.
+ *
+ * @author Parker Hawke - Choco
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExpressionParseBenchmark {
+
+    @Param({ "ball", "helix", "open_end_helix" })
+    public String shape;
+
+    private File shapeFile;
+    private String[] expressions;
+
+    @Setup
+    public void setup() throws IOException {
+        // The generated backend caches by source, which would reduce this to a map lookup
+        ExpressionUtils.setBackend(ExpressionBackend.INTERPRETED);
+
+        this.shapeFile = BenchmarkSupport.extractShape(shape);
+        this.expressions = BenchmarkSupport.readExpressions(shapeFile).toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void parseExpressions(Blackhole blackhole) {
+        for (String expression : expressions) {
+            blackhole.consume(ExpressionUtils.parseExpression(expression));
+        }
+    }
+
+    @Benchmark
+    public ParticleShapeDefinition loadShape() {
+        return ParticleShapeDefinition.fromFile(shapeFile);
+    }
+
+}
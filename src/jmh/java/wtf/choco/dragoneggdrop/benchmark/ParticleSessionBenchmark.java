@@ -0,0 +1,150 @@
+package wtf.choco.dragoneggdrop.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+import wtf.choco.dragoneggdrop.particle.ParticleEmitterBukkit;
+import wtf.choco.dragoneggdrop.particle.ParticleFrameBuffer;
+import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionBackend;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+
+/**
+ * Measures {@link AnimatedParticleSession#tick()} for each bundled particle shape against
+ * a {@link CountingWorld}, both spawning particles immediately in the world and buffering
+ * them in a {@link ParticleFrameBuffer} flushed to stubbed viewers every tick. Viewers stand
+ * either near the shape, where frames are spawned once in the world, or beyond the reduced
+ * detail distance, where frames are emitted to each viewer individually. The amount
+ * of spawnParticle() calls is reported as a secondary result so that changes in emitted
+ * particles are visible next to changes in tick time.
+ * <p>
+ * All bundled shapes are deterministic, so their sessions replay precomputed keyframes
+ * regardless of the expression backend. The KEYFRAMES evaluation measures that replay.
+ * The INTERPRETED and GENERATED evaluations instead animate a copy of the shape made
+ * non-deterministic by a condition on the world name (see
+ * {@link BenchmarkSupport#extractLiveShape(String, String)}), so that its expressions
+ * are evaluated every tick by the given {@link ExpressionBackend}.
+ * <p>
+ * Sessions animate from the shape's start height down to the bottom of the world. Once a
+ * session should stop, it is replaced by a new session so that every measured tick is part
+ * of a live animation rather than of a session ticked far beyond its end.
+ *
+ * @author Parker Hawke - Choco
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParticleSessionBenchmark {
+
+    @Param({ "ball", "helix", "open_end_helix" })
+    public String shape;
+
+    @Param({ "KEYFRAMES", "INTERPRETED", "GENERATED" }) // KEYFRAMES or an ExpressionBackend
+    public String evaluation;
+
+    @Param({ "10" })
+    public int viewers;
+
+    @Param({ "0", "256" }) // Within and beyond the reduced detail distance
+    public double viewerDistance;
+
+    private ParticleShapeDefinition definition;
+    private CountingWorld world;
+    private ParticleFrameBuffer buffer;
+    private AnimatedParticleSession session;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ExpressionUtils.clearCache();
+        ParticleShapeDefinition.clearKeyframeCache();
+
+        this.world = new CountingWorld("world_the_end", viewers, viewerDistance);
+
+        if (evaluation.equals("KEYFRAMES")) {
+            this.definition = ParticleShapeDefinition.fromFile(BenchmarkSupport.extractShape(shape));
+            if (!definition.isDeterministic()) {
+                throw new IllegalStateException("Shape \"" + shape + "\" is not deterministic and has no keyframes to replay");
+            }
+        }
+        else {
+            ExpressionUtils.setBackend(ExpressionBackend.valueOf(evaluation));
+            this.definition = ParticleShapeDefinition.fromFile(BenchmarkSupport.extractLiveShape(shape, world.getWorld().getName()));
+            if (definition.isDeterministic()) {
+                throw new IllegalStateException("Live copy of shape \"" + shape + "\" is deterministic and would replay keyframes");
+            }
+        }
+
+        this.buffer = new ParticleFrameBuffer(new ParticleEmitterBukkit());
+        this.buffer.setReducedDetailDistance(ParticleFrameBuffer.DEFAULT_REDUCED_DETAIL_DISTANCE);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetSession() {
+        this.session = createSession();
+        this.world.drainSpawnParticleCalls();
+    }
+
+    @Benchmark
+    public void tick(SpawnCounters counters) {
+        this.session.tick();
+        counters.spawnParticleCalls += world.drainSpawnParticleCalls();
+        this.restartIfStopped();
+    }
+
+    @Benchmark
+    public void tickBuffered(SpawnCounters counters) {
+        this.session.tick(buffer);
+        this.buffer.flush();
+        counters.spawnParticleCalls += world.drainSpawnParticleCalls();
+        this.restartIfStopped();
+    }
+
+    private void restartIfStopped() {
+        if (session.shouldStop()) {
+            this.session = createSession();
+        }
+    }
+
+    @NotNull
+    private AnimatedParticleSession createSession() {
+        AnimatedParticleSession session = definition.createSession(world.getWorld(), 0.5, 0.5);
+        session.setTerminalY(0.0); // The counting world has no blocks from which to resolve it
+        return session;
+    }
+
+    /**
+     * Secondary results reported alongside the tick throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class SpawnCounters {
+
+        public long spawnParticleCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.spawnParticleCalls = 0;
+        }
+
+    }
+
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.logging.Level;
 
 import org.bstats.bukkit.Metrics;
 import org.bukkit.Bukkit;
@@ -23,6 +24,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 
+import wtf.choco.commons.util.MathUtil;
 import wtf.choco.commons.util.UpdateChecker;
 import wtf.choco.commons.util.UpdateChecker.UpdateReason;
 import wtf.choco.dragoneggdrop.commands.CommandDragonEggDrop;
@@ -36,15 +38,27 @@ import wtf.choco.dragoneggdrop.listeners.DragonLifeListeners;
 import wtf.choco.dragoneggdrop.listeners.LootListeners;
 import wtf.choco.dragoneggdrop.listeners.PortalClickListener;
 import wtf.choco.dragoneggdrop.listeners.RespawnListeners;
+import wtf.choco.dragoneggdrop.listeners.WorldListeners;
+import wtf.choco.dragoneggdrop.particle.ParticleAnimationScheduler;
+import wtf.choco.dragoneggdrop.particle.ParticleEmitterBukkit;
+import wtf.choco.dragoneggdrop.particle.ParticleFrameBuffer;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
 import wtf.choco.dragoneggdrop.particle.condition.ConditionFactory;
 import wtf.choco.dragoneggdrop.placeholder.DragonEggDropPlaceholders;
 import wtf.choco.dragoneggdrop.registry.DragonTemplateRegistry;
 import wtf.choco.dragoneggdrop.registry.HashRegistry;
 import wtf.choco.dragoneggdrop.registry.Registry;
+import wtf.choco.dragoneggdrop.utils.DEDConfig;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.utils.DataFileUtils;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+import wtf.choco.dragoneggdrop.world.WorldStateJournal;
+import wtf.choco.dragoneggdrop.world.WorldStateSnapshot;
+import wtf.choco.dragoneggdrop.world.history.BattleHistoryStore;
+import wtf.choco.dragoneggdrop.world.history.BattleHistoryStoreJson;
+import wtf.choco.dragoneggdrop.world.history.BattleHistoryStoreSQL;
 
 /**
  * DragonEggDrop, reward your players with a dragon egg/loot chest after every ender
@@ -65,8 +79,16 @@ public final class DragonEggDrop extends JavaPlugin {
     private Registry<@NotNull DragonLootTable> lootTableRegistry = new HashRegistry<>();
     private Registry<@NotNull ParticleShapeDefinition> particleShapeDefinitionRegistry = new HashRegistry<>();
 
-    private BukkitTask updateTask;
-    private File tempDataFile;
+    private final ParticleFrameBuffer particleFrameBuffer = new ParticleFrameBuffer(new ParticleEmitterBukkit());
+    private final ParticleAnimationScheduler particleAnimationScheduler = new ParticleAnimationScheduler(this, particleFrameBuffer);
+
+    private final WorldStateJournal worldStateJournal = new WorldStateJournal(new File(getDataFolder(), "worldState.journal"), WorldStateSnapshot::capture, getLogger());
+
+    private BattleHistoryStore battleHistoryStore;
+
+    private volatile DEDConfig dedConfig;
+
+    private BukkitTask updateTask, damageHistorySweepTask, journalCompactTask;
 
     private File dragonTemplateDirectory, lootTableDirectory, particleDirectory;
 
@@ -89,14 +111,51 @@ public final class DragonEggDrop extends JavaPlugin {
         // Load all necessary data into memory
         DataFileUtils.reloadInMemoryData(this, true);
 
-        // Load temp data (reload support)
-        this.tempDataFile = new File(getDataFolder(), "tempData.json");
+        // Battles restored below are already archived. The store is therefore only opened once they have been restored
+        this.battleHistoryStore = createBattleHistoryStore();
+
+        // Load temp data written by previous versions
+        File tempDataFile = new File(getDataFolder(), "tempData.json");
         if (tempDataFile.exists()) {
             this.getLogger().info("Reading temporary data from previous server session...");
             DataFileUtils.readTempData(this, tempDataFile);
-            this.tempDataFile.delete();
+            tempDataFile.delete();
+        }
+
+        // Replay the world state journal (reload and crash support)
+        WorldStateSnapshot worldState = worldStateJournal.replay(getDEDConfig().getWorldHistorySize(), worldName -> DataFileUtils.getTempDataWorld(this, worldName));
+        if (worldState != null) {
+            this.getLogger().info("Replaying world state from previous server session...");
+            DataFileUtils.readTempData(this, worldState);
+        }
+
+        this.worldStateJournal.open();
+
+        try {
+            this.battleHistoryStore.open();
+        } catch (IOException e) {
+            this.getLogger().log(Level.SEVERE, "Could not open battle history store. Dragon battles will not be archived", e);
         }
 
+        // Periodically compact the journal into a snapshot. The snapshot is captured here but written off of the main thread
+        long snapshotIntervalSeconds = MathUtil.parseSeconds(getConfig().getString(DEDConstants.CONFIG_WORLD_STATE_SNAPSHOT_INTERVAL), 300);
+        if (snapshotIntervalSeconds > 0) {
+            this.journalCompactTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
+                if (worldStateJournal.requiresCompaction()) {
+                    this.worldStateJournal.compact();
+                }
+            }, snapshotIntervalSeconds * 20L, snapshotIntervalSeconds * 20L);
+        }
+
+        // Tick all particle animations and send their buffered particles once per tick
+        this.particleAnimationScheduler.start();
+
+        // Discard the damage history of dragons that are gone without having died (i.e. removed by commands)
+        this.damageHistorySweepTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
+            long staleAfterSeconds = MathUtil.parseSeconds(getConfig().getString(DEDConstants.CONFIG_DAMAGE_HISTORY_STALE_AFTER), 600);
+            DamageHistory.sweep(staleAfterSeconds * 1000L);
+        }, 1200L, 1200L); // 1 minute
+
         // Register events
         this.getLogger().info("Registering event listeners");
         PluginManager manager = Bukkit.getPluginManager();
@@ -105,6 +164,7 @@ public final class DragonEggDrop extends JavaPlugin {
         manager.registerEvents(new LootListeners(this), this);
         manager.registerEvents(new PortalClickListener(this), this);
         manager.registerEvents(new RespawnListeners(this), this);
+        manager.registerEvents(new WorldListeners(), this);
 
         // Register commands
         this.getLogger().info("Registering command executors and tab completion");
@@ -148,16 +208,37 @@ public final class DragonEggDrop extends JavaPlugin {
         }
     }
 
+    @Override
+    public void reloadConfig() {
+        super.reloadConfig();
+        this.dedConfig = DEDConfig.load(getConfig());
+
+        // World histories are sized from the configuration snapshot and only resized on reload
+        EndWorldWrapper.getAll().forEach(EndWorldWrapper::updateMaxBattleHistorySize);
+    }
+
     @Override
     public void onDisable() {
         if (updateTask != null) {
             this.updateTask.cancel();
         }
 
-        try {
-            DataFileUtils.writeTempData(tempDataFile);
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (damageHistorySweepTask != null) {
+            this.damageHistorySweepTask.cancel();
+        }
+
+        if (journalCompactTask != null) {
+            this.journalCompactTask.cancel();
+        }
+
+        this.particleAnimationScheduler.shutdown();
+        DamageHistory.flushAllPendingDamage();
+
+        // Compact the journal before the world wrappers are cleared. Their cleared state should not be journaled
+        this.worldStateJournal.close();
+
+        if (battleHistoryStore != null) {
+            this.battleHistoryStore.close();
         }
 
         // Clear the world wrappers
@@ -165,13 +246,53 @@ public final class DragonEggDrop extends JavaPlugin {
         EndWorldWrapper.clear();
 
         this.particleShapeDefinitionRegistry.clear();
+        ParticleShapeDefinition.clearKeyframeCache();
         this.lootTableRegistry.clear();
         this.dragonTemplateRegistry.clear();
 
         ConditionFactory.clear();
+        ParticleVariables.clearCustomVariables();
+        ExpressionUtils.clearCache();
         DamageHistory.clearGlobalDamageHistory();
     }
 
+    /**
+     * Get the current snapshot of frequently read configuration values. The snapshot is
+     * replaced whenever the configuration is reloaded and may be read from any thread.
+     *
+     * @return the configuration snapshot
+     */
+    @NotNull
+    public DEDConfig getDEDConfig() {
+        DEDConfig dedConfig = this.dedConfig;
+        if (dedConfig == null) {
+            this.getConfig(); // Loads the configuration, and therefore the snapshot, if not yet loaded
+            dedConfig = this.dedConfig;
+        }
+
+        return dedConfig;
+    }
+
+    /**
+     * Get the journal to which changes of world state are written.
+     *
+     * @return the world state journal
+     */
+    @NotNull
+    public WorldStateJournal getWorldStateJournal() {
+        return worldStateJournal;
+    }
+
+    /**
+     * Get the store in which all dragon battles are archived.
+     *
+     * @return the battle history store
+     */
+    @NotNull
+    public BattleHistoryStore getBattleHistoryStore() {
+        return battleHistoryStore;
+    }
+
     /**
      * Get the dragon template registry.
      *
@@ -202,6 +323,27 @@ public final class DragonEggDrop extends JavaPlugin {
         return particleShapeDefinitionRegistry;
     }
 
+    /**
+     * Get the frame buffer into which animated particle sessions should write their
+     * particles. The buffer is flushed once per tick.
+     *
+     * @return the particle frame buffer
+     */
+    @NotNull
+    public ParticleFrameBuffer getParticleFrameBuffer() {
+        return particleFrameBuffer;
+    }
+
+    /**
+     * Get the scheduler by which all animated particle sessions are ticked.
+     *
+     * @return the particle animation scheduler
+     */
+    @NotNull
+    public ParticleAnimationScheduler getParticleAnimationScheduler() {
+        return particleAnimationScheduler;
+    }
+
     /**
      * Get the directory in which dragon templates are located.
      *
@@ -258,6 +400,21 @@ public final class DragonEggDrop extends JavaPlugin {
         sender.sendMessage(CHAT_PREFIX + message);
     }
 
+    @NotNull
+    private BattleHistoryStore createBattleHistoryStore() {
+        String store = getConfig().getString(DEDConstants.CONFIG_BATTLE_HISTORY_STORE, "json");
+
+        if ("sql".equalsIgnoreCase(store)) {
+            String url = getConfig().getString(DEDConstants.CONFIG_BATTLE_HISTORY_SQL_URL, "jdbc:sqlite:%data_folder%/battle_history.db");
+            return new BattleHistoryStoreSQL(url.replace("%data_folder%", getDataFolder().getAbsolutePath()), getLogger());
+        }
+        else if (!"json".equalsIgnoreCase(store)) {
+            this.getLogger().warning("Unknown battle history store \"" + store + "\". Defaulting to \"json\"");
+        }
+
+        return new BattleHistoryStoreJson(new File(getDataFolder(), "history"), getLogger());
+    }
+
     private void saveDefaultDirectory(@NotNull String directory) {
         Preconditions.checkArgument(directory != null, "directory must not be null");
 
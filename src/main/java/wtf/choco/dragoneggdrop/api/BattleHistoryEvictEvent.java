@@ -0,0 +1,72 @@
+package wtf.choco.dragoneggdrop.api;
+
+import com.google.common.base.Preconditions;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
+
+/**
+ * Called when a battle is evicted from the in-memory history of an {@link EndWorldWrapper},
+ * either because a more recent battle was recorded or because the configured history size
+ * was reduced. The evicted battle is provided in its archived form such that it may be
+ * written elsewhere without first being resolved.
+ *
+ * @author Parker Hawke - Choco
+ */
+public class BattleHistoryEvictEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final EndWorldWrapper world;
+    private final ArchivedBattle battle;
+
+    /**
+     * Construct a new BattleHistoryEvictEvent.
+     *
+     * @param world the world from whose history the battle was evicted
+     * @param battle the evicted battle
+     */
+    public BattleHistoryEvictEvent(@NotNull EndWorldWrapper world, @NotNull ArchivedBattle battle) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+        Preconditions.checkArgument(battle != null, "battle must not be null");
+
+        this.world = world;
+        this.battle = battle;
+    }
+
+    /**
+     * Get the world from whose history the battle was evicted.
+     *
+     * @return the world
+     */
+    @NotNull
+    public EndWorldWrapper getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the evicted battle. It may be resolved with {@link ArchivedBattle#toRecord(EndWorldWrapper)}.
+     *
+     * @return the evicted battle
+     */
+    @NotNull
+    public ArchivedBattle getBattle() {
+        return battle;
+    }
+
+    @NotNull
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    @NotNull
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+
+}
@@ -84,20 +84,20 @@ public final class CommandDragonParticle implements TabExecutor {
             return true;
         }
 
-        Location finalEndLocation = endLocation;
         World endLocationWorld = endLocation.getWorld();
         assert endLocationWorld != null; // Theoretically impossible
 
         AnimatedParticleSession particleSession = particleShapeDefinition.createSession(endLocationWorld, endLocation.getX(), startY, endLocation.getZ());
+        particleSession.setTerminalY(Math.max(particleSession.getTerminalY(), endLocation.getY()));
 
-        Bukkit.getScheduler().runTaskTimer(plugin, task -> {
-            particleSession.tick();
+        boolean scheduled = plugin.getParticleAnimationScheduler().schedule(particleSession,
+            session -> DragonEggDrop.sendMessage(player, ChatColor.GREEN + "Done! " + ChatColor.GRAY + "(" + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + ")")
+        );
 
-            if (particleSession.shouldStop() || particleSession.getCurrentLocation().getY() < finalEndLocation.getY()) {
-                DragonEggDrop.sendMessage(player, ChatColor.GREEN + "Done! " + ChatColor.GRAY + "(" + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + ")");
-                task.cancel();
-            }
-        }, 0L, 1L);
+        if (!scheduled) {
+            DragonEggDrop.sendMessage(player, ChatColor.RED + "Too many particle animations are already playing. Try again later");
+            return true;
+        }
 
         String suffix = "";
         if (!endLocation.equals(player.getLocation())) {
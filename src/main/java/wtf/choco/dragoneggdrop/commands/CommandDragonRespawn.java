@@ -27,6 +27,7 @@ import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.utils.CommandUtils;
+import wtf.choco.dragoneggdrop.utils.DEDConfig;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
@@ -91,7 +92,7 @@ public final class CommandDragonRespawn implements TabExecutor {
                 return true;
             }
 
-            if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+            if (plugin.getDEDConfig().isDisabledWorld(world)) {
                 DragonEggDrop.sendMessage(sender, "Dragon respawning is disabled in this world.");
                 return true;
             }
@@ -150,7 +151,7 @@ public final class CommandDragonRespawn implements TabExecutor {
                     return true;
                 }
 
-                if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+                if (plugin.getDEDConfig().isDisabledWorld(world)) {
                     DragonEggDrop.sendMessage(sender, "Dragon respawning is disabled in this world.");
                     return true;
                 }
@@ -345,10 +346,10 @@ public final class CommandDragonRespawn implements TabExecutor {
     private List<@NotNull String> getNonDisabledWorlds() {
         List<@NotNull String> result = new ArrayList<>();
 
-        List<@NotNull String> disabledWorlds = plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS);
+        DEDConfig config = plugin.getDEDConfig();
         Bukkit.getWorlds().forEach(world -> {
             String worldName = world.getName();
-            if (world.getEnvironment() == Environment.THE_END && !disabledWorlds.contains(worldName)) {
+            if (world.getEnvironment() == Environment.THE_END && !config.isDisabledWorld(worldName)) {
                 result.add(worldName);
             }
         });
@@ -1,42 +1,93 @@
 package wtf.choco.dragoneggdrop.dragon;
 
+import com.google.common.base.Enums;
 import com.google.common.base.Preconditions;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import java.util.ArrayDeque;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Bukkit;
+import org.bukkit.entity.EnderDragon.Phase;
 import org.bukkit.entity.Entity;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.dragoneggdrop.utils.BinaryUtils;
 import wtf.choco.dragoneggdrop.utils.JsonUtils;
 
 /**
  * Represents a recordable history of damage for an entity.
+ * <p>
+ * Damage must only be recorded or buffered on the server thread. Queries of total damage, top
+ * damagers and damage per phase are answered from an immutable {@link #snapshot() snapshot}
+ * published on every modification and may therefore be made from any thread. Queries of the damage log (see
+ * {@link #getMostRecentDamage(int)}) and of damage over time (see {@link #getDamageWithin(UUID, long)})
+ * must be made on the server thread.
  *
  * @author Parker Hawke - Choco
  */
 public final class DamageHistory {
 
-    private static final Map<@NotNull UUID, @NotNull DamageHistory> ENTITY_DAMAGE_HISTORY = new HashMap<>();
+    /**
+     * The default maximum amount of damage entries retained by a history's log.
+     */
+    public static final int DEFAULT_LOG_CAPACITY = 4096;
+
+    /**
+     * The maximum window, in seconds, over which damage over time may be queried.
+     */
+    public static final int MAX_DAMAGE_WINDOW_SECONDS = 300;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final int BINARY_VERSION = 1;
+
+    private static final Map<@NotNull UUID, @NotNull DamageHistory> ENTITY_DAMAGE_HISTORY = new ConcurrentHashMap<>();
+    private static final List<@NotNull DamageHistory> PENDING_HISTORIES = new ArrayList<>(); // Histories with buffered damage
+
+    private static int logCapacity = DEFAULT_LOG_CAPACITY;
+    private static long logRetentionMillis = 0;
+    private static boolean coalesceDamage = true;
+
+    private static volatile long detachedHistories = 0, sweptHistories = 0;
+
+    private long firstRecordedTime = -1, lastRecordedTime = System.currentTimeMillis();
+    private volatile DamageHistorySnapshot snapshot;
 
     private final UUID entityUUID;
-    private final Map<@NotNull UUID, @NotNull Double> totalDamage = new HashMap<>();
-    private final Deque<@NotNull DamageEntry> damageHistory = new ArrayDeque<>();
+    private final DamageLog damageLog = new DamageLog(logCapacity);
+
+    // Total damage per damager, ordered by most damage. Maintained as damage is recorded
+    private final Map<@NotNull UUID, @NotNull Standing> totalDamage = new HashMap<>();
+    private Standing[] leaderboard = new Standing[8];
+
+    private final DamageTimeline timeline = new DamageTimeline(MAX_DAMAGE_WINDOW_SECONDS);
+    private final double[] phaseDamage = new double[PHASES.length];
+
+    // Damage buffered since the last flush, merged per source. Rarely more than a handful of sources
+    private long[] pendingSourceMost = new long[4], pendingSourceLeast = new long[4];
+    private double[] pendingDamage = new double[4];
+    private Phase[] pendingPhase = new Phase[4];
+    private int pendingCount = 0;
 
     private DamageHistory(@NotNull UUID entityUUID) {
         this.entityUUID = entityUUID;
+        this.snapshot = new DamageHistorySnapshot(entityUUID, new DamageEntry[0], new double[0][], new double[PHASES.length], null, 0, lastRecordedTime);
     }
 
     /**
@@ -85,7 +136,19 @@ public final class DamageHistory {
      * @return the amount of damage caused by the entity
      */
     public double getTotalDamageFrom(@NotNull UUID uuid) {
-        return (uuid != null && totalDamage.containsKey(uuid)) ? totalDamage.get(uuid) : 0.0;
+        return snapshot.getTotalDamageFrom(uuid);
+    }
+
+    /**
+     * Get the rank of the specified entity's UUID among all damagers, where 0 is the top
+     * damager, 1 is the second top damager, and so on.
+     *
+     * @param uuid the UUID of the entity whose rank to retrieve
+     *
+     * @return the rank of the entity. -1 if the entity has caused no damage
+     */
+    public int getRank(@NotNull UUID uuid) {
+        return snapshot.getRank(uuid);
     }
 
     /**
@@ -96,11 +159,7 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager() {
-        if (totalDamage.isEmpty()) {
-            return null;
-        }
-
-        return totalDamage.entrySet().stream().sorted(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2))).findFirst().map(DamageEntry::new).get();
+        return snapshot.getTopDamager();
     }
 
     /**
@@ -115,17 +174,16 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager(int offset) {
-        if (totalDamage.isEmpty()) {
+        DamageHistorySnapshot snapshot = this.snapshot;
+        if (snapshot.uniqueDamagers() == 0) {
             return null;
         }
 
-        if (offset >= totalDamage.size()) {
-            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + totalDamage.size() + ")");
+        if (offset >= snapshot.uniqueDamagers()) {
+            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + snapshot.uniqueDamagers() + ")");
         }
 
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
-        return new DamageEntry(entries.get(offset));
+        return snapshot.getTopDamager(offset);
     }
 
     /**
@@ -143,25 +201,49 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry @NotNull [] getTopDamagers(int amount) {
-        Preconditions.checkArgument(amount > 0, "Invalid history amount. Must be > 0");
-        DamageEntry[] topDamagers = new DamageEntry[amount];
-
-        if (totalDamage.isEmpty()) {
-            return topDamagers;
-        }
+        return snapshot.getTopDamagers(amount);
+    }
 
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
+    /**
+     * Get an immutable snapshot of this history's total damage and top damagers as of the
+     * last modification. Snapshots are cheap to obtain and safe to read from any thread.
+     *
+     * @return the snapshot
+     */
+    @NotNull
+    public DamageHistorySnapshot snapshot() {
+        return snapshot;
+    }
 
-        for (int i = 0; i < amount; i++) {
-            if (i >= entries.size()) {
-                break;
-            }
+    /**
+     * Record damage to this history. The damage is added to the source's total damage and
+     * logged as the most recent damage entry. The log retains a limited amount of entries
+     * (see {@link #setLogCapacity(int)} and {@link #setLogRetention(long)}) whereas total
+     * damage is retained indefinitely.
+     *
+     * @param source the UUID of the damage's source entity
+     * @param damage the damage to record
+     * @param phase the phase of the dragon at the time the damage was dealt, or null if
+     * not applicable
+     */
+    public void recordDamage(@NotNull UUID source, double damage, @Nullable Phase phase) {
+        Preconditions.checkArgument(source != null, "source must not be null");
+        Preconditions.checkArgument(damage > 0.0, "damage must be greater than 0");
 
-            topDamagers[i] = new DamageEntry(entries.get(i));
-        }
+        this.commitDamage(source, damage, phase, System.currentTimeMillis());
+        this.publishSnapshot();
+    }
 
-        return topDamagers;
+    /**
+     * Record damage to this history.
+     *
+     * @param source the damage's source entity
+     * @param damage the damage to record
+     * @param phase the phase of the dragon at the time the damage was dealt, or null if
+     * not applicable
+     */
+    public void recordDamage(@NotNull Entity source, double damage, @Nullable Phase phase) {
+        this.recordDamage(source.getUniqueId(), damage, phase);
     }
 
     /**
@@ -169,13 +251,11 @@ public final class DamageHistory {
      *
      * @param source the UUID of the damage's source entity
      * @param damage the damage to record
+     *
+     * @see #recordDamage(UUID, double, Phase)
      */
     public void recordDamage(@NotNull UUID source, double damage) {
-        Preconditions.checkArgument(source != null, "source must not be null");
-        Preconditions.checkArgument(damage > 0.0, "damage must be greater than 0");
-
-        this.totalDamage.merge(source, damage, Double::sum);
-        this.damageHistory.push(new DamageEntry(source, damage));
+        this.recordDamage(source, damage, null);
     }
 
     /**
@@ -185,7 +265,255 @@ public final class DamageHistory {
      * @param damage the damage to record
      */
     public void recordDamage(@NotNull Entity source, double damage) {
-        this.recordDamage(source.getUniqueId(), damage);
+        this.recordDamage(source.getUniqueId(), damage, null);
+    }
+
+    /**
+     * Buffer damage to be recorded to this history when pending damage is next flushed
+     * (see {@link #flushPendingDamage()}). Damage buffered from the same source before
+     * then is merged into a single entry, so bursts of hits within one tick (i.e. from
+     * multishot crossbows or explosions) are recorded once rather than once per hit.
+     *
+     * @param source the UUID of the damage's source entity
+     * @param damage the damage to buffer
+     * @param phase the phase of the dragon at the time the damage was dealt, or null if
+     * not applicable
+     */
+    public void bufferDamage(@NotNull UUID source, double damage, @Nullable Phase phase) {
+        Preconditions.checkArgument(source != null, "source must not be null");
+        Preconditions.checkArgument(damage > 0.0, "damage must be greater than 0");
+
+        long most = source.getMostSignificantBits(), least = source.getLeastSignificantBits();
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingSourceMost[i] == most && pendingSourceLeast[i] == least && pendingPhase[i] == phase) {
+                this.pendingDamage[i] += damage;
+                return;
+            }
+        }
+
+        if (pendingCount == 0) {
+            PENDING_HISTORIES.add(this);
+        }
+        else if (pendingCount == pendingDamage.length) {
+            this.pendingSourceMost = Arrays.copyOf(pendingSourceMost, pendingCount * 2);
+            this.pendingSourceLeast = Arrays.copyOf(pendingSourceLeast, pendingCount * 2);
+            this.pendingDamage = Arrays.copyOf(pendingDamage, pendingCount * 2);
+            this.pendingPhase = Arrays.copyOf(pendingPhase, pendingCount * 2);
+        }
+
+        this.pendingSourceMost[pendingCount] = most;
+        this.pendingSourceLeast[pendingCount] = least;
+        this.pendingPhase[pendingCount] = phase;
+        this.pendingDamage[pendingCount++] = damage;
+    }
+
+    /**
+     * Buffer damage to be recorded to this history when pending damage is next flushed.
+     *
+     * @param source the damage's source entity
+     * @param damage the damage to buffer
+     * @param phase the phase of the dragon at the time the damage was dealt, or null if
+     * not applicable
+     *
+     * @see #bufferDamage(UUID, double, Phase)
+     */
+    public void bufferDamage(@NotNull Entity source, double damage, @Nullable Phase phase) {
+        this.bufferDamage(source.getUniqueId(), damage, phase);
+    }
+
+    /**
+     * Record all damage buffered by {@link #bufferDamage(UUID, double, Phase)} to this history in
+     * the order in which each source was first buffered.
+     */
+    public void flushPendingDamage() {
+        if (pendingCount == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < pendingCount; i++) {
+            this.commitDamage(new UUID(pendingSourceMost[i], pendingSourceLeast[i]), pendingDamage[i], pendingPhase[i], now);
+            this.pendingPhase[i] = null;
+        }
+
+        this.pendingCount = 0;
+        this.publishSnapshot();
+    }
+
+    /**
+     * Check whether this history has buffered damage that has yet to be flushed.
+     *
+     * @return true if damage is pending, false otherwise
+     */
+    public boolean hasPendingDamage() {
+        return pendingCount > 0;
+    }
+
+    /**
+     * Get the damage dealt by the specified entity's UUID within the given amount of time
+     * before now. Damage is summed per whole second.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     * @param windowMillis the window in milliseconds. Must be greater than 0 and may not
+     * exceed {@link #MAX_DAMAGE_WINDOW_SECONDS}
+     *
+     * @return the damage dealt within the window
+     */
+    public double getDamageWithin(@NotNull UUID uuid, long windowMillis) {
+        Preconditions.checkArgument(uuid != null, "uuid must not be null");
+        return timeline.getDamage(uuid, toWindowSeconds(windowMillis), System.currentTimeMillis());
+    }
+
+    /**
+     * Get the damage dealt by all entities within the given amount of time before now.
+     * Damage is summed per whole second.
+     *
+     * @param windowMillis the window in milliseconds. Must be greater than 0 and may not
+     * exceed {@link #MAX_DAMAGE_WINDOW_SECONDS}
+     *
+     * @return the damage dealt within the window
+     */
+    public double getTotalDamageWithin(long windowMillis) {
+        return timeline.getDamage(null, toWindowSeconds(windowMillis), System.currentTimeMillis());
+    }
+
+    /**
+     * Get the average damage per second dealt by the specified entity's UUID within the
+     * given amount of time before now.
+     *
+     * @param uuid the UUID of the entity whose damage per second to retrieve
+     * @param windowMillis the window in milliseconds. Must be greater than 0 and may not
+     * exceed {@link #MAX_DAMAGE_WINDOW_SECONDS}
+     *
+     * @return the damage per second
+     */
+    public double getDamagePerSecond(@NotNull UUID uuid, long windowMillis) {
+        return getDamageWithin(uuid, windowMillis) / toWindowSeconds(windowMillis);
+    }
+
+    /**
+     * Get the damage dealt by the specified entity's UUID while the dragon was in the given
+     * phase. Damage recorded without a phase is not included.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     * @param phase the phase
+     *
+     * @return the damage dealt during the phase
+     */
+    public double getDamageDuring(@NotNull UUID uuid, @NotNull Phase phase) {
+        return snapshot.getDamageDuring(uuid, phase);
+    }
+
+    /**
+     * Get the damage dealt by all entities while the dragon was in the given phase. Damage
+     * recorded without a phase is not included.
+     *
+     * @param phase the phase
+     *
+     * @return the damage dealt during the phase
+     */
+    public double getTotalDamageDuring(@NotNull Phase phase) {
+        return snapshot.getTotalDamageDuring(phase);
+    }
+
+    /**
+     * Get the time (in milliseconds since epoch) at which damage was first recorded.
+     *
+     * @return the first recorded time. -1 if no damage has been recorded
+     */
+    public long getFirstRecordedTime() {
+        return firstRecordedTime;
+    }
+
+    /**
+     * Get the time (in milliseconds since epoch) at which damage was last recorded.
+     *
+     * @return the last recorded time
+     */
+    public long getLastRecordedTime() {
+        return lastRecordedTime;
+    }
+
+    /**
+     * Get the amount of time between the first and last recorded damage.
+     *
+     * @return the duration in milliseconds. 0 if no damage has been recorded
+     */
+    public long getDuration() {
+        return (firstRecordedTime >= 0) ? lastRecordedTime - firstRecordedTime : 0;
+    }
+
+    private static int toWindowSeconds(long windowMillis) {
+        Preconditions.checkArgument(windowMillis > 0, "windowMillis must be greater than 0");
+
+        long windowSeconds = (windowMillis + 999) / 1000;
+        Preconditions.checkArgument(windowSeconds <= MAX_DAMAGE_WINDOW_SECONDS, "window may not exceed %s seconds", MAX_DAMAGE_WINDOW_SECONDS);
+        return (int) windowSeconds;
+    }
+
+    private void commitDamage(@NotNull UUID source, double damage, @Nullable Phase phase, long timestamp) {
+        if (firstRecordedTime < 0) {
+            this.firstRecordedTime = timestamp;
+        }
+
+        this.lastRecordedTime = timestamp;
+        this.logDamage(source, damage, timestamp);
+        this.timeline.record(source, damage, timestamp);
+
+        Standing standing = addTotalDamage(source, damage);
+        if (phase != null) {
+            standing.addPhaseDamage(phase, damage);
+            this.phaseDamage[phase.ordinal()] += damage;
+        }
+    }
+
+    private void publishSnapshot() {
+        DamageEntry[] ranking = new DamageEntry[totalDamage.size()];
+        double[][] rankingPhaseDamage = new double[ranking.length][];
+        for (int i = 0; i < ranking.length; i++) {
+            ranking[i] = leaderboard[i].total;
+            rankingPhaseDamage[i] = leaderboard[i].phaseDamage; // Copied on write. Never modified once published
+        }
+
+        this.snapshot = new DamageHistorySnapshot(entityUUID, ranking, rankingPhaseDamage, phaseDamage.clone(), getMostRecentDamage(), damageLog.size(), lastRecordedTime);
+    }
+
+    private void logDamage(@NotNull UUID source, double damage, long timestamp) {
+        this.damageLog.add(source, damage, timestamp);
+
+        if (logRetentionMillis > 0) {
+            this.damageLog.discardBefore(timestamp - logRetentionMillis);
+        }
+    }
+
+    @NotNull
+    private Standing addTotalDamage(@NotNull UUID source, double damage) {
+        Standing standing = totalDamage.get(source);
+        if (standing == null) {
+            int rank = totalDamage.size();
+            if (rank == leaderboard.length) {
+                this.leaderboard = Arrays.copyOf(leaderboard, rank * 2);
+            }
+
+            standing = new Standing(new DamageEntry(source, damage), rank);
+            this.leaderboard[rank] = standing;
+            this.totalDamage.put(source, standing);
+        }
+        else {
+            standing.total = new DamageEntry(source, standing.total.damage + damage);
+        }
+
+        // Total damage only ever increases. Move the damager up past those with less damage
+        int rank = standing.rank;
+        while (rank > 0 && leaderboard[rank - 1].total.damage < standing.total.damage) {
+            Standing overtaken = leaderboard[rank - 1];
+            overtaken.rank = rank;
+            this.leaderboard[rank--] = overtaken;
+        }
+
+        standing.rank = rank;
+        this.leaderboard[rank] = standing;
+        return standing;
     }
 
     /**
@@ -195,7 +523,7 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage() {
-        return damageHistory.peek();
+        return (damageLog.size() > 0) ? new DamageEntry(damageLog.getSource(0), damageLog.getDamage(0)) : null;
     }
 
     /**
@@ -210,23 +538,11 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage(int offset) {
-        if (offset >= damageHistory.size()) {
-            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + damageHistory.size() + ")");
-        }
-
-        if (offset == 0) { // Save unnecessary Iterator creation and just peek at the top value
-            return getMostRecentDamage();
-        }
-
-        int i = 0;
-        for (Iterator<@NotNull DamageEntry> iterator = damageHistory.iterator(); iterator.hasNext(); i++) {
-            DamageEntry entry = iterator.next();
-            if (i == offset) {
-                return entry;
-            }
+        if (offset >= damageLog.size()) {
+            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + damageLog.size() + ")");
         }
 
-        return null;
+        return new DamageEntry(damageLog.getSource(offset), damageLog.getDamage(offset));
     }
 
     /**
@@ -235,7 +551,7 @@ public final class DamageHistory {
      * @return the history size
      */
     public int size() {
-        return damageHistory.size();
+        return damageLog.size();
     }
 
     /**
@@ -244,21 +560,28 @@ public final class DamageHistory {
      * @return the amount of unique damagers
      */
     public int uniqueDamagers() {
-        return totalDamage.size();
+        return snapshot.uniqueDamagers();
     }
 
     /**
      * Reset all total damage from all entities in this history to zero.
      */
     public void clearTotalDamage() {
+        Arrays.fill(leaderboard, 0, totalDamage.size(), null);
+        Arrays.fill(phaseDamage, 0.0);
         this.totalDamage.clear();
+        this.publishSnapshot();
     }
 
     /**
      * Clear all damage history from this history.
      */
     public void clearDamageHistory() {
-        this.damageHistory.clear();
+        this.damageLog.clear();
+        this.timeline.clear();
+        this.pendingCount = 0;
+        this.firstRecordedTime = -1;
+        this.publishSnapshot();
     }
 
     /**
@@ -281,16 +604,53 @@ public final class DamageHistory {
 
         object.addProperty("entityUUID", entityUUID.toString());
 
-        if (!damageHistory.isEmpty()) {
+        if (firstRecordedTime >= 0) {
+            object.addProperty("firstRecordedTime", firstRecordedTime);
+            object.addProperty("lastRecordedTime", lastRecordedTime);
+        }
+
+        if (!totalDamage.isEmpty()) {
+            JsonObject totalDamageObject = new JsonObject();
+            for (int i = 0; i < totalDamage.size(); i++) {
+                DamageEntry total = leaderboard[i].total;
+                totalDamageObject.addProperty(total.source.toString(), total.damage);
+            }
+
+            object.add("totalDamage", totalDamageObject);
+
+            JsonObject phaseDamageObject = new JsonObject();
+            for (Phase phase : PHASES) {
+                if (phaseDamage[phase.ordinal()] <= 0.0) {
+                    continue;
+                }
+
+                JsonObject damagersObject = new JsonObject();
+                for (int i = 0; i < totalDamage.size(); i++) {
+                    Standing standing = leaderboard[i];
+                    if (standing.phaseDamage[phase.ordinal()] > 0.0) {
+                        damagersObject.addProperty(standing.total.source.toString(), standing.phaseDamage[phase.ordinal()]);
+                    }
+                }
+
+                phaseDamageObject.add(phase.name(), damagersObject);
+            }
+
+            if (!phaseDamageObject.entrySet().isEmpty()) {
+                object.add("phaseDamage", phaseDamageObject);
+            }
+        }
+
+        if (damageLog.size() > 0) {
             JsonArray damageEntriesArray = new JsonArray();
-            this.damageHistory.forEach(entry -> {
+            for (int offset = 0; offset < damageLog.size(); offset++) { // Most recent first
                 JsonObject entryObject = new JsonObject();
 
-                entryObject.addProperty("source", entry.source.toString());
-                entryObject.addProperty("damage", entry.getDamage());
+                entryObject.addProperty("source", damageLog.getSource(offset).toString());
+                entryObject.addProperty("damage", damageLog.getDamage(offset));
+                entryObject.addProperty("timestamp", damageLog.getTimestamp(offset));
 
                 damageEntriesArray.add(entryObject);
-            });
+            }
 
             object.add("damageEntries", damageEntriesArray);
         }
@@ -306,28 +666,228 @@ public final class DamageHistory {
      * @return the damage history instance
      */
     @NotNull
-    public static DamageHistory fromJson(JsonObject object) {
+    public static DamageHistory fromJson(@NotNull JsonObject object) {
         UUID entityUUID = JsonUtils.getRequiredField(object, "entityUUID", element -> UUID.fromString(element.getAsString()));
         JsonArray damageEntriesArray = JsonUtils.getOptionalField(object, "damageEntries", JsonElement::getAsJsonArray, new JsonArray());
 
+        JsonObject totalDamageObject = object.has("totalDamage") ? object.getAsJsonObject("totalDamage") : null;
+
         DamageHistory damageHistory = new DamageHistory(entityUUID);
+        long now = System.currentTimeMillis();
 
-        damageEntriesArray.forEach(damageEntryElement -> {
+        // Entries are serialized most recent first
+        for (int i = damageEntriesArray.size() - 1; i >= 0; i--) {
+            JsonElement damageEntryElement = damageEntriesArray.get(i);
             if (!damageEntryElement.isJsonObject()) {
-                return;
+                continue;
             }
 
             JsonObject damageEntryObject = damageEntryElement.getAsJsonObject();
 
             UUID source = UUID.fromString(damageEntryObject.get("source").getAsString());
             double damage = damageEntryObject.get("damage").getAsDouble();
+            long timestamp = damageEntryObject.has("timestamp") ? damageEntryObject.get("timestamp").getAsLong() : now;
+
+            damageHistory.logDamage(source, damage, timestamp);
+            damageHistory.timeline.record(source, damage, timestamp);
+
+            if (damageHistory.firstRecordedTime < 0) {
+                damageHistory.firstRecordedTime = timestamp;
+            }
+
+            damageHistory.lastRecordedTime = timestamp;
+
+            // Legacy data did not serialize total damage. Rebuild it from the logged entries
+            if (totalDamageObject == null) {
+                damageHistory.addTotalDamage(source, damage);
+            }
+        }
+
+        if (totalDamageObject != null) {
+            totalDamageObject.entrySet().forEach(entry -> damageHistory.addTotalDamage(UUID.fromString(entry.getKey()), entry.getValue().getAsDouble()));
+        }
+
+        if (object.has("firstRecordedTime")) {
+            damageHistory.firstRecordedTime = object.get("firstRecordedTime").getAsLong();
+            damageHistory.lastRecordedTime = object.get("lastRecordedTime").getAsLong();
+        }
+
+        JsonObject phaseDamageObject = object.has("phaseDamage") ? object.getAsJsonObject("phaseDamage") : new JsonObject();
+        for (Map.Entry<String, JsonElement> phaseEntry : phaseDamageObject.entrySet()) {
+            Phase phase = Enums.getIfPresent(Phase.class, phaseEntry.getKey()).orNull();
+            if (phase == null) {
+                continue;
+            }
 
-            damageHistory.recordDamage(source, damage);
-        });
+            for (Map.Entry<String, JsonElement> damagerEntry : phaseEntry.getValue().getAsJsonObject().entrySet()) {
+                Standing standing = damageHistory.totalDamage.get(UUID.fromString(damagerEntry.getKey()));
+                if (standing != null) {
+                    standing.addPhaseDamage(phase, damagerEntry.getValue().getAsDouble());
+                    damageHistory.phaseDamage[phase.ordinal()] += damagerEntry.getValue().getAsDouble();
+                }
+            }
+        }
 
+        damageHistory.publishSnapshot();
         return damageHistory;
     }
 
+    /**
+     * Serialize this damage history to a compact binary form. Entity UUIDs are written
+     * once to a dictionary and referenced by index, timestamps are delta encoded and
+     * damage is encoded relative to the previously written damage.
+     *
+     * @return the serialized history
+     *
+     * @see #fromBytes(byte[])
+     */
+    @NotNull
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (totalDamage.size() * 24) + (damageLog.size() * 6));
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(BINARY_VERSION);
+            BinaryUtils.writeUUID(out, entityUUID);
+            BinaryUtils.writeVarLong(out, BinaryUtils.zigZag(firstRecordedTime));
+            BinaryUtils.writeVarLong(out, BinaryUtils.zigZag(lastRecordedTime - firstRecordedTime));
+
+            // Damagers in order of rank, followed by any sources only present in the log
+            Map<@NotNull UUID, @NotNull Integer> dictionary = new LinkedHashMap<>();
+            for (int i = 0; i < totalDamage.size(); i++) {
+                dictionary.put(leaderboard[i].total.source, i);
+            }
+
+            for (int offset = damageLog.size() - 1; offset >= 0; offset--) {
+                dictionary.putIfAbsent(damageLog.getSource(offset), dictionary.size());
+            }
+
+            BinaryUtils.writeVarInt(out, dictionary.size());
+            for (UUID source : dictionary.keySet()) {
+                BinaryUtils.writeUUID(out, source);
+            }
+
+            long previous = 0;
+            BinaryUtils.writeVarInt(out, totalDamage.size());
+            for (int i = 0; i < totalDamage.size(); i++) {
+                previous = BinaryUtils.writeDeltaDouble(out, leaderboard[i].total.damage, previous);
+            }
+
+            int phases = 0;
+            for (Phase phase : PHASES) {
+                phases += (phaseDamage[phase.ordinal()] > 0.0) ? 1 : 0;
+            }
+
+            BinaryUtils.writeVarInt(out, phases);
+            for (Phase phase : PHASES) {
+                if (phaseDamage[phase.ordinal()] <= 0.0) {
+                    continue;
+                }
+
+                int damagers = 0;
+                for (int i = 0; i < totalDamage.size(); i++) {
+                    damagers += (leaderboard[i].phaseDamage[phase.ordinal()] > 0.0) ? 1 : 0;
+                }
+
+                out.writeUTF(phase.name());
+                BinaryUtils.writeVarInt(out, damagers);
+                for (int i = 0; i < totalDamage.size(); i++) {
+                    double damage = leaderboard[i].phaseDamage[phase.ordinal()];
+                    if (damage > 0.0) {
+                        BinaryUtils.writeVarInt(out, i);
+                        previous = BinaryUtils.writeDeltaDouble(out, damage, previous);
+                    }
+                }
+            }
+
+            // Oldest entry first
+            long previousTimestamp = firstRecordedTime;
+            BinaryUtils.writeVarInt(out, damageLog.size());
+            for (int offset = damageLog.size() - 1; offset >= 0; offset--) {
+                long timestamp = damageLog.getTimestamp(offset);
+
+                BinaryUtils.writeVarInt(out, dictionary.get(damageLog.getSource(offset)));
+                BinaryUtils.writeVarLong(out, BinaryUtils.zigZag(timestamp - previousTimestamp));
+                previous = BinaryUtils.writeDeltaDouble(out, damageLog.getDamage(offset), previous);
+                previousTimestamp = timestamp;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Impossible. Writing to memory
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialize a {@link DamageHistory} instance from bytes written by {@link #toBytes()}.
+     * Total damage is loaded as it was written rather than rebuilt from the damage log.
+     *
+     * @param bytes the bytes from which to deserialize
+     *
+     * @return the damage history instance
+     *
+     * @throws IllegalArgumentException if the bytes are malformed or of an unsupported version
+     */
+    @NotNull
+    public static DamageHistory fromBytes(@NotNull byte[] bytes) {
+        Preconditions.checkArgument(bytes != null, "bytes must not be null");
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int version = in.readUnsignedByte();
+            if (version != BINARY_VERSION) {
+                throw new IllegalArgumentException("Unsupported damage history version " + version + " (expected " + BINARY_VERSION + ")");
+            }
+
+            DamageHistory damageHistory = new DamageHistory(BinaryUtils.readUUID(in));
+            damageHistory.firstRecordedTime = BinaryUtils.unZigZag(BinaryUtils.readVarLong(in));
+            damageHistory.lastRecordedTime = damageHistory.firstRecordedTime + BinaryUtils.unZigZag(BinaryUtils.readVarLong(in));
+
+            UUID[] dictionary = new UUID[BinaryUtils.readVarInt(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = BinaryUtils.readUUID(in);
+            }
+
+            // Totals are written in order of rank and therefore never have to be reordered
+            long previous = 0;
+            int damagers = BinaryUtils.readVarInt(in);
+            for (int i = 0; i < damagers; i++) {
+                previous = BinaryUtils.readDeltaDouble(in, previous);
+                damageHistory.addTotalDamage(dictionary[i], Double.longBitsToDouble(previous));
+            }
+
+            int phases = BinaryUtils.readVarInt(in);
+            for (int i = 0; i < phases; i++) {
+                Phase phase = Enums.getIfPresent(Phase.class, in.readUTF()).orNull();
+
+                int phaseDamagers = BinaryUtils.readVarInt(in);
+                for (int j = 0; j < phaseDamagers; j++) {
+                    Standing standing = damageHistory.leaderboard[BinaryUtils.readVarInt(in)];
+                    previous = BinaryUtils.readDeltaDouble(in, previous);
+
+                    if (phase != null) {
+                        standing.addPhaseDamage(phase, Double.longBitsToDouble(previous));
+                        damageHistory.phaseDamage[phase.ordinal()] += Double.longBitsToDouble(previous);
+                    }
+                }
+            }
+
+            long timestamp = damageHistory.firstRecordedTime;
+            int entries = BinaryUtils.readVarInt(in);
+            for (int i = 0; i < entries; i++) {
+                UUID source = dictionary[BinaryUtils.readVarInt(in)];
+                timestamp += BinaryUtils.unZigZag(BinaryUtils.readVarLong(in));
+                previous = BinaryUtils.readDeltaDouble(in, previous);
+
+                damageHistory.logDamage(source, Double.longBitsToDouble(previous), timestamp);
+                damageHistory.timeline.record(source, Double.longBitsToDouble(previous), timestamp);
+            }
+
+            damageHistory.publishSnapshot();
+            return damageHistory;
+        } catch (IOException | IndexOutOfBoundsException | NullPointerException e) {
+            throw new IllegalArgumentException("Malformed damage history", e);
+        }
+    }
+
     /**
      * Get the {@link DamageHistory} associated with the given entity UUID. This method will
      * never return null.
@@ -356,6 +916,103 @@ public final class DamageHistory {
         return forEntity(entity.getUniqueId());
     }
 
+    /**
+     * Detach the {@link DamageHistory} associated with the given entity UUID from its
+     * entity. The history is no longer tracked and a subsequent call to {@link #forEntity(UUID)}
+     * will create a new history. This should be called once an entity will no longer be
+     * damaged (i.e. on death) and its history handed to whatever should retain it.
+     *
+     * @param uuid the entity whose history to detach
+     *
+     * @return the entity's damage history. If none was tracked, a new, empty history
+     */
+    @NotNull
+    public static DamageHistory detach(@NotNull UUID uuid) {
+        Preconditions.checkArgument(uuid != null, "Cannot detach damage history for null UUID");
+
+        DamageHistory history = ENTITY_DAMAGE_HISTORY.remove(uuid);
+        if (history == null) {
+            return new DamageHistory(uuid);
+        }
+
+        history.flushPendingDamage(); // The killing blow may still be buffered
+        detachedHistories++;
+        return history;
+    }
+
+    /**
+     * Detach the {@link DamageHistory} associated with the given entity from its entity.
+     *
+     * @param entity the entity whose history to detach
+     *
+     * @return the entity's damage history. If none was tracked, a new, empty history
+     *
+     * @see #detach(UUID)
+     */
+    @NotNull
+    public static DamageHistory detach(@NotNull Entity entity) {
+        Preconditions.checkArgument(entity != null, "Cannot detach damage history for null entity");
+        return detach(entity.getUniqueId());
+    }
+
+    /**
+     * Discard the tracked histories of all entities that are no longer loaded or alive and
+     * have not been damaged for at least the given amount of time. Must be called on the
+     * server thread.
+     *
+     * @param idleMillis the minimum amount of time since a history was last damaged
+     *
+     * @return the amount of histories discarded
+     */
+    public static int sweep(long idleMillis) {
+        long now = System.currentTimeMillis();
+        int swept = 0;
+
+        for (Iterator<@NotNull DamageHistory> iterator = ENTITY_DAMAGE_HISTORY.values().iterator(); iterator.hasNext(); ) {
+            DamageHistory history = iterator.next();
+            if (now - history.lastRecordedTime < idleMillis) {
+                continue;
+            }
+
+            Entity entity = history.getEntity();
+            if (entity == null || entity.isDead()) {
+                iterator.remove();
+                swept++;
+            }
+        }
+
+        sweptHistories += swept;
+        return swept;
+    }
+
+    /**
+     * Get the amount of entities whose damage history is currently tracked.
+     *
+     * @return the amount of tracked histories
+     */
+    public static int getTrackedHistoryCount() {
+        return ENTITY_DAMAGE_HISTORY.size();
+    }
+
+    /**
+     * Get the total amount of histories that have been {@link #detach(UUID) detached} from
+     * their entities.
+     *
+     * @return the amount of detached histories
+     */
+    public static long getDetachedHistoryCount() {
+        return detachedHistories;
+    }
+
+    /**
+     * Get the total amount of histories that have been discarded by {@link #sweep(long)}.
+     *
+     * @return the amount of swept histories
+     */
+    public static long getSweptHistoryCount() {
+        return sweptHistories;
+    }
+
     /**
      * Construct and return a new dummy {@link DamageHistory} object. This history is not
      * registered and cannot be fetched at a later point, the UUID returned by {@link #getEntityUUID()}
@@ -373,6 +1030,89 @@ public final class DamageHistory {
      */
     public static void clearGlobalDamageHistory() {
         ENTITY_DAMAGE_HISTORY.clear();
+        PENDING_HISTORIES.clear();
+    }
+
+    /**
+     * Flush the buffered damage of all damage histories.
+     *
+     * @return the amount of histories whose damage was flushed
+     *
+     * @see #flushPendingDamage()
+     */
+    public static int flushAllPendingDamage() {
+        int flushed = 0;
+        for (int i = 0; i < PENDING_HISTORIES.size(); i++) {
+            DamageHistory history = PENDING_HISTORIES.get(i);
+            if (history.hasPendingDamage()) { // May have been flushed on its own since buffering
+                history.flushPendingDamage();
+                flushed++;
+            }
+        }
+
+        PENDING_HISTORIES.clear();
+        return flushed;
+    }
+
+    /**
+     * Set the maximum amount of damage entries retained by the log of each damage history
+     * created hereafter. Once exceeded, the oldest entries are discarded.
+     *
+     * @param capacity the log capacity. If not positive, logs are unbounded
+     */
+    public static void setLogCapacity(int capacity) {
+        DamageHistory.logCapacity = capacity;
+    }
+
+    /**
+     * Get the maximum amount of damage entries retained by the log of each damage history.
+     *
+     * @return the log capacity. If not positive, logs are unbounded
+     */
+    public static int getLogCapacity() {
+        return logCapacity;
+    }
+
+    /**
+     * Set the amount of time for which damage entries are retained in a history's log,
+     * relative to the most recently recorded damage. Older entries are discarded as new
+     * damage is recorded.
+     *
+     * @param retentionMillis the retention time in milliseconds. If not positive, entries
+     * are retained regardless of age
+     */
+    public static void setLogRetention(long retentionMillis) {
+        DamageHistory.logRetentionMillis = retentionMillis;
+    }
+
+    /**
+     * Get the amount of time for which damage entries are retained in a history's log.
+     *
+     * @return the retention time in milliseconds. If not positive, entries are retained
+     * regardless of age
+     */
+    public static long getLogRetention() {
+        return logRetentionMillis;
+    }
+
+    /**
+     * Set whether damage dealt within the same tick should be coalesced. If true, damage is
+     * expected to be {@link #bufferDamage(UUID, double, Phase) buffered} and flushed once per tick.
+     * If false, every hit is recorded individually as it is dealt.
+     *
+     * @param coalesceDamage whether to coalesce damage
+     */
+    public static void setCoalesceDamage(boolean coalesceDamage) {
+        DamageHistory.coalesceDamage = coalesceDamage;
+    }
+
+    /**
+     * Check whether damage dealt within the same tick should be coalesced.
+     *
+     * @return true if coalesced, false if recorded individually
+     */
+    public static boolean isCoalesceDamage() {
+        return coalesceDamage;
     }
 
 
@@ -391,10 +1131,6 @@ public final class DamageHistory {
             this.damage = damage;
         }
 
-        private DamageEntry(@NotNull Map.Entry<@NotNull UUID, @NotNull Double> entry) {
-            this(entry.getKey(), entry.getValue());
-        }
-
         /**
          * Get the UUID of the entity to which this damage entry is attributed.
          *
@@ -434,4 +1170,23 @@ public final class DamageHistory {
 
     }
 
+    private static final class Standing {
+
+        private DamageEntry total;
+        private int rank;
+        private double[] phaseDamage = new double[PHASES.length]; // Replaced rather than modified once published
+
+        private Standing(@NotNull DamageEntry total, int rank) {
+            this.total = total;
+            this.rank = rank;
+        }
+
+        private void addPhaseDamage(@NotNull Phase phase, double damage) {
+            double[] phaseDamage = this.phaseDamage.clone();
+            phaseDamage[phase.ordinal()] += damage;
+            this.phaseDamage = phaseDamage;
+        }
+
+    }
+
 }
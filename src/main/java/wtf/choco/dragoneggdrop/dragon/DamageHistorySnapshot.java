@@ -0,0 +1,203 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.entity.EnderDragon.Phase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.dragon.DamageHistory.DamageEntry;
+
+/**
+ * An immutable view of a {@link DamageHistory} at the time it was last modified. A new
+ * snapshot is published by the history every time damage is recorded or cleared, and
+ * snapshots are never modified once published. They may therefore be read safely from
+ * any thread (i.e. by placeholders resolved asynchronously) without locking.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see DamageHistory#snapshot()
+ */
+public final class DamageHistorySnapshot {
+
+    private volatile Map<@NotNull UUID, @NotNull Integer> ranks; // Lazily computed. Racing threads compute equal maps
+
+    private final UUID entityUUID;
+    private final DamageEntry[] ranking;
+    private final double[][] phaseDamage; // Per ranked damager, indexed by phase ordinal
+    private final double[] totalPhaseDamage;
+    private final DamageEntry mostRecentDamage;
+    private final int size;
+    private final long lastRecordedTime;
+
+    DamageHistorySnapshot(@NotNull UUID entityUUID, @NotNull DamageEntry @NotNull [] ranking, @NotNull double[][] phaseDamage, @NotNull double[] totalPhaseDamage, @Nullable DamageEntry mostRecentDamage, int size, long lastRecordedTime) {
+        this.entityUUID = entityUUID;
+        this.ranking = ranking;
+        this.phaseDamage = phaseDamage;
+        this.totalPhaseDamage = totalPhaseDamage;
+        this.mostRecentDamage = mostRecentDamage;
+        this.size = size;
+        this.lastRecordedTime = lastRecordedTime;
+    }
+
+    /**
+     * Get the UUID of the entity to which the damage history belongs.
+     *
+     * @return the belonging entity's UUID
+     */
+    @NotNull
+    public UUID getEntityUUID() {
+        return entityUUID;
+    }
+
+    /**
+     * Get the total amount of damage caused by the specified entity's UUID.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     *
+     * @return the amount of damage caused by the entity
+     */
+    public double getTotalDamageFrom(@NotNull UUID uuid) {
+        int rank = getRank(uuid);
+        return (rank != -1) ? ranking[rank].getDamage() : 0.0;
+    }
+
+    /**
+     * Get the rank of the specified entity's UUID among all damagers, where 0 is the top
+     * damager, 1 is the second top damager, and so on.
+     *
+     * @param uuid the UUID of the entity whose rank to retrieve
+     *
+     * @return the rank of the entity. -1 if the entity has caused no damage
+     */
+    public int getRank(@NotNull UUID uuid) {
+        if (uuid == null || ranking.length == 0) {
+            return -1;
+        }
+
+        Map<@NotNull UUID, @NotNull Integer> ranks = this.ranks;
+        if (ranks == null) {
+            ranks = new HashMap<>(ranking.length * 2);
+            for (int i = 0; i < ranking.length; i++) {
+                ranks.put(ranking[i].getSource(), i);
+            }
+
+            this.ranks = ranks;
+        }
+
+        Integer rank = ranks.get(uuid);
+        return (rank != null) ? rank : -1;
+    }
+
+    /**
+     * Get the damage dealt by the specified entity's UUID while the dragon was in the given
+     * phase. Damage recorded without a phase is not included.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     * @param phase the phase
+     *
+     * @return the damage dealt during the phase
+     */
+    public double getDamageDuring(@NotNull UUID uuid, @NotNull Phase phase) {
+        Preconditions.checkArgument(phase != null, "phase must not be null");
+
+        int rank = getRank(uuid);
+        return (rank != -1) ? phaseDamage[rank][phase.ordinal()] : 0.0;
+    }
+
+    /**
+     * Get the damage dealt by all entities while the dragon was in the given phase. Damage
+     * recorded without a phase is not included.
+     *
+     * @param phase the phase
+     *
+     * @return the damage dealt during the phase
+     */
+    public double getTotalDamageDuring(@NotNull Phase phase) {
+        Preconditions.checkArgument(phase != null, "phase must not be null");
+        return totalPhaseDamage[phase.ordinal()];
+    }
+
+    /**
+     * Get the entity that caused the most amount of damage. This comes paired with the
+     * amount of total damage done.
+     *
+     * @return the top damager. null if no damage was recorded
+     */
+    @Nullable
+    public DamageEntry getTopDamager() {
+        return (ranking.length > 0) ? ranking[0] : null;
+    }
+
+    /**
+     * Get the top damager at the given offset (from most amount of damage + offset). Offset
+     * 0 would be equivalent to {@link #getTopDamager()}.
+     *
+     * @param offset the damage entry offset
+     *
+     * @return the top damager at the given offset. null if fewer damagers were recorded
+     */
+    @Nullable
+    public DamageEntry getTopDamager(int offset) {
+        Preconditions.checkArgument(offset >= 0, "offset must not be negative");
+        return (offset < ranking.length) ? ranking[offset] : null;
+    }
+
+    /**
+     * Get an array of entities that caused the most amount of damage in order of most
+     * amount of damage (first index) to least amount of damage (last index). If more
+     * damagers are queried than is available, null fills the remaining indices.
+     *
+     * @param amount the amount of damagers to retrieve. Must be greater than 0
+     *
+     * @return the top x damagers
+     */
+    @Nullable
+    public DamageEntry @NotNull [] getTopDamagers(int amount) {
+        Preconditions.checkArgument(amount > 0, "Invalid history amount. Must be > 0");
+        return Arrays.copyOf(ranking, amount);
+    }
+
+    /**
+     * Get the amount of unique damagers.
+     *
+     * @return the amount of unique damagers
+     */
+    public int uniqueDamagers() {
+        return ranking.length;
+    }
+
+    /**
+     * Get the most recent damage entry.
+     *
+     * @return the most recent damage. null if no damage has been recorded
+     */
+    @Nullable
+    public DamageEntry getMostRecentDamage() {
+        return mostRecentDamage;
+    }
+
+    /**
+     * Get the amount of damage entries retained by the history's log.
+     *
+     * @return the history size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time (in milliseconds since epoch) at which damage was last recorded.
+     *
+     * @return the last recorded time
+     */
+    public long getLastRecordedTime() {
+        return lastRecordedTime;
+    }
+
+}
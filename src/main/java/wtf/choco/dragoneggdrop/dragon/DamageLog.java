@@ -0,0 +1,115 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A ring buffer of damage entries held in parallel primitive arrays. Entries are
+ * addressed by their offset from the most recent entry (offset 0). Once full, adding an
+ * entry overwrites the oldest one unless the log is unbounded, in which case it grows.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamageLog {
+
+    private static final int INITIAL_UNBOUNDED_CAPACITY = 16;
+
+    private long[] sourceMost, sourceLeast, timestamps;
+    private double[] damage;
+    private int head = -1, size = 0; // head is the index of the most recent entry
+
+    private final boolean bounded;
+
+    /**
+     * Construct a new damage log.
+     *
+     * @param capacity the maximum amount of entries. If not positive, the log is unbounded
+     */
+    DamageLog(int capacity) {
+        this.bounded = (capacity > 0);
+
+        int length = bounded ? capacity : INITIAL_UNBOUNDED_CAPACITY;
+        this.sourceMost = new long[length];
+        this.sourceLeast = new long[length];
+        this.timestamps = new long[length];
+        this.damage = new double[length];
+    }
+
+    void add(@NotNull UUID source, double damage, long timestamp) {
+        if (!bounded && size == this.damage.length) {
+            this.grow();
+        }
+
+        this.head = (head + 1) % this.damage.length;
+        this.sourceMost[head] = source.getMostSignificantBits();
+        this.sourceLeast[head] = source.getLeastSignificantBits();
+        this.damage[head] = damage;
+        this.timestamps[head] = timestamp;
+        this.size = Math.min(size + 1, this.damage.length);
+    }
+
+    /**
+     * Discard all entries recorded before the given timestamp.
+     *
+     * @param timestamp the oldest timestamp to retain
+     */
+    void discardBefore(long timestamp) {
+        while (size > 0 && timestamps[index(size - 1)] < timestamp) {
+            this.size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @NotNull
+    UUID getSource(int offset) {
+        int index = index(offset);
+        return new UUID(sourceMost[index], sourceLeast[index]);
+    }
+
+    double getDamage(int offset) {
+        return damage[index(offset)];
+    }
+
+    long getTimestamp(int offset) {
+        return timestamps[index(offset)];
+    }
+
+    void clear() {
+        this.head = -1;
+        this.size = 0;
+    }
+
+    private int index(int offset) {
+        int index = head - offset;
+        return (index < 0) ? index + damage.length : index;
+    }
+
+    private void grow() {
+        int length = damage.length, capacity = length * 2;
+
+        // Unroll so the oldest entry is at index 0 and the most recent at size - 1
+        int oldest = index(size - 1);
+        this.sourceMost = unroll(sourceMost, oldest, capacity);
+        this.sourceLeast = unroll(sourceLeast, oldest, capacity);
+        this.timestamps = unroll(timestamps, oldest, capacity);
+
+        double[] newDamage = new double[capacity];
+        System.arraycopy(damage, oldest, newDamage, 0, length - oldest);
+        System.arraycopy(damage, 0, newDamage, length - oldest, oldest);
+        this.damage = newDamage;
+
+        this.head = size - 1;
+    }
+
+    private static long @NotNull [] unroll(long @NotNull [] array, int oldest, int capacity) {
+        long[] result = Arrays.copyOfRange(array, oldest, oldest + capacity);
+        System.arraycopy(array, 0, result, array.length - oldest, oldest);
+        return result;
+    }
+
+}
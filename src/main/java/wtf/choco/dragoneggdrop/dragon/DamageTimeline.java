@@ -0,0 +1,95 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A sliding window of recent damage, bucketed by second. Each source's damage is summed
+ * into a ring of per-second buckets as it is recorded so that windowed totals may be
+ * queried without revisiting individual damage entries. Buckets are reused once they fall
+ * out of the window.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class DamageTimeline {
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private final int bucketCount;
+    private final long[] bucketSeconds; // The second (since epoch) held by each bucket
+    private final double[] bucketTotals;
+    private final Map<@NotNull UUID, double @NotNull []> sourceBuckets = new HashMap<>();
+
+    /**
+     * Construct a new timeline.
+     *
+     * @param windowSeconds the maximum window, in seconds, that may be queried
+     */
+    DamageTimeline(int windowSeconds) {
+        this.bucketCount = windowSeconds;
+        this.bucketSeconds = new long[windowSeconds];
+        this.bucketTotals = new double[windowSeconds];
+        Arrays.fill(bucketSeconds, -1);
+    }
+
+    int getWindowSeconds() {
+        return bucketCount;
+    }
+
+    void record(@NotNull UUID source, double damage, long timestamp) {
+        long second = timestamp / BUCKET_MILLIS;
+        int bucket = (int) (second % bucketCount);
+
+        if (bucketSeconds[bucket] != second) {
+            if (bucketSeconds[bucket] > second) {
+                return; // Older than the window (i.e. replayed out of order)
+            }
+
+            this.bucketSeconds[bucket] = second;
+            this.bucketTotals[bucket] = 0.0;
+            this.sourceBuckets.values().forEach(buckets -> buckets[bucket] = 0.0);
+        }
+
+        this.bucketTotals[bucket] += damage;
+        this.sourceBuckets.computeIfAbsent(source, key -> new double[bucketCount])[bucket] += damage;
+    }
+
+    /**
+     * Get the damage dealt within the given window ending at the given time.
+     *
+     * @param source the source whose damage to sum, or null to sum damage from all sources
+     * @param windowSeconds the window in seconds. Must not exceed the timeline's window
+     * @param now the time (in milliseconds since epoch) at which the window ends
+     *
+     * @return the damage dealt within the window
+     */
+    double getDamage(@Nullable UUID source, int windowSeconds, long now) {
+        double[] buckets = (source != null) ? sourceBuckets.get(source) : bucketTotals;
+        if (buckets == null) {
+            return 0.0;
+        }
+
+        long end = now / BUCKET_MILLIS, start = end - windowSeconds;
+        double damage = 0.0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            long second = bucketSeconds[bucket];
+            if (second > start && second <= end) {
+                damage += buckets[bucket];
+            }
+        }
+
+        return damage;
+    }
+
+    void clear() {
+        Arrays.fill(bucketSeconds, -1);
+        Arrays.fill(bucketTotals, 0.0);
+        this.sourceBuckets.clear();
+    }
+
+}
@@ -1,5 +1,8 @@
 package wtf.choco.dragoneggdrop.listeners;
 
+import org.bukkit.Bukkit;
+import org.bukkit.entity.EnderDragon;
+import org.bukkit.entity.EnderDragon.Phase;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Projectile;
@@ -17,6 +20,8 @@ import wtf.choco.dragoneggdrop.utils.DEDConstants;
 
 public final class DamageHistoryListener implements Listener {
 
+    private boolean flushScheduled = false;
+
     private final DragonEggDrop plugin;
 
     public DamageHistoryListener(@NotNull DragonEggDrop plugin) {
@@ -45,12 +50,27 @@ public final class DamageHistoryListener implements Listener {
             return;
         }
 
-        DamageHistory.forEntity(damaged).recordDamage(damager, event.getFinalDamage());
+        DamageHistory history = DamageHistory.forEntity(damaged);
+        Phase phase = ((EnderDragon) damaged).getPhase();
+        if (!DamageHistory.isCoalesceDamage()) {
+            history.recordDamage(damager, finalDamage, phase);
+            return;
+        }
+
+        // Merge same-tick hits from the same source and record them once the tick has passed
+        history.bufferDamage(damager, finalDamage, phase);
+        if (!flushScheduled) {
+            this.flushScheduled = true;
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                this.flushScheduled = false;
+                DamageHistory.flushAllPendingDamage();
+            });
+        }
     }
 
     @EventHandler
     private void onEntityDamagedByLightning(EntityDamageByEntityEvent event) {
-        if (event.getCause() != DamageCause.LIGHTNING || plugin.getConfig().getBoolean(DEDConstants.CONFIG_LIGHTNING_DAMAGES_ENTITIES, false)) {
+        if (event.getCause() != DamageCause.LIGHTNING || plugin.getDEDConfig().isLightningDamagesEntities()) {
             return;
         }
 
@@ -69,7 +69,7 @@ public final class DragonLifeListeners implements Listener {
             return;
         }
 
-        if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (plugin.getDEDConfig().isDisabledWorld(world)) {
             // These need to be reset in case there was a template from before
             BossBar bossBar = dragonBattle.getBossBar();
             dragon.setCustomName(null);
@@ -81,7 +81,7 @@ public final class DragonLifeListeners implements Listener {
 
         EndWorldWrapper worldWrapper = EndWorldWrapper.of(world);
         DragonTemplate template = worldWrapper.getRespawningTemplate();
-        if (plugin.getConfig().getBoolean(DEDConstants.CONFIG_STRICT_COUNTDOWN) && worldWrapper.isRespawnInProgress()) {
+        if (plugin.getDEDConfig().isStrictCountdown() && worldWrapper.isRespawnInProgress()) {
             worldWrapper.stopRespawn();
         }
 
@@ -112,7 +112,7 @@ public final class DragonLifeListeners implements Listener {
 
         EnderDragon dragon = (EnderDragon) event.getEntity();
         World world = event.getEntity().getWorld();
-        if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -120,10 +120,11 @@ public final class DragonLifeListeners implements Listener {
         EndWorldWrapper worldWrapper = EndWorldWrapper.of(world);
         worldWrapper.setDragonDying(true);
 
-        // Record the battle
+        // Record the battle. The dragon's damage history is no longer tracked, only retained by the record
+        DamageHistory damageHistory = DamageHistory.detach(dragon);
         DragonTemplate dragonTemplate = worldWrapper.getActiveTemplate();
         if (dragonTemplate != null) {
-            DragonBattleRecord record = new DragonBattleRecord(worldWrapper, dragonTemplate, DamageHistory.forEntity(dragon), System.currentTimeMillis(), worldWrapper.getLootTableOverride());
+            DragonBattleRecord record = new DragonBattleRecord(worldWrapper, dragonTemplate, damageHistory, System.currentTimeMillis(), worldWrapper.getLootTableOverride());
             worldWrapper.recordDragonBattle(record);
         }
 
@@ -147,12 +148,12 @@ public final class DragonLifeListeners implements Listener {
         Block block = event.getClickedBlock();
         ItemStack item = event.getItem();
         if (block == null || block.getType() != Material.BEDROCK || item == null || item.getType() != Material.END_CRYSTAL
-                || plugin.getConfig().getBoolean(DEDConstants.CONFIG_ALLOW_CRYSTAL_RESPAWNS) || player.hasPermission(DEDConstants.PERMISSION_OVERRIDE_CRYSTALS)) {
+                || plugin.getDEDConfig().isAllowCrystalRespawns() || player.hasPermission(DEDConstants.PERMISSION_OVERRIDE_CRYSTALS)) {
             return;
         }
 
         World world = player.getWorld();
-        if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -22,7 +22,6 @@ import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.dragon.loot.elements.DragonLootElementEgg;
 import wtf.choco.dragoneggdrop.placeholder.DragonEggDropPlaceholders;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
 
@@ -39,7 +38,7 @@ public final class LootListeners implements Listener {
         Item item = event.getEntity();
         World world = item.getWorld();
 
-        if (world.getEnvironment() != Environment.THE_END || plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (world.getEnvironment() != Environment.THE_END || plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -8,7 +8,6 @@ import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.boss.DragonBattle;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -20,8 +19,7 @@ import org.jetbrains.annotations.NotNull;
 
 import wtf.choco.commons.util.MathUtil;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
-import wtf.choco.dragoneggdrop.utils.ConfigUtils;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
+import wtf.choco.dragoneggdrop.utils.DEDConfig;
 import wtf.choco.dragoneggdrop.world.DragonRespawnData;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
 
@@ -42,7 +40,7 @@ public final class PortalClickListener implements Listener {
 
         Player player = event.getPlayer();
         World world = player.getWorld();
-        if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -74,9 +72,9 @@ public final class PortalClickListener implements Listener {
             return;
         }
 
-        FileConfiguration config = plugin.getConfig();
-        boolean condensed = config.getBoolean(DEDConstants.CONFIG_RESPAWN_MESSAGES_CONDENSED);
-        TimeUnit[] omitions = ConfigUtils.getTimeUnits(config.getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_OMIT_TIME_UNITS));
+        DEDConfig config = plugin.getDEDConfig();
+        boolean condensed = config.isRespawnMessagesCondensed();
+        TimeUnit[] omitions = config.getRespawnMessagesOmittedTimeUnits();
 
         DragonEggDrop.sendMessage(player, "Dragon will respawn in " + ChatColor.YELLOW + MathUtil.getFormattedTime(respawnData.getRemainingTime(TimeUnit.SECONDS), TimeUnit.SECONDS, condensed, omitions));
     }
@@ -12,7 +12,6 @@ import org.bukkit.event.player.PlayerJoinEvent;
 
 import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
 import wtf.choco.dragoneggdrop.world.RespawnReason;
 
@@ -27,7 +26,7 @@ public final class RespawnListeners implements Listener {
     @EventHandler
     private void onPlayerSwitchWorlds(PlayerChangedWorldEvent event) {
         World world = event.getPlayer().getWorld();
-        if (world.getEnvironment() != Environment.THE_END || plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (world.getEnvironment() != Environment.THE_END || plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -51,7 +50,7 @@ public final class RespawnListeners implements Listener {
         }
 
         // Start the respawn countdown if joining an empty world
-        if (plugin.getConfig().getBoolean(DEDConstants.CONFIG_RESPAWN_ON_JOIN, false)) {
+        if (plugin.getDEDConfig().isRespawnOnJoin()) {
             if (world.getPlayers().size() > 1 || worldWrapper.isRespawnInProgress() || world.getEntitiesByClass(EnderDragon.class).size() == 0) {
                 return;
             }
@@ -71,7 +70,7 @@ public final class RespawnListeners implements Listener {
     @EventHandler
     private void onPlayerJoin(PlayerJoinEvent event) {
         World world = event.getPlayer().getWorld();
-        if (world.getEnvironment() != Environment.THE_END || plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
+        if (world.getEnvironment() != Environment.THE_END || plugin.getDEDConfig().isDisabledWorld(world)) {
             return;
         }
 
@@ -86,7 +85,7 @@ public final class RespawnListeners implements Listener {
         }
 
         // Dragon respawn logic
-        if (!plugin.getConfig().getBoolean(DEDConstants.CONFIG_RESPAWN_ON_JOIN, false)) {
+        if (!plugin.getDEDConfig().isRespawnOnJoin()) {
             return;
         }
 
@@ -0,0 +1,78 @@
+package wtf.choco.dragoneggdrop.listeners;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.World.Environment;
+import org.bukkit.boss.DragonBattle;
+import org.bukkit.entity.EnderDragon;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import wtf.choco.dragoneggdrop.api.BattleStateChangeEvent;
+import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+
+public final class WorldListeners implements Listener {
+
+    @EventHandler
+    private void onWorldLoad(WorldLoadEvent event) {
+        World world = event.getWorld();
+        if (world.getEnvironment() != Environment.THE_END) {
+            return;
+        }
+
+        EndWorldWrapper.load(world);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    private void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        if (world.getEnvironment() != Environment.THE_END) {
+            return;
+        }
+
+        EndWorldWrapper.unload(world);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    private void onBattleStateChange(BattleStateChangeEvent event) {
+        EnderDragon dragon = event.getDragon();
+        DragonBattle dragonBattle = event.getDragonBattle();
+
+        World world = (dragon != null) ? dragon.getWorld() : null;
+        if (world == null && dragonBattle != null) {
+            Location portalLocation = dragonBattle.getEndPortalLocation();
+            world = (portalLocation != null) ? portalLocation.getWorld() : null;
+        }
+
+        if (world != null) {
+            EndWorldWrapper.of(world).requestDragonCheck();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    private void onChunkUnload(ChunkUnloadEvent event) {
+        World world = event.getWorld();
+        if (world.getEnvironment() != Environment.THE_END) {
+            return;
+        }
+
+        EndWorldWrapper worldWrapper = EndWorldWrapper.get(world.getUID());
+        if (worldWrapper == null) {
+            return;
+        }
+
+        // The dragon is unreachable once its chunk unloads. Check its state rather than wait for the next poll
+        for (Entity entity : event.getChunk().getEntities()) {
+            if (entity instanceof EnderDragon) {
+                worldWrapper.requestDragonCheck();
+                break;
+            }
+        }
+    }
+
+}
@@ -2,7 +2,11 @@ package wtf.choco.dragoneggdrop.particle;
 
 import com.google.common.base.Preconditions;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -23,19 +27,35 @@ import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
  */
 public class AnimatedParticleSession {
 
+    // Computation state. Owned by a worker thread while frames are computed asynchronously
     private int animationTick = 0;
     private double theta = 0.0;
     private int wait = 0;
+    private double y, frameY;
+    private double[] pointOffsets = new double[16]; // Interleaved x and z offsets of the last computed frame
+    private int pointCount = 0;
 
     private final ParticleShapeDefinition shape;
     private final List<@NotNull ConditionalEquationData> equationData;
 
     private final World world;
+    private final double x, z;
     private final Location currentLocation;
     private final ParticleVariables variables;
     private final ConditionContext equationContext;
+    private final ParticleKeyframes keyframes;
 
-    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world, double x, double y, double z) {
+    // Stop state. The terminal y is resolved on the first stop check unless set explicitly
+    private double terminalY = Double.NaN;
+    private int terminalRevalidationInterval = 0, ticksSinceRevalidation = 0;
+
+    // Asynchronous computation state
+    private ParticleFrameRing ring;
+    private double[] customVariables;
+    private final AtomicBoolean computing = new AtomicBoolean();
+    private volatile RuntimeException computationFailure;
+
+    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world, double x, double y, double z, @Nullable ParticleKeyframes keyframes) {
         Preconditions.checkArgument(definition != null, "definition must not be null");
         Preconditions.checkArgument(equationData != null, "equationData must not be null");
         Preconditions.checkArgument(world != null, "world must not be null");
@@ -44,52 +64,258 @@ public class AnimatedParticleSession {
         this.equationData = equationData;
 
         this.world = world;
+        this.x = x;
+        this.z = z;
         this.currentLocation = new Location(world, x, y, z);
+        this.y = y;
         this.variables = new ParticleVariables();
         this.equationContext = new ConditionContext(variables, world);
+        this.keyframes = keyframes;
     }
 
     /**
-     * Tick this animation.
+     * Tick this animation, spawning its particles in the world immediately.
      */
     public void tick() {
-        ConditionalEquationData equationData = getEquationDataForCurrentContext();
-        if (equationData == null) {
+        this.tick(null);
+    }
+
+    /**
+     * Tick this animation, writing its particles into the given frame buffer to be sent
+     * to viewers when the buffer is next flushed. Each displayed frame is written as one
+     * buffer frame originating at this session's current location.
+     * <p>
+     * If this session is {@link #isComputedAsynchronously() computed asynchronously}, the
+     * next frame computed ahead of time is displayed instead. Should no such frame be ready,
+     * the animation stalls for this tick.
+     *
+     * @param buffer the buffer into which particles should be written. If null, particles
+     * are spawned in the world immediately
+     */
+    public void tick(@Nullable ParticleFrameBuffer buffer) {
+        if (ring != null) {
+            RuntimeException failure = computationFailure;
+            if (failure != null) {
+                throw failure;
+            }
+
+            if (ring.isEmpty()) {
+                return;
+            }
+
+            int entry = ring.peek();
+            ConditionalEquationData equationData = ring.getData(entry);
+            if (equationData != null) {
+                this.display(equationData, buffer, ring.getFrameY(entry), ring.getOffsets(), ring.getOffsetStart(entry), ring.getPointCount(entry));
+            }
+
+            this.currentLocation.setY(ring.getNextY(entry));
+            this.ring.poll();
             return;
         }
 
-        if (++wait < equationData.getFrameIntervalTicks()) {
+        ConditionalEquationData equationData = computeTick(true);
+        if (equationData != null) {
+            this.display(equationData, buffer, frameY, pointOffsets, 0, pointCount);
+            this.currentLocation.setY(y);
+        }
+    }
+
+    /**
+     * Compute frames of this animation ahead of time on worker threads rather than when
+     * ticked. Frames are held in a ring of the given capacity and only displayed by
+     * {@link #tick(ParticleFrameBuffer)}. Must be called before this session is first ticked.
+     * <p>
+     * Custom variables are queried on the server thread when {@link #requestFrames(Executor)}
+     * is called. Frames are therefore computed using custom variable values up to the ring's
+     * capacity in ticks old.
+     *
+     * @param capacity the maximum amount of ticks to compute ahead of time
+     *
+     * @return true if frames will be computed asynchronously, false if this session has
+     * already been ticked
+     */
+    boolean computeAsynchronously(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+
+        if (ring != null || animationTick != 0 || wait != 0) {
+            return ring != null;
+        }
+
+        int maxPoints = 1;
+        for (ConditionalEquationData data : equationData) {
+            maxPoints = Math.max(maxPoints, getPointCount(data));
+        }
+
+        this.ring = new ParticleFrameRing(capacity, maxPoints);
+        return true;
+    }
+
+    /**
+     * Check whether or not this session's frames are computed asynchronously.
+     *
+     * @return true if asynchronous, false if computed when ticked
+     */
+    public boolean isComputedAsynchronously() {
+        return ring != null;
+    }
+
+    /**
+     * Request that more frames be computed if this session is computed asynchronously and
+     * less than half of its frames remain. Must be called on the server thread.
+     *
+     * @param executor the executor on which to compute frames. If null, frames are computed
+     * immediately on the calling thread
+     */
+    void requestFrames(@Nullable Executor executor) {
+        if (ring == null || ring.size() > ring.getCapacity() / 2 || !computing.compareAndSet(false, true)) {
             return;
         }
 
+        this.customVariables = ParticleVariables.queryCustomVariables(equationContext, customVariables);
+
+        if (executor == null) {
+            this.computeFrames();
+            return;
+        }
+
+        try {
+            executor.execute(this::computeFrames);
+        } catch (RejectedExecutionException e) {
+            this.computing.set(false); // Shutting down. Try again later
+        }
+    }
+
+    private void computeFrames() {
+        try {
+            this.variables.updateCustomVariables(customVariables);
+
+            while (!ring.isFull()) {
+                ConditionalEquationData equationData = computeTick(false);
+                this.ring.offer(equationData, frameY, y, pointOffsets, (equationData != null) ? pointCount : 0);
+            }
+        } catch (RuntimeException e) {
+            this.computationFailure = e;
+        } finally {
+            this.computing.set(false);
+        }
+    }
+
+    @Nullable
+    private ConditionalEquationData computeTick(boolean queryCustomVariables) {
+        // Replay precomputed frames where available. Beyond them, evaluate live
+        int keyframe = (keyframes != null && animationTick < keyframes.getFrameCount()) ? animationTick : -1;
+
+        ConditionalEquationData equationData = (keyframe != -1) ? keyframes.getData(keyframe) : getEquationDataForCurrentContext();
+        if (equationData == null) {
+            return null;
+        }
+
+        if (++wait < equationData.getFrameIntervalTicks()) {
+            return null;
+        }
+
         this.animationTick++;
         this.theta += equationData.getThetaIncrement();
-        this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, 0.0);
+        this.variables.update(x, y, z, animationTick, 0.0);
+        if (keyframe == -1 && queryCustomVariables) {
+            this.variables.updateCustomVariables(equationContext);
+        }
 
+        this.pointCount = 0;
         double streamSeparationDegrees = 360.0 / Math.max(equationData.getParticleStreams(), 1);
         if (streamSeparationDegrees < 360) { // If there is more than one stream...
             for (int i = 0; i <= 360; i += streamSeparationDegrees) {
-                this.displayParticles(equationData);
-                this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, theta += streamSeparationDegrees);
+                this.computePoint(equationData, keyframe);
+                this.variables.update(x, y, z, animationTick, theta += streamSeparationDegrees);
             }
         }
         else {
-            this.displayParticles(equationData);
+            this.computePoint(equationData, keyframe);
         }
 
-        this.currentLocation.subtract(0.0D, MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0), 0.0D);
+        this.frameY = y;
+        this.y -= MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0);
         this.wait = 0;
+        return equationData;
     }
 
     /**
      * Check whether or not this particle session should stop animating. Note that despite the
      * result of this method, this session may still be ticked. The stopping of the animation should
      * be handled by the class calling upon this session.
+     * <p>
+     * A session should stop once it descends below its {@link #getTerminalY() terminal y}.
+     * No blocks are accessed by this method unless the terminal y has yet to be resolved or
+     * is due to be {@link #setTerminalRevalidationInterval(int) revalidated}.
      *
      * @return true if should stop, false otherwise
      */
     public boolean shouldStop() {
-        return currentLocation.getBlock().getType() == Material.BEDROCK || equationData.isEmpty();
+        if (equationData.isEmpty()) {
+            return true;
+        }
+
+        if (Double.isNaN(terminalY)) {
+            this.terminalY = findTerminalY(currentLocation.getY());
+        }
+        else if (terminalRevalidationInterval > 0 && ++ticksSinceRevalidation >= terminalRevalidationInterval) {
+            this.ticksSinceRevalidation = 0;
+            this.terminalY = findTerminalY(currentLocation.getY());
+        }
+
+        return currentLocation.getY() < terminalY;
+    }
+
+    /**
+     * Set the height below which this session should stop animating.
+     *
+     * @param terminalY the terminal y
+     */
+    public void setTerminalY(double terminalY) {
+        Preconditions.checkArgument(!Double.isNaN(terminalY), "terminalY must be a number");
+        this.terminalY = terminalY;
+    }
+
+    /**
+     * Get the height below which this session should stop animating. Unless explicitly set,
+     * this is the top of the first bedrock block beneath the session's starting location, or
+     * the bottom of the world if there is none. This is resolved once, on the first call to
+     * either this method or {@link #shouldStop()}.
+     *
+     * @return the terminal y
+     */
+    public double getTerminalY() {
+        if (Double.isNaN(terminalY)) {
+            this.terminalY = findTerminalY(currentLocation.getY());
+        }
+
+        return terminalY;
+    }
+
+    /**
+     * Set the interval (in calls to {@link #shouldStop()}) at which the terminal y should
+     * be resolved again from the blocks beneath this session's current location, in case
+     * they have changed since the animation began. This replaces any terminal y that was
+     * explicitly set.
+     *
+     * @param terminalRevalidationInterval the interval. If 0, the terminal y is never
+     * revalidated
+     */
+    public void setTerminalRevalidationInterval(int terminalRevalidationInterval) {
+        Preconditions.checkArgument(terminalRevalidationInterval >= 0, "terminalRevalidationInterval must not be negative");
+        this.terminalRevalidationInterval = terminalRevalidationInterval;
+        this.ticksSinceRevalidation = 0;
+    }
+
+    /**
+     * Get the interval (in calls to {@link #shouldStop()}) at which the terminal y is
+     * resolved again.
+     *
+     * @return the interval. 0 if never revalidated
+     */
+    public int getTerminalRevalidationInterval() {
+        return terminalRevalidationInterval;
     }
 
     /**
@@ -102,6 +328,16 @@ public class AnimatedParticleSession {
         return currentLocation.clone();
     }
 
+    /**
+     * Get the world in which this session is animating.
+     *
+     * @return the world
+     */
+    @NotNull
+    public World getWorld() {
+        return world;
+    }
+
     /**
      * Get the shape definition being animated by this session.
      *
@@ -112,6 +348,17 @@ public class AnimatedParticleSession {
         return shape;
     }
 
+    private double findTerminalY(double fromY) {
+        int blockX = currentLocation.getBlockX(), blockZ = currentLocation.getBlockZ();
+        for (int blockY = (int) Math.floor(fromY); blockY >= 0; blockY--) {
+            if (world.getBlockAt(blockX, blockY, blockZ).getType() == Material.BEDROCK) {
+                return blockY + 1.0;
+            }
+        }
+
+        return 0.0;
+    }
+
     @Nullable
     private ConditionalEquationData getEquationDataForCurrentContext() {
         for (ConditionalEquationData equation : equationData) {
@@ -123,12 +370,59 @@ public class AnimatedParticleSession {
         return null;
     }
 
-    private void displayParticles(@NotNull ConditionalEquationData equationData) {
-        double x = equationData.getXExpression().evaluate(variables), z = equationData.getZExpression().evaluate(variables);
+    private void computePoint(@NotNull ConditionalEquationData equationData, int keyframe) {
+        double offsetX, offsetZ;
+        if (keyframe != -1) {
+            offsetX = keyframes.getOffsetX(keyframe, pointCount);
+            offsetZ = keyframes.getOffsetZ(keyframe, pointCount);
+        }
+        else {
+            offsetX = equationData.getXExpression().evaluate(variables);
+            offsetZ = equationData.getZExpression().evaluate(variables);
+        }
+
+        if ((pointCount + 1) * 2 > pointOffsets.length) {
+            this.pointOffsets = Arrays.copyOf(pointOffsets, pointOffsets.length * 2);
+        }
+
+        this.pointOffsets[pointCount * 2] = offsetX;
+        this.pointOffsets[pointCount * 2 + 1] = offsetZ;
+        this.pointCount++;
+    }
+
+    private void display(@NotNull ConditionalEquationData equationData, @Nullable ParticleFrameBuffer buffer, double y, double @NotNull [] offsets, int offsetStart, int points) {
+        if (buffer != null) {
+            buffer.beginFrame(world, x, y, z, equationData);
+
+            for (int i = 0; i < points; i++) {
+                int offset = offsetStart + (i * 2);
+                buffer.add(x + offsets[offset], y, z + offsets[offset + 1]);
+            }
+
+            return;
+        }
+
+        Location location = new Location(world, x, y, z);
+        for (int i = 0; i < points; i++) {
+            int offset = offsetStart + (i * 2);
+            location.setX(x + offsets[offset]);
+            location.setZ(z + offsets[offset + 1]);
+            this.world.spawnParticle(equationData.getParticle(), location, equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
+        }
+    }
+
+    private static int getPointCount(@NotNull ConditionalEquationData equationData) {
+        double streamSeparationDegrees = 360.0 / Math.max(equationData.getParticleStreams(), 1);
+        if (streamSeparationDegrees >= 360) {
+            return 1;
+        }
+
+        int points = 0;
+        for (int i = 0; i <= 360; i += streamSeparationDegrees) { // Same iteration as when computing a frame
+            points++;
+        }
 
-        this.currentLocation.add(x, 0.0, z);
-        this.world.spawnParticle(equationData.getParticle(), currentLocation, equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
-        this.currentLocation.subtract(x, 0.0, z);
+        return points;
     }
 
 }
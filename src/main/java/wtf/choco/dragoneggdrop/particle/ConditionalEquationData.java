@@ -108,6 +108,31 @@ public class ConditionalEquationData {
         return true;
     }
 
+    /**
+     * Check whether or not this equation data depends only on the t and theta variables.
+     * That is, both expressions and all conditions are deterministic.
+     *
+     * @return true if deterministic, false otherwise
+     *
+     * @see MathExpression#isDeterministic()
+     * @see EquationCondition#isDeterministic()
+     */
+    public boolean isDeterministic() {
+        if (!xExpression.isDeterministic() || !zExpression.isDeterministic()) {
+            return false;
+        }
+
+        if (conditions != null) {
+            for (EquationCondition condition : conditions) {
+                if (!condition.isDeterministic()) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Get the particle to be spawned for this shape definition.
      *
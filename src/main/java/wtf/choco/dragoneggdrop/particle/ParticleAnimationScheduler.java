@@ -0,0 +1,481 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Ticks every live {@link AnimatedParticleSession} from a single scheduler task and
+ * flushes their particles through a shared {@link ParticleFrameBuffer} once per tick.
+ * <p>
+ * The amount of concurrently animated sessions may be capped, and ticking may be limited
+ * to a time budget per server tick. Should the budget be exceeded, the remaining sessions
+ * are ticked first on the next server tick so that every session progresses evenly.
+ * <p>
+ * If {@link #setWorkerThreads(int) worker threads} are enabled, the frames of sessions
+ * whose shapes are not deterministic are computed ahead of time on the workers and the
+ * server thread only displays them. Deterministic shapes replay precomputed keyframes and
+ * gain nothing from workers.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleAnimationScheduler {
+
+    /**
+     * The default amount of ticks for which frames are computed ahead of time by workers.
+     */
+    public static final int DEFAULT_FRAME_LOOKAHEAD = 20;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private AnimatedParticleSession[] sessions = new AnimatedParticleSession[INITIAL_CAPACITY];
+    private Predicate<@NotNull AnimatedParticleSession>[] stopConditions = createPredicateArray(INITIAL_CAPACITY);
+    private Consumer<@NotNull AnimatedParticleSession>[] completionCallbacks = createConsumerArray(INITIAL_CAPACITY);
+    private boolean[] finished = new boolean[INITIAL_CAPACITY];
+    private int size = 0, cursor = 0;
+
+    private int maxSessions = -1;
+    private long tickBudgetNanos = Long.MAX_VALUE;
+
+    private ExecutorService workers;
+    private int workerThreads = 0, frameLookahead = DEFAULT_FRAME_LOOKAHEAD;
+
+    private BukkitTask task;
+
+    private final Plugin plugin;
+    private final ParticleFrameBuffer buffer;
+
+    /**
+     * Construct a new animation scheduler.
+     *
+     * @param plugin the plugin with which to schedule the tick task
+     * @param buffer the buffer into which sessions write their particles
+     */
+    public ParticleAnimationScheduler(@NotNull Plugin plugin, @NotNull ParticleFrameBuffer buffer) {
+        Preconditions.checkArgument(plugin != null, "plugin must not be null");
+        Preconditions.checkArgument(buffer != null, "buffer must not be null");
+
+        this.plugin = plugin;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Start ticking scheduled sessions every server tick. If already started, this method
+     * does nothing.
+     */
+    public void start() {
+        if (task == null) {
+            this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stop ticking sessions, stop all worker threads and cancel all active sessions without
+     * completing them.
+     */
+    public void shutdown() {
+        if (task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        if (workers != null) {
+            this.workers.shutdownNow();
+            this.workers = null;
+        }
+
+        this.cancelAll();
+        this.buffer.clear();
+    }
+
+    /**
+     * Set the maximum amount of sessions that may be animated at once.
+     *
+     * @param maxSessions the maximum amount of sessions. If negative, unlimited
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Get the maximum amount of sessions that may be animated at once.
+     *
+     * @return the maximum amount of sessions. -1 if unlimited
+     */
+    public int getMaxSessions() {
+        return Math.max(maxSessions, -1);
+    }
+
+    /**
+     * Set the maximum amount of time to spend ticking sessions each server tick. At least
+     * one session is always ticked per server tick regardless of the budget.
+     *
+     * @param tickBudgetMillis the budget in milliseconds. If negative, unlimited
+     */
+    public void setTickBudget(double tickBudgetMillis) {
+        this.tickBudgetNanos = (tickBudgetMillis >= 0) ? (long) (tickBudgetMillis * 1_000_000L) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Get the maximum amount of time to spend ticking sessions each server tick.
+     *
+     * @return the budget in milliseconds. -1 if unlimited
+     */
+    public double getTickBudget() {
+        return (tickBudgetNanos != Long.MAX_VALUE) ? tickBudgetNanos / 1_000_000.0 : -1;
+    }
+
+    /**
+     * Set the amount of worker threads on which frames are computed ahead of time. Sessions
+     * already being computed asynchronously will continue to be so, on the server thread if
+     * no workers remain.
+     *
+     * @param workerThreads the amount of worker threads. If 0, frames are computed when
+     * sessions are ticked
+     */
+    public void setWorkerThreads(int workerThreads) {
+        Preconditions.checkArgument(workerThreads >= 0, "workerThreads must not be negative");
+
+        if (workerThreads == this.workerThreads) {
+            return;
+        }
+
+        if (workers != null) {
+            this.workers.shutdown(); // Let queued computations complete
+            this.workers = null;
+        }
+
+        this.workerThreads = workerThreads;
+        if (workerThreads > 0) {
+            this.workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactoryBuilder().setNameFormat("DragonEggDrop Particle Worker #%d").setDaemon(true).build());
+        }
+    }
+
+    /**
+     * Get the amount of worker threads on which frames are computed ahead of time.
+     *
+     * @return the amount of worker threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Set the amount of ticks for which frames are computed ahead of time by workers. Only
+     * affects sessions scheduled hereafter. Custom variables used by these frames may be up
+     * to this many ticks old.
+     *
+     * @param frameLookahead the amount of ticks. Must be positive
+     */
+    public void setFrameLookahead(int frameLookahead) {
+        Preconditions.checkArgument(frameLookahead > 0, "frameLookahead must be positive");
+        this.frameLookahead = frameLookahead;
+    }
+
+    /**
+     * Get the amount of ticks for which frames are computed ahead of time by workers.
+     *
+     * @return the amount of ticks
+     */
+    public int getFrameLookahead() {
+        return frameLookahead;
+    }
+
+    /**
+     * Get the buffer into which scheduled sessions write their particles.
+     *
+     * @return the frame buffer
+     */
+    @NotNull
+    public ParticleFrameBuffer getFrameBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Schedule a session to be animated until it {@link AnimatedParticleSession#shouldStop()
+     * should stop} or the given stop condition is met, after which the completion callback
+     * is invoked on the server thread.
+     *
+     * @param session the session to animate
+     * @param stopCondition an additional condition under which the session should stop. May
+     * be null
+     * @param onComplete the callback to invoke when the session stops. May be null
+     *
+     * @return true if scheduled, false if the maximum amount of sessions are already being
+     * animated or the session is already scheduled
+     */
+    public boolean schedule(@NotNull AnimatedParticleSession session, @Nullable Predicate<@NotNull AnimatedParticleSession> stopCondition, @Nullable Consumer<@NotNull AnimatedParticleSession> onComplete) {
+        Preconditions.checkArgument(session != null, "session must not be null");
+
+        if ((maxSessions >= 0 && size >= maxSessions) || indexOf(session) != -1) {
+            return false;
+        }
+
+        if (size == sessions.length) {
+            this.grow();
+        }
+
+        this.sessions[size] = session;
+        this.stopConditions[size] = stopCondition;
+        this.completionCallbacks[size] = onComplete;
+        this.size++;
+
+        // Start computing ahead now so frames are ready by the first tick
+        if (workers != null && !session.getShape().isDeterministic() && session.computeAsynchronously(frameLookahead)) {
+            session.requestFrames(workers);
+        }
+
+        return true;
+    }
+
+    /**
+     * Schedule a session to be animated until it {@link AnimatedParticleSession#shouldStop()
+     * should stop}, after which the completion callback is invoked on the server thread.
+     *
+     * @param session the session to animate
+     * @param onComplete the callback to invoke when the session stops. May be null
+     *
+     * @return true if scheduled, false if the maximum amount of sessions are already being
+     * animated or the session is already scheduled
+     */
+    public boolean schedule(@NotNull AnimatedParticleSession session, @Nullable Consumer<@NotNull AnimatedParticleSession> onComplete) {
+        return schedule(session, null, onComplete);
+    }
+
+    /**
+     * Cancel an active session. Its completion callback will not be invoked.
+     *
+     * @param session the session to cancel
+     *
+     * @return true if cancelled, false if the session was not active
+     */
+    public boolean cancel(@NotNull AnimatedParticleSession session) {
+        int index = indexOf(session);
+        if (index == -1) {
+            return false;
+        }
+
+        int moved = size - index - 1;
+        System.arraycopy(sessions, index + 1, sessions, index, moved);
+        System.arraycopy(stopConditions, index + 1, stopConditions, index, moved);
+        System.arraycopy(completionCallbacks, index + 1, completionCallbacks, index, moved);
+
+        this.size--;
+        this.sessions[size] = null;
+        this.stopConditions[size] = null;
+        this.completionCallbacks[size] = null;
+
+        if (index < cursor) {
+            this.cursor--;
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancel all active sessions. Their completion callbacks will not be invoked.
+     */
+    public void cancelAll() {
+        Arrays.fill(sessions, 0, size, null);
+        Arrays.fill(stopConditions, 0, size, null);
+        Arrays.fill(completionCallbacks, 0, size, null);
+        this.size = 0;
+        this.cursor = 0;
+    }
+
+    /**
+     * Check whether or not the given session is being animated by this scheduler.
+     *
+     * @param session the session to check
+     *
+     * @return true if active, false otherwise
+     */
+    public boolean isActive(@NotNull AnimatedParticleSession session) {
+        return indexOf(session) != -1;
+    }
+
+    /**
+     * Get the amount of sessions being animated.
+     *
+     * @return the active session count
+     */
+    public int getActiveSessionCount() {
+        return size;
+    }
+
+    /**
+     * Get all sessions being animated. Changes made to the returned list will not be
+     * reflected in this scheduler.
+     *
+     * @return the active sessions
+     */
+    @NotNull
+    public List<@NotNull AnimatedParticleSession> getActiveSessions() {
+        return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(sessions).subList(0, size)));
+    }
+
+    /**
+     * Get all sessions being animated in the given world. Changes made to the returned
+     * list will not be reflected in this scheduler.
+     *
+     * @param world the world whose sessions to get
+     *
+     * @return the active sessions in the world
+     */
+    @NotNull
+    public List<@NotNull AnimatedParticleSession> getActiveSessions(@NotNull World world) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+
+        List<@NotNull AnimatedParticleSession> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (sessions[i].getWorld() == world) {
+                result.add(sessions[i]);
+            }
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    private void tick() {
+        int count = size;
+        if (count == 0) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        int start = (cursor < count) ? cursor : 0;
+        int completed = 0;
+
+        this.cursor = start;
+        for (int ticked = 0; ticked < count; ticked++) {
+            int index = (start + ticked) % count;
+            if (ticked > 0 && System.nanoTime() - startTime > tickBudgetNanos) {
+                this.cursor = index; // Out of time. Resume from here next tick
+                break;
+            }
+
+            AnimatedParticleSession session = sessions[index];
+            try {
+                session.tick(buffer);
+
+                Predicate<@NotNull AnimatedParticleSession> stopCondition = stopConditions[index];
+                this.finished[index] = session.shouldStop() || (stopCondition != null && stopCondition.test(session));
+
+                if (!finished[index]) {
+                    session.requestFrames(workers);
+                }
+            } catch (RuntimeException e) {
+                this.plugin.getLogger().log(Level.SEVERE, "Could not tick particle animation of shape \"" + session.getShape().getId() + "\". Stopping it", e);
+                this.finished[index] = true;
+            }
+
+            if (finished[index]) {
+                completed++;
+            }
+        }
+
+        this.buffer.flush();
+
+        if (completed > 0) {
+            this.complete(count, completed);
+        }
+    }
+
+    private void complete(int count, int completed) {
+        AnimatedParticleSession[] completedSessions = new AnimatedParticleSession[completed];
+        Consumer<@NotNull AnimatedParticleSession>[] callbacks = createConsumerArray(completed);
+
+        // Compact remaining sessions, preserving order so the round-robin cursor remains valid
+        int write = 0, removed = 0, cursorShift = 0;
+        for (int read = 0; read < count; read++) {
+            if (finished[read]) {
+                completedSessions[removed] = sessions[read];
+                callbacks[removed++] = completionCallbacks[read];
+                this.finished[read] = false;
+
+                if (read < cursor) {
+                    cursorShift++;
+                }
+
+                continue;
+            }
+
+            this.sessions[write] = sessions[read];
+            this.stopConditions[write] = stopConditions[read];
+            this.completionCallbacks[write] = completionCallbacks[read];
+            write++;
+        }
+
+        // Sessions scheduled while ticking (i.e. from another plugin's event handler) sit after the first count
+        int scheduledLate = size - count;
+        System.arraycopy(sessions, count, sessions, write, scheduledLate);
+        System.arraycopy(stopConditions, count, stopConditions, write, scheduledLate);
+        System.arraycopy(completionCallbacks, count, completionCallbacks, write, scheduledLate);
+
+        int newSize = write + scheduledLate;
+        Arrays.fill(sessions, newSize, size, null);
+        Arrays.fill(stopConditions, newSize, size, null);
+        Arrays.fill(completionCallbacks, newSize, size, null);
+        this.size = newSize;
+        this.cursor -= cursorShift;
+
+        // Callbacks are run last as they may schedule new sessions
+        for (int i = 0; i < completed; i++) {
+            if (callbacks[i] == null) {
+                continue;
+            }
+
+            try {
+                callbacks[i].accept(completedSessions[i]);
+            } catch (RuntimeException e) {
+                this.plugin.getLogger().log(Level.SEVERE, "An error occurred while completing particle animation of shape \"" + completedSessions[i].getShape().getId() + "\"", e);
+            }
+        }
+    }
+
+    private int indexOf(@NotNull AnimatedParticleSession session) {
+        for (int i = 0; i < size; i++) {
+            if (sessions[i] == session) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void grow() {
+        int capacity = sessions.length * 2;
+
+        this.sessions = Arrays.copyOf(sessions, capacity);
+        this.stopConditions = Arrays.copyOf(stopConditions, capacity);
+        this.completionCallbacks = Arrays.copyOf(completionCallbacks, capacity);
+        this.finished = Arrays.copyOf(finished, capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<@NotNull AnimatedParticleSession>[] createPredicateArray(int length) {
+        return new Predicate[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<@NotNull AnimatedParticleSession>[] createConsumerArray(int length) {
+        return new Consumer[length];
+    }
+
+}
@@ -0,0 +1,50 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a means of sending buffered particles to viewers. Frames that every nearby
+ * viewer receives in full detail may be emitted to the world at once. All other points are
+ * emitted once per viewer per flush of a {@link ParticleFrameBuffer} with every point that
+ * viewer should receive, allowing implementations to batch points however the underlying
+ * transport permits (i.e. bundling them into as few packets as possible).
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleEmitterBukkit
+ */
+@FunctionalInterface
+public interface ParticleEmitter {
+
+    /**
+     * Emit the selected points of a frame buffer to a single viewer.
+     *
+     * @param viewer the player to whom the points should be sent
+     * @param buffer the buffer holding the points
+     * @param points the indices of the points in the buffer to emit
+     * @param amounts the amount of particles to display for each selected point. Lower
+     * than the amount declared by the point's equation data for distant viewers
+     * @param count the amount of valid indices in the points array
+     */
+    public void emit(@NotNull Player viewer, @NotNull ParticleFrameBuffer buffer, @NotNull int[] points, @NotNull int[] amounts, int count);
+
+    /**
+     * Emit a range of points of a frame buffer to every player within range of particles
+     * spawned in the world (512 blocks). Only called for frames that every player in that
+     * range should receive in full detail, and that no player beyond it should receive.
+     *
+     * @param world the world in which the points should be emitted
+     * @param buffer the buffer holding the points
+     * @param start the index of the first point to emit (inclusive)
+     * @param end the index of the last point to emit (exclusive)
+     *
+     * @return true if emitted, false if the points should instead be passed to
+     * {@link #emit(Player, ParticleFrameBuffer, int[], int[], int)} for each viewer
+     */
+    public default boolean emitToWorld(@NotNull World world, @NotNull ParticleFrameBuffer buffer, int start, int end) {
+        return false;
+    }
+
+}
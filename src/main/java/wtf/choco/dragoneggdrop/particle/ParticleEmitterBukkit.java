@@ -0,0 +1,40 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The default {@link ParticleEmitter} implementation. Frames emitted to the world are
+ * spawned once per point with
+ * {@link World#spawnParticle(org.bukkit.Particle, double, double, double, int, double, double, double, double, Object, boolean)},
+ * the server then sending the same packet to every player in range. Points emitted to a
+ * single viewer (i.e. at reduced detail) are sent with
+ * {@link Player#spawnParticle(org.bukkit.Particle, double, double, double, int, double, double, double, double)}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleEmitterBukkit implements ParticleEmitter {
+
+    @Override
+    public void emit(@NotNull Player viewer, @NotNull ParticleFrameBuffer buffer, @NotNull int[] points, @NotNull int[] amounts, int count) {
+        for (int i = 0; i < count; i++) {
+            int point = points[i];
+            ConditionalEquationData data = buffer.getData(point);
+
+            viewer.spawnParticle(data.getParticle(), buffer.getX(point), buffer.getY(point), buffer.getZ(point), amounts[i], data.getParticleOffsetX(), data.getParticleOffsetY(), data.getParticleOffsetZ(), data.getParticleExtra());
+        }
+    }
+
+    @Override
+    public boolean emitToWorld(@NotNull World world, @NotNull ParticleFrameBuffer buffer, int start, int end) {
+        for (int point = start; point < end; point++) {
+            ConditionalEquationData data = buffer.getData(point);
+
+            world.spawnParticle(data.getParticle(), buffer.getX(point), buffer.getY(point), buffer.getZ(point), data.getParticleAmount(), data.getParticleOffsetX(), data.getParticleOffsetY(), data.getParticleOffsetZ(), data.getParticleExtra(), null, true);
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,459 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects the particle points of every {@link AnimatedParticleSession} over the course
+ * of a tick so they may be sent once per viewer rather than once per point. Points are
+ * held in primitive arrays and reused between flushes.
+ * <p>
+ * Points are grouped in frames, each with an origin (the session's current location).
+ * When flushing, the audience of a frame is determined once from its origin. Viewers
+ * beyond the {@link #setViewDistance(double) view distance} do not receive the frame at
+ * all, and viewers beyond the {@link #setReducedDetailDistance(double) reduced detail
+ * distance} receive every other stream at half the particle amount.
+ * <p>
+ * Frames received in full detail by every player within range of world particles are
+ * passed to {@link ParticleEmitter#emitToWorld(World, ParticleFrameBuffer, int, int)} once
+ * rather than to each viewer, allowing the emitter to spawn them in the world. Only frames
+ * for which some viewer is culled or receives reduced detail are emitted per viewer.
+ * <p>
+ * This buffer is not thread safe and should be written to and flushed only on the
+ * server thread.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleFrameBuffer {
+
+    /**
+     * The default view distance (in blocks). Matches the range of particles spawned with
+     * force in the world.
+     */
+    public static final double DEFAULT_VIEW_DISTANCE = 512.0;
+
+    /**
+     * The default reduced detail distance (in blocks).
+     */
+    public static final double DEFAULT_REDUCED_DETAIL_DISTANCE = 128.0;
+
+    // The range within which players receive particles spawned with force in the world
+    private static final double WORLD_PARTICLE_RANGE_SQUARED = 512.0 * 512.0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Points
+    private double[] x = new double[INITIAL_CAPACITY], y = new double[INITIAL_CAPACITY], z = new double[INITIAL_CAPACITY];
+    private int[] pointFrames = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // Frames
+    private World[] frameWorlds = new World[INITIAL_CAPACITY / 4];
+    private ConditionalEquationData[] frameData = new ConditionalEquationData[INITIAL_CAPACITY / 4];
+    private double[] frameX = new double[INITIAL_CAPACITY / 4], frameY = new double[INITIAL_CAPACITY / 4], frameZ = new double[INITIAL_CAPACITY / 4];
+    private int[] frameStart = new int[INITIAL_CAPACITY / 4];
+    private boolean[] frameEmitted = new boolean[INITIAL_CAPACITY / 4];
+    private int frameCount = 0;
+
+    private int[] selectedPoints = new int[INITIAL_CAPACITY], selectedAmounts = new int[INITIAL_CAPACITY];
+    private World[] flushedWorlds = new World[4];
+
+    // Viewers of the world being flushed
+    private Player[] viewers = new Player[8];
+    private double[] viewerX = new double[8], viewerY = new double[8], viewerZ = new double[8];
+    private int viewerCount = 0;
+
+    private double viewDistanceSquared = DEFAULT_VIEW_DISTANCE * DEFAULT_VIEW_DISTANCE;
+    private double reducedDetailDistanceSquared = DEFAULT_REDUCED_DETAIL_DISTANCE * DEFAULT_REDUCED_DETAIL_DISTANCE;
+
+    private ParticleEmitter emitter;
+
+    /**
+     * Construct a new frame buffer.
+     *
+     * @param emitter the emitter with which points will be sent to viewers
+     */
+    public ParticleFrameBuffer(@NotNull ParticleEmitter emitter) {
+        this.setEmitter(emitter);
+    }
+
+    /**
+     * Set the emitter with which points will be sent to viewers.
+     *
+     * @param emitter the emitter to set
+     */
+    public void setEmitter(@NotNull ParticleEmitter emitter) {
+        Preconditions.checkArgument(emitter != null, "emitter must not be null");
+        this.emitter = emitter;
+    }
+
+    /**
+     * Get the emitter with which points will be sent to viewers.
+     *
+     * @return the emitter
+     */
+    @NotNull
+    public ParticleEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Set the distance (in blocks) from a frame's origin beyond which viewers will not
+     * receive the frame.
+     *
+     * @param viewDistance the view distance. Must be positive
+     */
+    public void setViewDistance(double viewDistance) {
+        Preconditions.checkArgument(viewDistance > 0, "viewDistance must be positive");
+        this.viewDistanceSquared = viewDistance * viewDistance;
+    }
+
+    /**
+     * Get the distance (in blocks) from a frame's origin beyond which viewers will not
+     * receive the frame.
+     *
+     * @return the view distance
+     */
+    public double getViewDistance() {
+        return Math.sqrt(viewDistanceSquared);
+    }
+
+    /**
+     * Set the distance (in blocks) from a frame's origin beyond which viewers will receive
+     * a reduced version of the frame (every other stream at half the particle amount).
+     *
+     * @param reducedDetailDistance the reduced detail distance. If negative, frames are
+     * never reduced
+     */
+    public void setReducedDetailDistance(double reducedDetailDistance) {
+        this.reducedDetailDistanceSquared = (reducedDetailDistance >= 0) ? reducedDetailDistance * reducedDetailDistance : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get the distance (in blocks) from a frame's origin beyond which viewers will receive
+     * a reduced version of the frame.
+     *
+     * @return the reduced detail distance. -1 if frames are never reduced
+     */
+    public double getReducedDetailDistance() {
+        return (reducedDetailDistanceSquared != Double.POSITIVE_INFINITY) ? Math.sqrt(reducedDetailDistanceSquared) : -1;
+    }
+
+    /**
+     * Begin a new frame. All points subsequently {@link #add(double, double, double) added}
+     * belong to this frame until the next frame is begun. Points are considered to be
+     * streams of the frame in the order they are added.
+     *
+     * @param world the world in which the frame is displayed
+     * @param x the x coordinate of the frame's origin
+     * @param y the y coordinate of the frame's origin
+     * @param z the z coordinate of the frame's origin
+     * @param data the equation data describing the particles of the frame
+     */
+    public void beginFrame(@NotNull World world, double x, double y, double z, @NotNull ConditionalEquationData data) {
+        if (frameCount == frameStart.length) {
+            this.growFrames();
+        }
+
+        this.frameWorlds[frameCount] = world;
+        this.frameData[frameCount] = data;
+        this.frameX[frameCount] = x;
+        this.frameY[frameCount] = y;
+        this.frameZ[frameCount] = z;
+        this.frameStart[frameCount] = size;
+        this.frameCount++;
+    }
+
+    /**
+     * Buffer a particle point in the current frame to be sent on the next flush.
+     *
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param z the z coordinate of the point
+     *
+     * @throws IllegalStateException if no frame has been begun
+     */
+    public void add(double x, double y, double z) {
+        Preconditions.checkState(frameCount > 0, "A frame must be begun before adding points");
+
+        if (size == this.x.length) {
+            this.growPoints();
+        }
+
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        this.pointFrames[size] = frameCount - 1;
+        this.size++;
+    }
+
+    /**
+     * Get the amount of points currently buffered.
+     *
+     * @return the amount of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the x coordinate of a buffered point.
+     *
+     * @param point the index of the point
+     *
+     * @return the x coordinate
+     */
+    public double getX(int point) {
+        return x[point];
+    }
+
+    /**
+     * Get the y coordinate of a buffered point.
+     *
+     * @param point the index of the point
+     *
+     * @return the y coordinate
+     */
+    public double getY(int point) {
+        return y[point];
+    }
+
+    /**
+     * Get the z coordinate of a buffered point.
+     *
+     * @param point the index of the point
+     *
+     * @return the z coordinate
+     */
+    public double getZ(int point) {
+        return z[point];
+    }
+
+    /**
+     * Get the world in which a buffered point is located.
+     *
+     * @param point the index of the point
+     *
+     * @return the world
+     */
+    @NotNull
+    public World getWorld(int point) {
+        return frameWorlds[pointFrames[point]];
+    }
+
+    /**
+     * Get the equation data describing the particle of a buffered point.
+     *
+     * @param point the index of the point
+     *
+     * @return the equation data
+     */
+    @NotNull
+    public ConditionalEquationData getData(int point) {
+        return frameData[pointFrames[point]];
+    }
+
+    int getFrameCount() {
+        return frameCount;
+    }
+
+    int getFrameStart(int frame) {
+        return frameStart[frame];
+    }
+
+    int getFrameEnd(int frame) {
+        return (frame + 1 < frameCount) ? frameStart[frame + 1] : size;
+    }
+
+    @NotNull
+    ConditionalEquationData getFrameData(int frame) {
+        return frameData[frame];
+    }
+
+    /**
+     * Send all buffered points to their viewers and clear the buffer. Frames viewed in full
+     * detail by all nearby players are emitted to the world once. For the remaining frames,
+     * each player in a world with buffered points is passed to the emitter at most once,
+     * along with every point of those frames they are within view distance of.
+     */
+    public void flush() {
+        if (size == 0) {
+            this.clear();
+            return;
+        }
+
+        if (selectedPoints.length < size) {
+            this.selectedPoints = new int[x.length];
+            this.selectedAmounts = new int[x.length];
+        }
+
+        int worldCount = 0;
+        try {
+            for (int frame = 0; frame < frameCount; frame++) {
+                World world = frameWorlds[frame];
+                if (contains(flushedWorlds, worldCount, world)) {
+                    continue;
+                }
+
+                if (worldCount == flushedWorlds.length) {
+                    this.flushedWorlds = Arrays.copyOf(flushedWorlds, worldCount * 2);
+                }
+
+                this.flushedWorlds[worldCount++] = world;
+                this.flushWorld(world, frame);
+            }
+        } finally {
+            Arrays.fill(flushedWorlds, 0, worldCount, null);
+            this.clear();
+        }
+    }
+
+    /**
+     * Discard all buffered points without sending them.
+     */
+    public void clear() {
+        Arrays.fill(frameWorlds, 0, frameCount, null);
+        Arrays.fill(frameData, 0, frameCount, null);
+        this.frameCount = 0;
+        this.size = 0;
+    }
+
+    private void flushWorld(@NotNull World world, int firstFrame) {
+        this.collectViewers(world);
+
+        try {
+            boolean emitPerViewer = false;
+            for (int frame = firstFrame; frame < frameCount; frame++) {
+                if (frameWorlds[frame] != world) {
+                    continue;
+                }
+
+                this.frameEmitted[frame] = tryEmitToWorld(world, frame);
+                emitPerViewer |= !frameEmitted[frame];
+            }
+
+            if (emitPerViewer) {
+                this.emitPerViewer(world, firstFrame);
+            }
+        } finally {
+            Arrays.fill(viewers, 0, viewerCount, null);
+            this.viewerCount = 0;
+        }
+    }
+
+    private void collectViewers(@NotNull World world) {
+        Location viewerLocation = new Location(world, 0, 0, 0);
+
+        for (Player viewer : world.getPlayers()) {
+            if (viewerCount == viewers.length) {
+                int capacity = viewerCount * 2;
+                this.viewers = Arrays.copyOf(viewers, capacity);
+                this.viewerX = Arrays.copyOf(viewerX, capacity);
+                this.viewerY = Arrays.copyOf(viewerY, capacity);
+                this.viewerZ = Arrays.copyOf(viewerZ, capacity);
+            }
+
+            viewer.getLocation(viewerLocation);
+            this.viewers[viewerCount] = viewer;
+            this.viewerX[viewerCount] = viewerLocation.getX();
+            this.viewerY[viewerCount] = viewerLocation.getY();
+            this.viewerZ[viewerCount] = viewerLocation.getZ();
+            this.viewerCount++;
+        }
+    }
+
+    // Whether or not the frame was handled without being emitted per viewer
+    private boolean tryEmitToWorld(@NotNull World world, int frame) {
+        double fullDetailDistanceSquared = Math.min(viewDistanceSquared, reducedDetailDistanceSquared);
+
+        boolean viewed = false;
+        for (int viewer = 0; viewer < viewerCount; viewer++) {
+            double distanceSquared = distanceSquared(frame, viewer);
+
+            // Players in range of world particles must receive the frame in full detail, those out of range must not receive it at all
+            if (distanceSquared <= WORLD_PARTICLE_RANGE_SQUARED ? distanceSquared > fullDetailDistanceSquared : distanceSquared <= viewDistanceSquared) {
+                return false;
+            }
+
+            viewed |= distanceSquared <= viewDistanceSquared;
+        }
+
+        return !viewed || emitter.emitToWorld(world, this, frameStart[frame], getFrameEnd(frame));
+    }
+
+    private void emitPerViewer(@NotNull World world, int firstFrame) {
+        for (int viewer = 0; viewer < viewerCount; viewer++) {
+            int count = 0;
+            for (int frame = firstFrame; frame < frameCount; frame++) {
+                if (frameWorlds[frame] != world || frameEmitted[frame]) {
+                    continue;
+                }
+
+                double distanceSquared = distanceSquared(frame, viewer);
+                if (distanceSquared > viewDistanceSquared) {
+                    continue;
+                }
+
+                boolean reduced = distanceSquared > reducedDetailDistanceSquared;
+                int amount = frameData[frame].getParticleAmount();
+                if (reduced) {
+                    amount = (amount + 1) / 2;
+                }
+
+                int start = frameStart[frame], end = getFrameEnd(frame);
+                for (int point = start; point < end; point += (reduced ? 2 : 1)) { // Every other stream if reduced
+                    this.selectedPoints[count] = point;
+                    this.selectedAmounts[count] = amount;
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                this.emitter.emit(viewers[viewer], this, selectedPoints, selectedAmounts, count);
+            }
+        }
+    }
+
+    private double distanceSquared(int frame, int viewer) {
+        double dx = frameX[frame] - viewerX[viewer], dy = frameY[frame] - viewerY[viewer], dz = frameZ[frame] - viewerZ[viewer];
+        return (dx * dx) + (dy * dy) + (dz * dz);
+    }
+
+    private void growPoints() {
+        int capacity = x.length * 2;
+
+        this.x = Arrays.copyOf(x, capacity);
+        this.y = Arrays.copyOf(y, capacity);
+        this.z = Arrays.copyOf(z, capacity);
+        this.pointFrames = Arrays.copyOf(pointFrames, capacity);
+    }
+
+    private void growFrames() {
+        int capacity = frameStart.length * 2;
+
+        this.frameWorlds = Arrays.copyOf(frameWorlds, capacity);
+        this.frameData = Arrays.copyOf(frameData, capacity);
+        this.frameX = Arrays.copyOf(frameX, capacity);
+        this.frameY = Arrays.copyOf(frameY, capacity);
+        this.frameZ = Arrays.copyOf(frameZ, capacity);
+        this.frameStart = Arrays.copyOf(frameStart, capacity);
+        this.frameEmitted = Arrays.copyOf(frameEmitted, capacity);
+    }
+
+    private static boolean contains(@NotNull World @NotNull [] array, int length, @NotNull World world) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == world) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
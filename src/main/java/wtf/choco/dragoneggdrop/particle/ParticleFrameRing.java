@@ -0,0 +1,130 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A fixed capacity single-producer, single-consumer ring of computed animation ticks. A
+ * worker thread offers ticks computed ahead of time and the server thread polls them in
+ * order. Every tick of the animation occupies one entry, including ticks on which no
+ * frame is displayed (in which case the entry's data is null).
+ * <p>
+ * Entries are held in preallocated primitive arrays. Each entry reserves room for the
+ * maximum amount of points any equation data of the session may display.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleFrameRing {
+
+    private final int capacity, maxPoints;
+
+    private final ConditionalEquationData[] data;
+    private final double[] frameY, nextY;
+    private final int[] pointCounts;
+    private final double[] offsets; // Interleaved x and z offsets, maxPoints per entry
+
+    // Written only by the consumer and producer respectively
+    private volatile long head = 0, tail = 0;
+
+    /**
+     * Construct a new ring.
+     *
+     * @param capacity the maximum amount of entries
+     * @param maxPoints the maximum amount of points in a single entry
+     */
+    ParticleFrameRing(int capacity, int maxPoints) {
+        this.capacity = capacity;
+        this.maxPoints = maxPoints;
+
+        this.data = new ConditionalEquationData[capacity];
+        this.frameY = new double[capacity];
+        this.nextY = new double[capacity];
+        this.pointCounts = new int[capacity];
+        this.offsets = new double[capacity * maxPoints * 2];
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int size() {
+        return (int) (tail - head);
+    }
+
+    boolean isEmpty() {
+        return tail == head;
+    }
+
+    boolean isFull() {
+        return tail - head == capacity;
+    }
+
+    /**
+     * Offer a computed tick. May only be called by the producer, and only if this ring
+     * is not full.
+     *
+     * @param data the equation data displayed on this tick. null if nothing is displayed
+     * @param frameY the y coordinate at which the frame is displayed
+     * @param nextY the y coordinate of the session after this tick
+     * @param pointOffsets the interleaved x and z offsets of each point
+     * @param pointCount the amount of points
+     */
+    void offer(@Nullable ConditionalEquationData data, double frameY, double nextY, @NotNull double[] pointOffsets, int pointCount) {
+        long tail = this.tail;
+        int entry = (int) (tail % capacity);
+
+        this.data[entry] = data;
+        this.frameY[entry] = frameY;
+        this.nextY[entry] = nextY;
+        this.pointCounts[entry] = Math.min(pointCount, maxPoints);
+        System.arraycopy(pointOffsets, 0, offsets, entry * maxPoints * 2, pointCounts[entry] * 2);
+
+        this.tail = tail + 1; // Publish the entry
+    }
+
+    /**
+     * Get the index of the oldest entry. May only be called by the consumer, and only if
+     * this ring is not empty.
+     *
+     * @return the entry index
+     */
+    int peek() {
+        return (int) (head % capacity);
+    }
+
+    /**
+     * Discard the oldest entry. May only be called by the consumer.
+     */
+    void poll() {
+        long head = this.head;
+        this.data[(int) (head % capacity)] = null;
+        this.head = head + 1;
+    }
+
+    @Nullable
+    ConditionalEquationData getData(int entry) {
+        return data[entry];
+    }
+
+    double getFrameY(int entry) {
+        return frameY[entry];
+    }
+
+    double getNextY(int entry) {
+        return nextY[entry];
+    }
+
+    int getPointCount(int entry) {
+        return pointCounts[entry];
+    }
+
+    int getOffsetStart(int entry) {
+        return entry * maxPoints * 2;
+    }
+
+    @NotNull
+    double[] getOffsets() {
+        return offsets;
+    }
+
+}
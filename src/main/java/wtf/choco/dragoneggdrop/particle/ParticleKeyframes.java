@@ -0,0 +1,170 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.commons.util.MathUtil;
+
+/**
+ * A precomputed trajectory of a {@link ParticleShapeDefinition#isDeterministic() deterministic}
+ * particle shape. For each frame of the animation, the equation data in use and the x and z
+ * offsets of every stream are stored in primitive arrays so that sessions may replay them by
+ * index rather than evaluating conditions and expressions.
+ * <p>
+ * Keyframes are computed once per shape id on demand and cached until {@link #clearCache()}
+ * is called. Frames beyond the computed horizon are evaluated live by the session.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleKeyframes {
+
+    /**
+     * The maximum amount of frames to precompute for a single shape.
+     */
+    static final int MAX_FRAMES = 4096;
+
+    private static final Map<@NotNull String, @NotNull ParticleKeyframes> CACHE = new ConcurrentHashMap<>();
+
+    private final ConditionalEquationData[] data;
+    private final int[] offsetStart;
+    private final double[] offsets; // Interleaved x and z offsets
+
+    private ParticleKeyframes(@NotNull ConditionalEquationData @NotNull [] data, int @NotNull [] offsetStart, double @NotNull [] offsets) {
+        this.data = data;
+        this.offsetStart = offsetStart;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Get the amount of frames held by these keyframes.
+     *
+     * @return the frame count
+     */
+    int getFrameCount() {
+        return data.length;
+    }
+
+    /**
+     * Get the equation data in use for the given frame.
+     *
+     * @param frame the frame
+     *
+     * @return the equation data. null if no equation data's conditions are met, in which
+     * case the animation stalls indefinitely
+     */
+    @Nullable
+    ConditionalEquationData getData(int frame) {
+        return data[frame];
+    }
+
+    /**
+     * Get the x offset of the given stream in the given frame.
+     *
+     * @param frame the frame
+     * @param stream the stream
+     *
+     * @return the x offset
+     */
+    double getOffsetX(int frame, int stream) {
+        return offsets[(offsetStart[frame] + stream) * 2];
+    }
+
+    /**
+     * Get the z offset of the given stream in the given frame.
+     *
+     * @param frame the frame
+     * @param stream the stream
+     *
+     * @return the z offset
+     */
+    double getOffsetZ(int frame, int stream) {
+        return offsets[(offsetStart[frame] + stream) * 2 + 1];
+    }
+
+    /**
+     * Get the keyframes for the given shape, computing them if they are not yet cached.
+     *
+     * @param shape the shape for which to get keyframes. Must be deterministic
+     * @param equationData the shape's equation data
+     * @param world a world with which to construct condition contexts. Deterministic
+     * shapes do not depend on the world
+     *
+     * @return the keyframes
+     */
+    @NotNull
+    static ParticleKeyframes get(@NotNull ParticleShapeDefinition shape, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world) {
+        Preconditions.checkArgument(shape.isDeterministic(), "shape must be deterministic");
+        return CACHE.computeIfAbsent(shape.getId(), id -> compute(shape, equationData, world));
+    }
+
+    /**
+     * Clear all cached keyframes.
+     */
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    @NotNull
+    private static ParticleKeyframes compute(@NotNull ParticleShapeDefinition shape, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world) {
+        // Enough frames to descend from the start y to y = 0 at the slowest speed
+        double minimumSpeed = 2.0;
+        int maximumInterval = 1;
+        for (ConditionalEquationData data : equationData) {
+            minimumSpeed = Math.min(minimumSpeed, MathUtil.clamp(data.getSpeedMultiplier(), 0.1, 2.0));
+            maximumInterval = Math.max(maximumInterval, data.getFrameIntervalTicks());
+        }
+
+        int horizon = (int) Math.min(MAX_FRAMES, Math.ceil(shape.getStartY() / minimumSpeed) + 1);
+
+        ConditionalEquationData[] data = new ConditionalEquationData[horizon];
+        int[] offsetStart = new int[horizon + 1];
+        double[] offsets = new double[horizon * 4];
+        int pointCount = 0, frameCount = 0;
+
+        // Record a live session at x = z = 0 so the buffered points are exactly the offsets
+        AnimatedParticleSession session = new AnimatedParticleSession(shape, equationData, world, 0.0, shape.getStartY(), 0.0, null);
+        ParticleFrameBuffer recorder = new ParticleFrameBuffer((viewer, buffer, points, amounts, count) -> { });
+
+        int idleTicks = 0;
+        while (frameCount < horizon) {
+            session.tick(recorder);
+
+            if (recorder.getFrameCount() == 0) {
+                // Conditions never change between frames. If no frame is produced in time, none ever will be
+                if (++idleTicks > maximumInterval) {
+                    data[frameCount] = null;
+                    offsetStart[++frameCount] = pointCount;
+                    break;
+                }
+
+                continue;
+            }
+
+            idleTicks = 0;
+            int start = recorder.getFrameStart(0), end = recorder.getFrameEnd(0);
+            if ((pointCount + (end - start)) * 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, (pointCount + (end - start)) * 2));
+            }
+
+            for (int point = start; point < end; point++, pointCount++) {
+                offsets[pointCount * 2] = recorder.getX(point);
+                offsets[pointCount * 2 + 1] = recorder.getZ(point);
+            }
+
+            data[frameCount] = recorder.getFrameData(0);
+            offsetStart[++frameCount] = pointCount;
+            recorder.clear();
+        }
+
+        return new ParticleKeyframes(Arrays.copyOf(data, frameCount), Arrays.copyOf(offsetStart, frameCount + 1), Arrays.copyOf(offsets, pointCount * 2));
+    }
+
+}
@@ -45,15 +45,18 @@ public class ParticleShapeDefinition implements Registerable {
         ConditionFactory.registerCondition("x_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getX() : 0.0));
         ConditionFactory.registerCondition("y_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getY() : 0.0));
         ConditionFactory.registerCondition("z_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getZ() : 0.0));
-        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getT() : 0.0));
-        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getTheta() : 0.0));
+        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getT() : 0.0, true));
+        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getTheta() : 0.0, true));
         ConditionFactory.registerCondition("world", json -> EquationConditionStringComparison.create(json, context -> context.getWorld().getName()));
+
+        ParticleVariables.registerVariable("players", context -> context.getWorld().getPlayers().size());
     }
 
     private double startY;
     private List<@NotNull ConditionalEquationData> equationData = new ArrayList<>();
 
     private final String id;
+    private final boolean deterministic;
 
     /**
      * Construct a new {@link ParticleShapeDefinition}.
@@ -70,6 +73,7 @@ public class ParticleShapeDefinition implements Registerable {
         this.id = id;
         this.startY = startY;
         this.equationData = new ArrayList<>(equationData);
+        this.deterministic = !equationData.isEmpty() && equationData.stream().allMatch(ConditionalEquationData::isDeterministic);
     }
 
     /**
@@ -97,6 +101,20 @@ public class ParticleShapeDefinition implements Registerable {
         return startY;
     }
 
+    /**
+     * Check whether or not this shape is deterministic. Deterministic shapes depend only on
+     * the t and theta variables and are therefore identical in every world and at every
+     * location. Sessions of deterministic shapes replay a precomputed trajectory shared
+     * between all sessions of this shape rather than evaluating their expressions.
+     *
+     * @return true if deterministic, false otherwise
+     *
+     * @see ConditionalEquationData#isDeterministic()
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
     /**
      * Create an animated particle session unique to the specified world and coordinates. The created
      * session will represent this shape definition.
@@ -131,7 +149,8 @@ public class ParticleShapeDefinition implements Registerable {
     public AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z) {
         Preconditions.checkArgument(world != null, "world must not be null");
 
-        return new AnimatedParticleSession(this, equationData, world, x, y, z);
+        ParticleKeyframes keyframes = deterministic ? ParticleKeyframes.get(this, equationData, world) : null;
+        return new AnimatedParticleSession(this, equationData, world, x, y, z, keyframes);
     }
 
     /**
@@ -149,6 +168,14 @@ public class ParticleShapeDefinition implements Registerable {
         return createSession(world, x, getStartY(), z);
     }
 
+    /**
+     * Clear the precomputed trajectories of all deterministic shapes. Trajectories will be
+     * recomputed when a session is next created for a deterministic shape.
+     */
+    public static void clearKeyframeCache() {
+        ParticleKeyframes.clearCache();
+    }
+
     /**
      * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}.
      *
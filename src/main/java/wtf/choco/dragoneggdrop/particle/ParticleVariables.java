@@ -2,23 +2,64 @@ package wtf.choco.dragoneggdrop.particle;
 
 import com.google.common.base.Preconditions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.commons.function.DoubleProvider;
+import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
 
 /**
  * Represents a set of variables to be used when parsing and evaluating an expression
  * in a {@link ParticleShapeDefinition}.
+ * <p>
+ * Every variable is bound to an integer slot when an expression is parsed (see
+ * {@link #getSlot(String)}) and values are held in a primitive array indexed by that
+ * slot. In addition to the built-in variables, custom variables may be registered with
+ * {@link #registerVariable(String, DoubleProvider)}. Their values are provided once per
+ * animation frame.
  *
  * @author Parker Hawke - Choco
  */
 public final class ParticleVariables {
 
+    /** The slot of the x variable */
+    public static final int SLOT_X = 0;
+    /** The slot of the y variable */
+    public static final int SLOT_Y = 1;
+    /** The slot of the z variable */
+    public static final int SLOT_Z = 2;
+    /** The slot of the t variable */
+    public static final int SLOT_T = 3;
+    /** The slot of the theta variable */
+    public static final int SLOT_THETA = 4;
+    /** The slot of the random variable. Never stored, a new value is generated on each read */
+    public static final int SLOT_RANDOM = 5;
+
+    private static final int BUILTIN_SLOT_COUNT = 6;
+
+    private static final Map<@NotNull String, @NotNull Integer> SLOTS = new HashMap<>();
+    private static final List<@NotNull DoubleProvider<@NotNull ConditionContext>> CUSTOM_PROVIDERS = new ArrayList<>();
+
+    static {
+        SLOTS.put("x", SLOT_X);
+        SLOTS.put("y", SLOT_Y);
+        SLOTS.put("z", SLOT_Z);
+        SLOTS.put("t", SLOT_T);
+        SLOTS.put("theta", SLOT_THETA);
+        SLOTS.put("random", SLOT_RANDOM);
+    }
+
     private final Random random = new Random();
 
-    private double x, y, z;
-    private double t;
-    private double theta;
+    private double[] values;
+    private double[] evaluationStack = new double[8];
 
     /**
      * Construct a new set of variables.
@@ -30,6 +71,7 @@ public final class ParticleVariables {
      * @param theta the initial theta value
      */
     public ParticleVariables(double x, double y, double z, double t, double theta) {
+        this.values = new double[getSlotCount()];
         this.update(x, y, z, t, theta);
     }
 
@@ -46,7 +88,7 @@ public final class ParticleVariables {
      * @return x
      */
     public double getX() {
-        return x;
+        return values[SLOT_X];
     }
 
     /**
@@ -55,7 +97,7 @@ public final class ParticleVariables {
      * @return y
      */
     public double getY() {
-        return y;
+        return values[SLOT_Y];
     }
 
     /**
@@ -64,7 +106,7 @@ public final class ParticleVariables {
      * @return z
      */
     public double getZ() {
-        return z;
+        return values[SLOT_Z];
     }
 
     /**
@@ -73,7 +115,7 @@ public final class ParticleVariables {
      * @return t
      */
     public double getT() {
-        return t;
+        return values[SLOT_T];
     }
 
     /**
@@ -82,15 +124,103 @@ public final class ParticleVariables {
      * @return theta
      */
     public double getTheta() {
-        return theta;
+        return values[SLOT_THETA];
     }
 
     void update(double x, double y, double z, double t, double theta) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.t = t;
-        this.theta = theta;
+        this.values[SLOT_X] = x;
+        this.values[SLOT_Y] = y;
+        this.values[SLOT_Z] = z;
+        this.values[SLOT_T] = t;
+        this.values[SLOT_THETA] = theta;
+    }
+
+    void updateCustomVariables(@NotNull ConditionContext context) {
+        int customCount = CUSTOM_PROVIDERS.size();
+        if (customCount == 0) {
+            return;
+        }
+
+        if (values.length < BUILTIN_SLOT_COUNT + customCount) {
+            this.values = Arrays.copyOf(values, BUILTIN_SLOT_COUNT + customCount);
+        }
+
+        for (int i = 0; i < customCount; i++) {
+            this.values[BUILTIN_SLOT_COUNT + i] = CUSTOM_PROVIDERS.get(i).get(context);
+        }
+    }
+
+    void updateCustomVariables(@NotNull double[] customValues) {
+        if (values.length < BUILTIN_SLOT_COUNT + customValues.length) {
+            this.values = Arrays.copyOf(values, BUILTIN_SLOT_COUNT + customValues.length);
+        }
+
+        System.arraycopy(customValues, 0, values, BUILTIN_SLOT_COUNT, customValues.length);
+    }
+
+    /**
+     * Query the current value of every custom variable. Custom variable providers may
+     * access world state and must be queried on the server thread. The values may then be
+     * applied to variables on another thread with {@link #updateCustomVariables(double[])}.
+     *
+     * @param context the context with which to query the providers
+     * @param destination the array to reuse if large enough. May be null
+     *
+     * @return the custom variable values
+     */
+    @NotNull
+    static double[] queryCustomVariables(@NotNull ConditionContext context, @Nullable double[] destination) {
+        int customCount = CUSTOM_PROVIDERS.size();
+        if (destination == null || destination.length != customCount) {
+            destination = new double[customCount];
+        }
+
+        for (int i = 0; i < customCount; i++) {
+            destination[i] = CUSTOM_PROVIDERS.get(i).get(context);
+        }
+
+        return destination;
+    }
+
+    /**
+     * Get the value of the variable bound to the given slot. {@link #SLOT_RANDOM} is not
+     * stored and should instead be read with {@link #nextRandom()}.
+     *
+     * @param slot the variable slot
+     *
+     * @return the value of the variable. 0.0 if the slot has no value
+     *
+     * @see #getSlot(String)
+     */
+    public double get(int slot) {
+        return (slot < values.length) ? values[slot] : 0.0;
+    }
+
+    /**
+     * Get an operand stack of at least the given depth with which to evaluate an expression
+     * against these variables. The same stack is reused by every evaluation, therefore
+     * expressions must not be evaluated against the same variables concurrently.
+     *
+     * @param depth the minimum depth of the stack
+     *
+     * @return the operand stack
+     */
+    @NotNull
+    public double[] getEvaluationStack(int depth) {
+        if (evaluationStack.length < depth) {
+            this.evaluationStack = new double[depth];
+        }
+
+        return evaluationStack;
+    }
+
+    /**
+     * Get a new value for the random variable.
+     *
+     * @return a random value between 0.0 (inclusive) and 1.0 (exclusive)
+     */
+    public double nextRandom() {
+        return random.nextDouble();
     }
 
     /**
@@ -105,15 +235,67 @@ public final class ParticleVariables {
     public double get(@NotNull String name, double defaultValue) {
         Preconditions.checkArgument(name != null, "name must not be null");
 
-        switch (name) {
-            case "x": return x;
-            case "y": return y;
-            case "z": return z;
-            case "t": return t;
-            case "theta": return theta;
-            case "random": return random.nextDouble();
-            default: return defaultValue;
+        int slot = getSlot(name);
+        if (slot == -1) {
+            return defaultValue;
         }
+
+        return (slot == SLOT_RANDOM) ? nextRandom() : get(slot);
+    }
+
+    /**
+     * Register a custom variable which may be referenced by name in shape expressions. The
+     * provider is queried on the server thread, at most once per animation frame and not
+     * once per evaluation. Frames computed ahead of time asynchronously use the values
+     * last queried before their computation began.
+     * <p>
+     * Variables must be registered before the shapes referencing them are loaded.
+     *
+     * @param name the name of the variable. Must consist only of lowercase letters
+     * @param provider the provider of the variable's value
+     *
+     * @return the slot to which the variable was bound
+     */
+    public static synchronized int registerVariable(@NotNull String name, @NotNull DoubleProvider<@NotNull ConditionContext> provider) {
+        Preconditions.checkArgument(name != null && name.matches("[a-z]+"), "name must consist only of lowercase letters");
+        Preconditions.checkArgument(provider != null, "provider must not be null");
+        Preconditions.checkArgument(!SLOTS.containsKey(name), "A variable with the name \"%s\" is already registered", name);
+
+        int slot = BUILTIN_SLOT_COUNT + CUSTOM_PROVIDERS.size();
+        SLOTS.put(name, slot);
+        CUSTOM_PROVIDERS.add(provider);
+        return slot;
+    }
+
+    /**
+     * Get the slot to which the variable with the given name is bound.
+     *
+     * @param name the variable name
+     *
+     * @return the slot, or -1 if no variable with the given name exists
+     */
+    public static synchronized int getSlot(@NotNull String name) {
+        Preconditions.checkArgument(name != null, "name must not be null");
+
+        Integer slot = SLOTS.get(name);
+        return (slot != null) ? slot : -1;
+    }
+
+    /**
+     * Get the amount of bound variable slots, including built-in variables.
+     *
+     * @return the slot count
+     */
+    public static synchronized int getSlotCount() {
+        return BUILTIN_SLOT_COUNT + CUSTOM_PROVIDERS.size();
+    }
+
+    /**
+     * Clear all registered custom variables. Built-in variables are retained.
+     */
+    public static synchronized void clearCustomVariables() {
+        SLOTS.values().removeIf(slot -> slot >= BUILTIN_SLOT_COUNT);
+        CUSTOM_PROVIDERS.clear();
     }
 
 }
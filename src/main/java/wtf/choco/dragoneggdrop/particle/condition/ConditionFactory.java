@@ -27,6 +27,11 @@ public final class ConditionFactory {
 
     /**
      * Register a condition factory method.
+     * <p>
+     * Conditions may be evaluated off the server thread when particle frames are computed
+     * asynchronously and therefore should not access mutable world state. Values requiring
+     * the server thread should instead be exposed as custom variables (see
+     * {@link wtf.choco.dragoneggdrop.particle.ParticleVariables#registerVariable(String, wtf.choco.commons.function.DoubleProvider)}).
      *
      * @param name the condition's unique name
      * @param factoryMethod the method used to create an instance
@@ -4,13 +4,21 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * Represents a condition to be checked before evaluating equations.
+ * <p>
+ * Implementations must be thread safe. When particle frames are computed asynchronously,
+ * {@link #isMet(ConditionContext)} is called on worker threads and may be called for
+ * several sessions at once. Conditions must therefore not access mutable world or server
+ * state. Such values should instead be registered as custom variables (see
+ * {@link wtf.choco.dragoneggdrop.particle.ParticleVariables#registerVariable(String, wtf.choco.commons.function.DoubleProvider)}),
+ * which are queried on the server thread and read from the context's variables.
  *
  * @author Parker Hawke - Choco
  */
 public interface EquationCondition {
 
     /**
-     * Check whether or not this condition has been met given the provided context.
+     * Check whether or not this condition has been met given the provided context. May be
+     * called off the server thread.
      *
      * @param context the condition context
      *
@@ -18,4 +26,15 @@ public interface EquationCondition {
      */
     public boolean isMet(@NotNull ConditionContext context);
 
+    /**
+     * Check whether or not the result of this condition depends only on the t and theta
+     * variables of the context. Deterministic conditions are met for the same t and theta
+     * regardless of location, world or randomness.
+     *
+     * @return true if deterministic, false otherwise
+     */
+    public default boolean isDeterministic() {
+        return false;
+    }
+
 }
@@ -23,6 +23,11 @@ public final class EquationConditionAlwaysTrue implements EquationCondition {
         return true;
     }
 
+    @Override
+    public boolean isDeterministic() {
+        return true;
+    }
+
     @NotNull
     public static EquationConditionAlwaysTrue create(@SuppressWarnings("unused") @NotNull JsonObject object) {
         return INSTANCE;
@@ -22,6 +22,7 @@ public class EquationConditionDoubleComparison implements EquationCondition {
     private final DoubleProvider<@NotNull ConditionContext> query;
     private final double value;
     private final DoubleBiPredicate predicate;
+    private final boolean deterministic;
 
     /**
      * Construct a value comparison condition.
@@ -29,11 +30,24 @@ public class EquationConditionDoubleComparison implements EquationCondition {
      * @param query the function to query a value from a condition context
      * @param value the value against which the queried value should be compared
      * @param predicate the comparison predicate
+     * @param deterministic whether or not the query depends only on the t and theta variables
      */
-    public EquationConditionDoubleComparison(@NotNull DoubleProvider<@NotNull ConditionContext> query, double value, @NotNull DoubleBiPredicate predicate) {
+    public EquationConditionDoubleComparison(@NotNull DoubleProvider<@NotNull ConditionContext> query, double value, @NotNull DoubleBiPredicate predicate, boolean deterministic) {
         this.query = query;
         this.value = value;
         this.predicate = predicate;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Construct a value comparison condition.
+     *
+     * @param query the function to query a value from a condition context
+     * @param value the value against which the queried value should be compared
+     * @param predicate the comparison predicate
+     */
+    public EquationConditionDoubleComparison(@NotNull DoubleProvider<@NotNull ConditionContext> query, double value, @NotNull DoubleBiPredicate predicate) {
+        this(query, value, predicate, false);
     }
 
     @Override
@@ -41,8 +55,18 @@ public class EquationConditionDoubleComparison implements EquationCondition {
         return predicate.test(query.get(context), value);
     }
 
+    @Override
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
     @NotNull
     public static EquationConditionDoubleComparison create(@NotNull JsonObject object, @NotNull DoubleProvider<@NotNull ConditionContext> query) {
+        return create(object, query, false);
+    }
+
+    @NotNull
+    public static EquationConditionDoubleComparison create(@NotNull JsonObject object, @NotNull DoubleProvider<@NotNull ConditionContext> query, boolean deterministic) {
         String operation = JsonUtils.getRequiredField(object, "operation", JsonElement::getAsString);
 
         DoubleBiPredicate predicate = null;
@@ -59,7 +83,7 @@ public class EquationConditionDoubleComparison implements EquationCondition {
         JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
         double value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
 
-        return new EquationConditionDoubleComparison(query, value, predicate);
+        return new EquationConditionDoubleComparison(query, value, predicate, deterministic);
     }
 
 }
@@ -13,7 +13,6 @@ import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.World.Environment;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -26,8 +25,7 @@ import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.dragon.DamageHistory;
 import wtf.choco.dragoneggdrop.dragon.DamageHistory.DamageEntry;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
-import wtf.choco.dragoneggdrop.utils.ConfigUtils;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
+import wtf.choco.dragoneggdrop.utils.DEDConfig;
 import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
 import wtf.choco.dragoneggdrop.world.DragonRespawnData;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
@@ -211,9 +209,9 @@ public final class DragonEggDropPlaceholders {
 
             EndWorldWrapper endWorld = EndWorldWrapper.of(world);
 
-            FileConfiguration config = DragonEggDrop.getInstance().getConfig();
-            boolean condensed = config.getBoolean(DEDConstants.CONFIG_RESPAWN_MESSAGES_CONDENSED);
-            TimeUnit[] omitions = ConfigUtils.getTimeUnits(config.getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_OMIT_TIME_UNITS));
+            DEDConfig config = DragonEggDrop.getInstance().getDEDConfig();
+            boolean condensed = config.isRespawnMessagesCondensed();
+            TimeUnit[] omitions = config.getRespawnMessagesOmittedTimeUnits();
 
             DragonRespawnData respawnData = endWorld.getDragonRespawnData();
             return (endWorld.isRespawnInProgress() && respawnData != null) ? MathUtil.getFormattedTime(respawnData.getRemainingTime(TimeUnit.SECONDS), TimeUnit.SECONDS, condensed, omitions) : "now";
@@ -227,9 +225,9 @@ public final class DragonEggDropPlaceholders {
 
             EndWorldWrapper endWorld = EndWorldWrapper.of(world);
 
-            FileConfiguration config = DragonEggDrop.getInstance().getConfig();
-            boolean condensed = config.getBoolean(DEDConstants.CONFIG_RESPAWN_MESSAGES_CONDENSED);
-            TimeUnit[] omitions = ConfigUtils.getTimeUnits(config.getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_OMIT_TIME_UNITS));
+            DEDConfig config = DragonEggDrop.getInstance().getDEDConfig();
+            boolean condensed = config.isRespawnMessagesCondensed();
+            TimeUnit[] omitions = config.getRespawnMessagesOmittedTimeUnits();
 
             DragonRespawnData respawnData = endWorld.getDragonRespawnData();
             return (endWorld.isRespawnInProgress() && respawnData != null) ? MathUtil.getFormattedTime(respawnData.getRemainingTime(TimeUnit.SECONDS), TimeUnit.SECONDS, condensed, omitions) : "now";
@@ -258,11 +256,12 @@ public final class DragonEggDropPlaceholders {
             }
 
             DamageHistory history = previousDragonBattle.getDamageHistory();
-            if (history == null || offset >= history.uniqueDamagers()) {
+            if (history == null) {
                 return "None";
             }
 
-            DamageEntry topDamageEntry = history.getTopDamager(offset);
+            // Placeholders may be requested asynchronously. Read from a single consistent snapshot
+            DamageEntry topDamageEntry = history.snapshot().getTopDamager(offset);
             if (topDamageEntry == null) {
                 return "None";
             }
@@ -294,11 +293,12 @@ public final class DragonEggDropPlaceholders {
             }
 
             DamageHistory history = previousDragonBattle.getDamageHistory();
-            if (history == null || offset >= history.uniqueDamagers()) {
+            if (history == null) {
                 return "0";
             }
 
-            DamageEntry topDamageEntry = history.getTopDamager(offset);
+            // Placeholders may be requested asynchronously. Read from a single consistent snapshot
+            DamageEntry topDamageEntry = history.snapshot().getTopDamager(offset);
             return topDamageEntry != null ? DECIMAL_FORMAT.format(topDamageEntry.getDamage()) : "0";
         }
 
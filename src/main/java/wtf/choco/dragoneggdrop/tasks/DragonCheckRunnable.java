@@ -5,28 +5,49 @@ import com.google.common.base.Preconditions;
 import java.util.EnumSet;
 import java.util.Set;
 
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.boss.DragonBattle;
 import org.bukkit.boss.DragonBattle.RespawnPhase;
 import org.bukkit.entity.EnderDragon;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 
 import wtf.choco.dragoneggdrop.DragonEggDrop;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
 
 /**
- * Represents a BukkitRunnable that checks for the presence of a dragon in an end world.
- * If the dragon is not present, any {@link EndWorldWrapper} states are reset to ensure
- * that commands or non-standard means of dragon removal are supported (i.e. /kill).
+ * Represents a runnable that checks for the presence of a dragon in an end world. If the
+ * dragon is not present, any {@link EndWorldWrapper} states are reset to ensure that
+ * commands or non-standard means of dragon removal are supported (i.e. /kill).
+ * <p>
+ * Checks are requested by the events that may change the dragon's state (see
+ * {@link #requestCheck()}). Between events, the runnable falls back to polling, doubling
+ * its interval from {@link #MIN_INTERVAL_TICKS} up to {@link #MAX_INTERVAL_TICKS} while
+ * checks find nothing to reset.
+ * <p>
+ * Apart from {@link #start()}, this runnable must only be used on the server thread.
  *
  * @author Parker Hawke - Choco
  */
-public final class DragonCheckRunnable extends BukkitRunnable {
+public final class DragonCheckRunnable implements Runnable {
+
+    /**
+     * The interval (in ticks) between checks after an event or a reset.
+     */
+    public static final int MIN_INTERVAL_TICKS = 20;
+
+    /**
+     * The maximum interval (in ticks) between checks while idle.
+     */
+    public static final int MAX_INTERVAL_TICKS = 600;
 
     private static final Set<@NotNull RespawnPhase> RESPAWN_PHASES_TO_CHECK = EnumSet.of(RespawnPhase.NONE, RespawnPhase.END);
 
+    private BukkitTask task;
+    private int interval = MIN_INTERVAL_TICKS;
+    private boolean checkRequested = false, cancelled = false;
+
     private final DragonEggDrop plugin;
     private final EndWorldWrapper worldWrapper;
 
@@ -45,30 +66,100 @@ public final class DragonCheckRunnable extends BukkitRunnable {
         this.worldWrapper = worldWrapper;
     }
 
+    /**
+     * Start checking. The first check is performed on the next tick. May be called from any
+     * thread (i.e. when a world wrapper is first accessed by a placeholder), in which case the
+     * first check is requested from the server thread such that only one chain of checks is
+     * ever scheduled.
+     */
+    public void start() {
+        Preconditions.checkState(task == null && !cancelled, "Dragon checks have already been started");
+
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(plugin, this::requestCheck);
+            return;
+        }
+
+        this.requestCheck();
+    }
+
+    /**
+     * Request that a check be performed on the next tick and reset the polling interval.
+     * Requests made before the check is performed are merged.
+     */
+    public void requestCheck() {
+        this.interval = MIN_INTERVAL_TICKS;
+        if (cancelled || checkRequested) {
+            return;
+        }
+
+        if (task != null) {
+            this.task.cancel();
+        }
+
+        this.checkRequested = true;
+        this.task = Bukkit.getScheduler().runTaskLater(plugin, this, 1L);
+    }
+
+    /**
+     * Stop checking.
+     */
+    public void cancel() {
+        this.cancelled = true;
+
+        if (task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+    }
+
+    /**
+     * Get the amount of ticks until the next check while no check is requested.
+     *
+     * @return the current polling interval
+     */
+    public int getInterval() {
+        return interval;
+    }
+
     @Override
     public void run() {
+        this.checkRequested = false;
+        this.interval = check() ? MIN_INTERVAL_TICKS : Math.min(interval * 2, MAX_INTERVAL_TICKS);
+
+        if (!cancelled) {
+            this.task = Bukkit.getScheduler().runTaskLater(plugin, this, interval);
+        }
+    }
+
+    // Returns true if any state was reset
+    private boolean check() {
         World world = worldWrapper.getWorld();
-        if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
-            return;
+        if (plugin.getDEDConfig().isDisabledWorld(world)) {
+            return false;
         }
 
         DragonBattle dragonBattle = world.getEnderDragonBattle();
         if (dragonBattle == null) {
-            return;
+            return false;
         }
 
         RespawnPhase phase = dragonBattle.getRespawnPhase();
         if (worldWrapper.isRespawnInProgress() || worldWrapper.isDragonDying() || !RESPAWN_PHASES_TO_CHECK.contains(phase)) {
-            return;
+            return false;
         }
 
         EnderDragon dragon = dragonBattle.getEnderDragon();
-        if (dragon == null || dragon.isDead()) {
-            this.worldWrapper.setActiveTemplate(null);
-            this.worldWrapper.setLootTableOverride(null);
-            this.worldWrapper.setDragonDying(false);
-            this.worldWrapper.stopRespawn(); // Just in case
+        if (dragon != null && !dragon.isDead()) {
+            return false;
         }
+
+        boolean reset = (worldWrapper.getActiveTemplate() != null || worldWrapper.hasLootTableOverride());
+        this.worldWrapper.setActiveTemplate(null);
+        this.worldWrapper.setLootTableOverride(null);
+        this.worldWrapper.setDragonDying(false);
+        this.worldWrapper.stopRespawn(); // Just in case
+        return reset;
     }
 
 }
@@ -22,6 +22,7 @@ import wtf.choco.dragoneggdrop.api.BattleStateChangeEvent;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+import wtf.choco.dragoneggdrop.particle.ParticleAnimationScheduler;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
@@ -29,14 +30,14 @@ import wtf.choco.dragoneggdrop.world.RespawnReason;
 
 /**
  * Represents a BukkitRunnable that handles the generation and particle display of the
- * loot after the Ender Dragon's death.
+ * loot after the Ender Dragon's death. The particle animation is played by the plugin's
+ * {@link ParticleAnimationScheduler}, after which this runnable is run once to place the
+ * loot.
  */
 public class DragonDeathRunnable extends BukkitRunnable {
 
     private final DragonEggDrop plugin;
 
-    private AnimatedParticleSession particleSession;
-
     private final EndWorldWrapper worldWrapper;
     private final DragonTemplate template;
     private final Location portalLocation;
@@ -75,26 +76,25 @@ public class DragonDeathRunnable extends BukkitRunnable {
         }
 
         this.respawnDragon = config.getBoolean(DEDConstants.CONFIG_RESPAWN_ON_DEATH, false);
-        this.runTaskTimer(plugin, 0, 1);
 
         BattleStateChangeEvent bscEventCrystals = new BattleStateChangeEvent(dragonBattle, dragon, BattleState.BATTLE_END, BattleState.PARTICLES_START);
         Bukkit.getPluginManager().callEvent(bscEventCrystals);
 
         if (particleShapeDefinition != null) {
-            this.particleSession = particleShapeDefinition.createSession(worldWrapper.getWorld(), portalLocation.getX(), portalLocation.getZ());
+            AnimatedParticleSession particleSession = particleShapeDefinition.createSession(worldWrapper.getWorld(), portalLocation.getX(), portalLocation.getZ());
+            particleSession.setTerminalY(portalLocation.getY()); // The top of the portal's bedrock pillar
+            if (plugin.getParticleAnimationScheduler().schedule(particleSession, session -> runTask(plugin))) {
+                return;
+            }
+
+            plugin.getLogger().warning("Too many particle animations are playing. Skipping particles for dragon death in world " + worldWrapper.getWorld().getName());
         }
+
+        this.runTask(plugin);
     }
 
     @Override
     public void run() {
-        if (particleSession != null) {
-            this.particleSession.tick();
-
-            if (!particleSession.shouldStop()) {
-                return;
-            }
-        }
-
         // Particles finished, place reward
 
         // Summon Zeus!
@@ -127,7 +127,6 @@ public class DragonDeathRunnable extends BukkitRunnable {
 
         BattleStateChangeEvent bscEventCrystals = new BattleStateChangeEvent(dragonBattle, dragon, BattleState.PARTICLES_START, BattleState.LOOT_SPAWN);
         Bukkit.getPluginManager().callEvent(bscEventCrystals);
-        this.cancel();
     }
 
     private Player findDragonKiller(EnderDragon dragon) {
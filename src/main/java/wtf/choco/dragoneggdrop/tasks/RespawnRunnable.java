@@ -3,7 +3,6 @@ package wtf.choco.dragoneggdrop.tasks;
 import com.google.common.base.Preconditions;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -22,7 +21,6 @@ import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.api.BattleState;
 import wtf.choco.dragoneggdrop.api.BattleStateChangeEvent;
 import wtf.choco.dragoneggdrop.utils.ActionBarUtil;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.DragonRespawnData;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
 import wtf.choco.dragoneggdrop.world.PortalCrystal;
@@ -62,10 +60,10 @@ public class RespawnRunnable extends BukkitRunnable {
         this.dragonBattle = worldWrapper.getWorld().getEnderDragonBattle();
         this.dragon = dragonBattle.getEnderDragon();
 
-        this.announceMessages = plugin.getConfig().getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_MESSAGES).stream().map(s -> ChatColor.translateAlternateColorCodes('&', s)).collect(Collectors.toList());
+        this.announceMessages = plugin.getDEDConfig().getRespawnMessages();
         this.announceRespawn = announceMessages.size() > 0;
 
-        int announceMessageRadius = plugin.getConfig().getInt(DEDConstants.CONFIG_RESPAWN_MESSAGES_RADIUS, -1);
+        int announceMessageRadius = plugin.getDEDConfig().getRespawnMessagesRadius();
         this.limitAnnounceToRadius = (announceMessageRadius > 0);
         this.announceMessageRadiusSquared = (int) Math.pow(announceMessageRadius, 2);
 
@@ -0,0 +1,175 @@
+package wtf.choco.dragoneggdrop.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Various utility methods used to write and read compact binary data.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class BinaryUtils {
+
+    private BinaryUtils() { }
+
+    /**
+     * Write a variable length unsigned long. Smaller values occupy fewer bytes (7 bits per
+     * byte). Negative values should be {@link #zigZag(long) zig-zag encoded} first.
+     *
+     * @param out the output to which the value should be written
+     * @param value the value
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeVarLong(@NotNull DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Read a variable length unsigned long written by {@link #writeVarLong(DataOutput, long)}.
+     *
+     * @param in the input from which the value should be read
+     *
+     * @return the value
+     *
+     * @throws IOException if an I/O error occurs or the value is malformed
+     */
+    public static long readVarLong(@NotNull DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length long");
+    }
+
+    /**
+     * Write a variable length unsigned int.
+     *
+     * @param out the output to which the value should be written
+     * @param value the value. Must not be negative
+     *
+     * @throws IOException if an I/O error occurs
+     *
+     * @see #writeVarLong(DataOutput, long)
+     */
+    public static void writeVarInt(@NotNull DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Read a variable length unsigned int written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param in the input from which the value should be read
+     *
+     * @return the value
+     *
+     * @throws IOException if an I/O error occurs or the value is malformed
+     */
+    public static int readVarInt(@NotNull DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Malformed variable length int");
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Zig-zag encode a signed long such that values of small magnitude, whether positive
+     * or negative, are encoded as small unsigned values.
+     *
+     * @param value the value to encode
+     *
+     * @return the encoded value
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Decode a value encoded by {@link #zigZag(long)}.
+     *
+     * @param value the value to decode
+     *
+     * @return the decoded value
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write a double as the difference between its bits and the bits of the previously
+     * written double. Similar doubles, and doubles with few significant mantissa bits
+     * (i.e. whole or half numbers), occupy only a few bytes.
+     *
+     * @param out the output to which the value should be written
+     * @param value the value
+     * @param previous the bits of the previously written double, or 0 if none
+     *
+     * @return the bits of the written value, to be passed as previous to the next call
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static long writeDeltaDouble(@NotNull DataOutput out, double value, long previous) throws IOException {
+        long bits = Double.doubleToRawLongBits(value);
+        writeVarLong(out, Long.reverse(bits ^ previous)); // Reversed so that trailing zero bits become leading zero bits
+        return bits;
+    }
+
+    /**
+     * Read a double written by {@link #writeDeltaDouble(DataOutput, double, long)}.
+     *
+     * @param in the input from which the value should be read
+     * @param previous the bits of the previously read double, or 0 if none
+     *
+     * @return the bits of the read value. Use {@link Double#longBitsToDouble(long)} to
+     * convert it to a double, and pass it as previous to the next call
+     *
+     * @throws IOException if an I/O error occurs or the value is malformed
+     */
+    public static long readDeltaDouble(@NotNull DataInput in, long previous) throws IOException {
+        return Long.reverse(readVarLong(in)) ^ previous;
+    }
+
+    /**
+     * Write a UUID as 16 bytes.
+     *
+     * @param out the output to which the UUID should be written
+     * @param uuid the UUID
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeUUID(@NotNull DataOutput out, @NotNull UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Read a UUID written by {@link #writeUUID(DataOutput, UUID)}.
+     *
+     * @param in the input from which the UUID should be read
+     *
+     * @return the UUID
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @NotNull
+    public static UUID readUUID(@NotNull DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+}
@@ -0,0 +1,189 @@
+package wtf.choco.dragoneggdrop.utils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable snapshot of the frequently read values of DragonEggDrop's configuration,
+ * parsed once when the configuration is loaded. Reading from a snapshot is considerably
+ * cheaper than reading from the {@link FileConfiguration}, which copies lists and resolves
+ * paths on every call, and is safe from any thread.
+ * <p>
+ * A new snapshot replaces the previous one whenever the configuration is reloaded. Callers
+ * should therefore fetch the current snapshot rather than retain one.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see wtf.choco.dragoneggdrop.DragonEggDrop#getDEDConfig()
+ */
+public final class DEDConfig {
+
+    private final Set<@NotNull String> disabledWorlds;
+    private final int worldHistorySize;
+
+    private final boolean respawnOnJoin, strictCountdown, allowCrystalRespawns, lightningDamagesEntities;
+
+    private final List<@NotNull String> respawnMessages;
+    private final boolean respawnMessagesCondensed;
+    private final TimeUnit[] respawnMessagesOmittedTimeUnits;
+    private final int respawnMessagesRadius;
+
+    private DEDConfig(@NotNull FileConfiguration config) {
+        this.disabledWorlds = ImmutableSet.copyOf(config.getStringList(DEDConstants.CONFIG_DISABLED_WORLDS));
+        this.worldHistorySize = config.getInt(DEDConstants.CONFIG_WORLD_HISTORY_SIZE, 5);
+
+        this.respawnOnJoin = config.getBoolean(DEDConstants.CONFIG_RESPAWN_ON_JOIN, false);
+        this.strictCountdown = config.getBoolean(DEDConstants.CONFIG_STRICT_COUNTDOWN);
+        this.allowCrystalRespawns = config.getBoolean(DEDConstants.CONFIG_ALLOW_CRYSTAL_RESPAWNS);
+        this.lightningDamagesEntities = config.getBoolean(DEDConstants.CONFIG_LIGHTNING_DAMAGES_ENTITIES, false);
+
+        ImmutableList.Builder<@NotNull String> respawnMessages = ImmutableList.builder();
+        config.getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_MESSAGES).forEach(message -> respawnMessages.add(ChatColor.translateAlternateColorCodes('&', message)));
+        this.respawnMessages = respawnMessages.build();
+        this.respawnMessagesCondensed = config.getBoolean(DEDConstants.CONFIG_RESPAWN_MESSAGES_CONDENSED);
+        this.respawnMessagesOmittedTimeUnits = ConfigUtils.getTimeUnits(config.getStringList(DEDConstants.CONFIG_RESPAWN_MESSAGES_OMIT_TIME_UNITS));
+        this.respawnMessagesRadius = config.getInt(DEDConstants.CONFIG_RESPAWN_MESSAGES_RADIUS, -1);
+    }
+
+    /**
+     * Get the names of all worlds in which DragonEggDrop is disabled.
+     *
+     * @return the disabled world names. Immutable
+     */
+    @NotNull
+    public Set<@NotNull String> getDisabledWorlds() {
+        return disabledWorlds;
+    }
+
+    /**
+     * Check whether or not DragonEggDrop is disabled in the given world.
+     *
+     * @param world the world to check
+     *
+     * @return true if disabled, false otherwise
+     */
+    public boolean isDisabledWorld(@NotNull World world) {
+        return disabledWorlds.contains(world.getName());
+    }
+
+    /**
+     * Check whether or not DragonEggDrop is disabled in the world with the given name.
+     *
+     * @param worldName the name of the world to check
+     *
+     * @return true if disabled, false otherwise
+     */
+    public boolean isDisabledWorld(@NotNull String worldName) {
+        return disabledWorlds.contains(worldName);
+    }
+
+    /**
+     * Get the amount of dragon battles to keep a history of per world.
+     *
+     * @return the world history size
+     */
+    public int getWorldHistorySize() {
+        return worldHistorySize;
+    }
+
+    /**
+     * Check whether or not the respawn countdown should start when a player joins.
+     *
+     * @return true if respawning on join, false otherwise
+     */
+    public boolean isRespawnOnJoin() {
+        return respawnOnJoin;
+    }
+
+    /**
+     * Check whether or not respawn countdowns should be stopped when a dragon is spawned by
+     * other means.
+     *
+     * @return true if strict, false otherwise
+     */
+    public boolean isStrictCountdown() {
+        return strictCountdown;
+    }
+
+    /**
+     * Check whether or not players are allowed to respawn the dragon by placing crystals.
+     *
+     * @return true if allowed, false otherwise
+     */
+    public boolean isAllowCrystalRespawns() {
+        return allowCrystalRespawns;
+    }
+
+    /**
+     * Check whether or not the lightning struck when loot is spawned damages entities.
+     *
+     * @return true if damaging, false otherwise
+     */
+    public boolean isLightningDamagesEntities() {
+        return lightningDamagesEntities;
+    }
+
+    /**
+     * Get the messages shown in the action bar while a respawn countdown is running. Colour
+     * codes have already been translated.
+     *
+     * @return the respawn messages. Immutable
+     */
+    @NotNull
+    public List<@NotNull String> getRespawnMessages() {
+        return respawnMessages;
+    }
+
+    /**
+     * Check whether or not formatted respawn times should be condensed.
+     *
+     * @return true if condensed, false otherwise
+     */
+    public boolean isRespawnMessagesCondensed() {
+        return respawnMessagesCondensed;
+    }
+
+    /**
+     * Get the time units to omit from formatted respawn times. The returned array is shared
+     * and must not be modified.
+     *
+     * @return the omitted time units
+     */
+    @NotNull
+    public TimeUnit @NotNull [] getRespawnMessagesOmittedTimeUnits() {
+        return respawnMessagesOmittedTimeUnits;
+    }
+
+    /**
+     * Get the radius around the portal within which respawn messages are shown.
+     *
+     * @return the radius. Not positive if unlimited
+     */
+    public int getRespawnMessagesRadius() {
+        return respawnMessagesRadius;
+    }
+
+    /**
+     * Parse a snapshot of the given configuration.
+     *
+     * @param config the configuration to parse
+     *
+     * @return the parsed snapshot
+     */
+    @NotNull
+    public static DEDConfig load(@NotNull FileConfiguration config) {
+        Preconditions.checkArgument(config != null, "config must not be null");
+        return new DEDConfig(config);
+    }
+
+}
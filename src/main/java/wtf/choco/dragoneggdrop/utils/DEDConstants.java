@@ -23,6 +23,21 @@ public final class DEDConstants {
 
     public static final String CONFIG_DISABLED_WORLDS = "disabled-worlds";
     public static final String CONFIG_WORLD_HISTORY_SIZE = "world-history-size";
+    public static final String CONFIG_WORLD_STATE_SNAPSHOT_INTERVAL = "world-state-snapshot-interval";
+    public static final String CONFIG_BATTLE_HISTORY_STORE = "battle-history.store";
+    public static final String CONFIG_BATTLE_HISTORY_SQL_URL = "battle-history.sql-url";
+    public static final String CONFIG_DAMAGE_HISTORY_LOG_CAPACITY = "damage-history.log-capacity";
+    public static final String CONFIG_DAMAGE_HISTORY_LOG_RETENTION = "damage-history.log-retention";
+    public static final String CONFIG_DAMAGE_HISTORY_STALE_AFTER = "damage-history.stale-after";
+    public static final String CONFIG_DAMAGE_HISTORY_COALESCE_HITS = "damage-history.coalesce-hits";
+
+    public static final String CONFIG_PARTICLES_EXPRESSION_BACKEND = "particles.expression-backend";
+    public static final String CONFIG_PARTICLES_VIEW_DISTANCE = "particles.view-distance";
+    public static final String CONFIG_PARTICLES_REDUCED_DETAIL_DISTANCE = "particles.reduced-detail-distance";
+    public static final String CONFIG_PARTICLES_MAX_CONCURRENT_ANIMATIONS = "particles.max-concurrent-animations";
+    public static final String CONFIG_PARTICLES_TICK_BUDGET_MILLIS = "particles.tick-budget-millis";
+    public static final String CONFIG_PARTICLES_WORKER_THREADS = "particles.worker-threads";
+    public static final String CONFIG_PARTICLES_FRAME_LOOKAHEAD = "particles.frame-lookahead";
 
     public static final String CONFIG_RESPAWN_MESSAGES_MESSAGES = "respawn-messages.messages";
     public static final String CONFIG_RESPAWN_MESSAGES_CONDENSED = "respawn-messages.condensed";
@@ -2,19 +2,25 @@ package wtf.choco.dragoneggdrop.utils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.bukkit.Bukkit;
@@ -22,15 +28,25 @@ import org.bukkit.World;
 import org.bukkit.boss.DragonBattle;
 import org.bukkit.entity.EnderDragon;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.commons.util.MathUtil;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.dragon.DamageHistory;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
+import wtf.choco.dragoneggdrop.particle.ParticleAnimationScheduler;
+import wtf.choco.dragoneggdrop.particle.ParticleFrameBuffer;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.registry.Registry;
-import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionBackend;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
 import wtf.choco.dragoneggdrop.world.DragonRespawnData;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+import wtf.choco.dragoneggdrop.world.WorldStateJournal;
+import wtf.choco.dragoneggdrop.world.WorldStateSnapshot;
+import wtf.choco.dragoneggdrop.world.WorldStateSnapshot.WorldState;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
 
 /**
  * A utility class to ease access to data files provided by DragonEggDrop.
@@ -42,160 +58,251 @@ public final class DataFileUtils {
     private DataFileUtils() {}
 
     /**
-     * Write temporary data from DragonEggDrop to the provided File.
+     * Write temporary data from DragonEggDrop to the provided File. The current state is
+     * captured and written immediately. Any existing file is replaced atomically.
      *
      * @param file the file to which temporary data should be written
      *
      * @throws IOException if an io exception occurred
+     *
+     * @see #writeWorldState(WorldStateSnapshot, File)
      */
     public static void writeTempData(@NotNull File file) throws IOException {
         Preconditions.checkArgument(file != null, "file must not be null");
+        writeWorldState(WorldStateSnapshot.capture(), file);
+    }
 
-        if (!file.createNewFile()) {
-            return;
+    /**
+     * Write a {@link WorldStateSnapshot} to the provided File. The snapshot is streamed to a
+     * temporary sibling file which then atomically replaces the provided file, therefore the
+     * file is never left partially written. This method may be called from any thread.
+     *
+     * @param snapshot the snapshot to write
+     * @param file the file to which the snapshot should be written
+     *
+     * @throws IOException if an io exception occurred
+     */
+    public static void writeWorldState(@NotNull WorldStateSnapshot snapshot, @NotNull File file) throws IOException {
+        Preconditions.checkArgument(snapshot != null, "snapshot must not be null");
+        Preconditions.checkArgument(file != null, "file must not be null");
+
+        Path path = file.toPath();
+        Path tempPath = path.resolveSibling(file.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            snapshot.write(writer);
+            writer.flush();
+            out.getChannel().force(true);
         }
 
-        JsonObject object = new JsonObject();
+        replaceAtomically(tempPath, path);
+    }
 
-        for (EndWorldWrapper world : EndWorldWrapper.getAll()) {
-            JsonObject objectWorld = new JsonObject();
+    /**
+     * Move the source file to the target path, replacing the target if it exists. The move
+     * is atomic where supported by the file system.
+     *
+     * @param source the file to move
+     * @param target the path to which the file should be moved
+     *
+     * @throws IOException if an io exception occurred
+     */
+    public static void replaceAtomically(@NotNull Path source, @NotNull Path target) throws IOException {
+        Preconditions.checkArgument(source != null, "source must not be null");
+        Preconditions.checkArgument(target != null, "target must not be null");
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
-            DragonTemplate respawningTemplate = world.getRespawningTemplate();
-            if (respawningTemplate != null) {
-                objectWorld.addProperty("respawnTemplate", respawningTemplate.getId());
-            }
+    /**
+     * Read temporary data to DragonEggDrop from the provided File. The file is streamed rather
+     * than parsed into a json tree, and only the most recent battle of each world is resolved
+     * immediately. All other battles are resolved when first accessed.
+     *
+     * @param plugin the plugin instance
+     * @param file the file from which to read temporary data
+     *
+     * @see EndWorldWrapper#restoreDragonBattles(List)
+     */
+    public static void readTempData(@NotNull DragonEggDrop plugin, @NotNull File file) {
+        Preconditions.checkArgument(plugin != null, "plugin must not be null");
+        Preconditions.checkArgument(file != null, "file must not be null");
 
-            DragonTemplate activeTemplate = world.getActiveTemplate();
-            if (activeTemplate != null) {
-                objectWorld.addProperty("activeTemplate", activeTemplate.getId());
-            }
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))) {
+            reader.beginObject();
 
-            DragonLootTable lootTableOverride = world.getLootTableOverride();
-            if (lootTableOverride != null) {
-                objectWorld.addProperty("lootTableOverride", lootTableOverride.getId());
-            }
+            while (reader.hasNext()) {
+                World world = getTempDataWorld(plugin, reader.nextName());
+                if (world == null) {
+                    reader.skipValue();
+                    continue;
+                }
 
-            DragonRespawnData respawnData = world.getDragonRespawnData();
-            if (world.isRespawnInProgress() && respawnData != null) {
-                objectWorld.addProperty("respawnStartTime", respawnData.getStartTime());
-                objectWorld.addProperty("respawnDuration", respawnData.getDuration());
-            }
+                EndWorldWrapper worldWrapper = EndWorldWrapper.of(world);
+                String respawnTemplate = null, activeTemplate = null, lootTableOverride = null;
+                long respawnStartTime = -1, respawnDuration = -1, respawnTime = -1;
+                List<@NotNull ArchivedBattle> history = new ArrayList<>();
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "respawnTemplate":
+                            respawnTemplate = reader.nextString();
+                            break;
+                        case "activeTemplate":
+                            activeTemplate = reader.nextString();
+                            break;
+                        case "lootTableOverride":
+                            lootTableOverride = reader.nextString();
+                            break;
+                        case "respawnStartTime":
+                            respawnStartTime = reader.nextLong();
+                            break;
+                        case "respawnDuration":
+                            respawnDuration = reader.nextLong();
+                            break;
+                        case "respawnTime": // Legacy respawn time in seconds from now
+                            respawnTime = reader.nextLong();
+                            break;
+                        case "history":
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                ArchivedBattle battle = readTempDataBattle(plugin, worldWrapper, reader);
+                                if (battle != null) {
+                                    history.add(battle);
+                                }
+                            }
+                            reader.endArray();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
 
-            List<@NotNull DragonBattleRecord> previousDragonBattles = world.getPreviousDragonBattles();
-            if (previousDragonBattles.size() >= 1) {
-                JsonArray historyArray = new JsonArray();
-                previousDragonBattles.forEach(record -> historyArray.add(record.toJson()));
+                // LEGACY DATA
+                if ((respawnStartTime < 0 || respawnDuration < 0) && respawnTime >= 0) {
+                    respawnStartTime = System.currentTimeMillis();
+                    respawnDuration = respawnTime * 1000;
+                }
+                // LEGACY DATA END
 
-                objectWorld.add("history", historyArray);
+                restoreWorld(plugin, worldWrapper, new WorldState(worldWrapper.getWorldUUID(), world.getName(), respawnTemplate, activeTemplate, lootTableOverride, respawnStartTime, respawnDuration, history));
             }
 
-            object.add(world.getWorld().getName(), objectWorld);
-        }
-
-        try (PrintWriter writer = new PrintWriter(file)) {
-            DragonEggDrop.GSON.toJson(object, new JsonWriter(writer));
-        } catch (JsonIOException | IOException e) {
-            e.printStackTrace();
+            reader.endObject();
+        } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read temporary data from " + file.getName(), e);
         }
     }
 
     /**
-     * Read temporary data to DragonEggDrop from the provided File.
+     * Read temporary data to DragonEggDrop from the provided {@link WorldStateSnapshot}, such
+     * as one replayed from the {@link WorldStateJournal}. Only the most recent battle of each
+     * world is resolved immediately. All other battles are resolved when first accessed.
+     * Worlds that are no longer loaded or have since been disabled are ignored.
      *
      * @param plugin the plugin instance
-     * @param file the file from which to read temporary data
+     * @param snapshot the snapshot to restore
+     *
+     * @see EndWorldWrapper#restoreDragonBattles(List)
      */
-    public static void readTempData(@NotNull DragonEggDrop plugin, @NotNull File file) {
+    public static void readTempData(@NotNull DragonEggDrop plugin, @NotNull WorldStateSnapshot snapshot) {
         Preconditions.checkArgument(plugin != null, "plugin must not be null");
-        Preconditions.checkArgument(file != null, "file must not be null");
+        Preconditions.checkArgument(snapshot != null, "snapshot must not be null");
+
+        for (WorldState worldState : snapshot.getWorlds()) {
+            World world = Bukkit.getWorld(worldState.getWorldUUID());
+            if (world == null || plugin.getDEDConfig().isDisabledWorld(world)) {
+                continue;
+            }
 
-        JsonObject root = null;
-        try (FileReader reader = new FileReader(file)) {
-            root = DragonEggDrop.GSON.fromJson(reader, JsonObject.class);
-        } catch (IOException | JsonIOException e) {
-            e.printStackTrace();
+            restoreWorld(plugin, EndWorldWrapper.of(world), worldState);
         }
+    }
 
-        if (root == null) {
-            return;
+    /**
+     * Get the world to which the temporary data of the world with the given name should be
+     * restored. If the world does not exist, a warning is logged.
+     *
+     * @param plugin the plugin instance
+     * @param worldName the name of the world
+     *
+     * @return the world. null if it does not exist or is disabled
+     */
+    @Nullable
+    public static World getTempDataWorld(@NotNull DragonEggDrop plugin, @NotNull String worldName) {
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            plugin.getLogger().warning("Could not load temp data for world " + worldName + " (does it exist?). Deleting temporary data");
+            return null;
         }
 
-        Registry<@NotNull DragonTemplate> dragonTemplateRegistry = plugin.getDragonTemplateRegistry();
-        Registry<@NotNull DragonLootTable> lootTableRegistry = plugin.getLootTableRegistry();
+        return plugin.getDEDConfig().isDisabledWorld(world) ? null : world;
+    }
 
-        for (Entry<String, JsonElement> entry : root.entrySet()) {
-            World world = Bukkit.getWorld(entry.getKey());
-            if (world == null) {
-                plugin.getLogger().warning("Could not load temp data for world " + entry.getKey() + " (does it exist?). Deleting temporary data");
-                return;
-            }
+    @Nullable
+    private static ArchivedBattle readTempDataBattle(@NotNull DragonEggDrop plugin, @NotNull EndWorldWrapper worldWrapper, @NotNull JsonReader reader) throws IOException {
+        // Same format as DragonBattleRecord#toJson(). The damage history is only decoded once the battle is accessed
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
 
-            if (plugin.getConfig().getStringList(DEDConstants.CONFIG_DISABLED_WORLDS).contains(world.getName())) {
-                return;
-            }
+        try {
+            return ArchivedBattle.readRecordJson(reader, worldWrapper.getWorldUUID(), worldWrapper.getWorldName());
+        } catch (JsonParseException e) {
+            plugin.getLogger().warning("Discarding malformed battle history entry in world " + worldWrapper.getWorldName() + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-            EndWorldWrapper worldWrapper = EndWorldWrapper.of(world);
-            JsonObject worldObject = entry.getValue().getAsJsonObject();
+    private static void restoreWorld(@NotNull DragonEggDrop plugin, @NotNull EndWorldWrapper worldWrapper, @NotNull WorldState worldState) {
+        World world = worldWrapper.getWorld();
+        Registry<@NotNull DragonTemplate> dragonTemplateRegistry = plugin.getDragonTemplateRegistry();
+        Registry<@NotNull DragonLootTable> lootTableRegistry = plugin.getLootTableRegistry();
 
-            if (worldObject.has("respawnTemplate")) {
-                DragonTemplate template = dragonTemplateRegistry.get(worldObject.get("respawnTemplate").getAsString());
-                if (template != null) {
-                    worldWrapper.setRespawningTemplate(template);
-                }
+        if (worldState.getRespawnTemplate() != null) {
+            DragonTemplate template = dragonTemplateRegistry.get(worldState.getRespawnTemplate());
+            if (template != null) {
+                worldWrapper.setRespawningTemplate(template);
             }
+        }
 
-            Collection<@NotNull EnderDragon> dragons = world.getEntitiesByClass(EnderDragon.class);
-            if (worldObject.has("activeTemplate") && !dragons.isEmpty()) {
-                DragonTemplate template = dragonTemplateRegistry.get(worldObject.get("activeTemplate").getAsString());
-                DragonBattle battle = world.getEnderDragonBattle();
+        Collection<@NotNull EnderDragon> dragons = world.getEntitiesByClass(EnderDragon.class);
+        if (worldState.getActiveTemplate() != null && !dragons.isEmpty()) {
+            DragonTemplate template = dragonTemplateRegistry.get(worldState.getActiveTemplate());
+            DragonBattle battle = world.getEnderDragonBattle();
 
-                if (template != null && battle != null) {
-                    worldWrapper.setActiveTemplate(template);
-                    template.applyToBattle(Iterables.get(dragons, 0), battle);
-                }
+            if (template != null && battle != null) {
+                worldWrapper.setActiveTemplate(template);
+                template.applyToBattle(Iterables.get(dragons, 0), battle);
             }
+        }
 
-            if (worldObject.has("history")) {
-                JsonArray historyArray = worldObject.getAsJsonArray("history");
-                historyArray.forEach(historyEntryElement -> {
-                    if (!historyEntryElement.isJsonObject()) {
-                        return;
-                    }
-
-                    JsonObject historyEntryObject = historyEntryElement.getAsJsonObject();
-                    DragonBattleRecord dragonBattleRecord = DragonBattleRecord.fromJson(worldWrapper, historyEntryObject);
-
-                    worldWrapper.recordDragonBattle(dragonBattleRecord);
-                });
-            }
+        if (!worldState.getHistory().isEmpty()) {
+            worldWrapper.restoreDragonBattles(worldState.getHistory());
+        }
 
-            if (worldObject.has("lootTableOverride")) {
-                DragonLootTable lootTable = lootTableRegistry.get(worldObject.get("lootTableOverride").getAsString());
-                if (lootTable != null) {
-                    worldWrapper.setLootTableOverride(lootTable);
-                }
+        if (worldState.getLootTableOverride() != null) {
+            DragonLootTable lootTable = lootTableRegistry.get(worldState.getLootTableOverride());
+            if (lootTable != null) {
+                worldWrapper.setLootTableOverride(lootTable);
             }
+        }
 
-            if (worldObject.has("respawnStartTime") && worldObject.has("respawnDuration")) {
-                if (worldWrapper.isRespawnInProgress()) {
-                    worldWrapper.stopRespawn();
-                }
-
-                long startTime = worldObject.get("respawnStartTime").getAsLong();
-                long duration = worldObject.get("respawnDuration").getAsLong();
-
-                worldWrapper.startRespawn(new DragonRespawnData(worldWrapper, startTime, duration));
+        if (worldState.isRespawnInProgress()) {
+            if (worldWrapper.isRespawnInProgress()) {
+                worldWrapper.stopRespawn();
             }
 
-            // LEGACY DATA
-            else if (worldObject.has("respawnTime")) {
-                if (worldWrapper.isRespawnInProgress()) {
-                    worldWrapper.stopRespawn();
-                }
-
-                worldWrapper.startRespawn(worldObject.get("respawnTime").getAsInt());
-            }
-            // LEGACY DATA END
+            worldWrapper.startRespawn(new DragonRespawnData(worldWrapper, worldState.getRespawnStartTime(), worldState.getRespawnDuration()));
         }
     }
 
@@ -205,6 +312,7 @@ public final class DataFileUtils {
      *   <li>Dragon templates
      *   <li>Dragon loot tables
      *   <li>Particle shape definitions
+     *   <li>Damage history limits
      * </ul>
      *
      * @param plugin the plugin instance
@@ -215,6 +323,11 @@ public final class DataFileUtils {
 
         Logger logger = plugin.getLogger();
 
+        // Damage history limits
+        DamageHistory.setLogCapacity(plugin.getConfig().getInt(DEDConstants.CONFIG_DAMAGE_HISTORY_LOG_CAPACITY, DamageHistory.DEFAULT_LOG_CAPACITY));
+        DamageHistory.setLogRetention(MathUtil.parseSeconds(plugin.getConfig().getString(DEDConstants.CONFIG_DAMAGE_HISTORY_LOG_RETENTION, "0"), 0) * 1000L);
+        DamageHistory.setCoalesceDamage(plugin.getConfig().getBoolean(DEDConstants.CONFIG_DAMAGE_HISTORY_COALESCE_HITS, true));
+
         // Load loot tables
         if (log) {
             logger.info("Loading loot tables...");
@@ -230,8 +343,19 @@ public final class DataFileUtils {
         if (log) {
             logger.info("Loading particle shape definitions...");
         }
+        String backendName = plugin.getConfig().getString(DEDConstants.CONFIG_PARTICLES_EXPRESSION_BACKEND, "interpreted");
+        ExpressionBackend backend = ExpressionBackend.getByName(backendName);
+        if (backend == null) {
+            logger.warning("Unknown particle expression backend \"" + backendName + "\". Defaulting to \"interpreted\"");
+            backend = ExpressionBackend.INTERPRETED;
+        }
+
+        ExpressionUtils.clearCache();
+        ExpressionUtils.setBackend(backend);
+
         Registry<@NotNull ParticleShapeDefinition> particleRegistry = plugin.getParticleShapeDefinitionRegistry();
         particleRegistry.clear();
+        ParticleShapeDefinition.clearKeyframeCache();
         for (File file : plugin.getParticleDirectory().listFiles((file, name) -> name.endsWith(".json") && !name.equals("possible_conditions.json"))) {
             ParticleShapeDefinition shapeDefinition = ParticleShapeDefinition.fromFile(file);
             particleRegistry.register(shapeDefinition);
@@ -239,6 +363,25 @@ public final class DataFileUtils {
         if (log) {
             logger.info("Done! Successfully loaded " + particleRegistry.size() + " shape definitions");
         }
+        if (ExpressionUtils.getBackend() != backend) {
+            logger.warning("Could not generate classes for particle expressions on this server. Using the \"" + ExpressionUtils.getBackend().name().toLowerCase() + "\" backend instead");
+        }
+
+        ParticleFrameBuffer particleFrameBuffer = plugin.getParticleFrameBuffer();
+        double viewDistance = plugin.getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_VIEW_DISTANCE, ParticleFrameBuffer.DEFAULT_VIEW_DISTANCE);
+        if (viewDistance <= 0) {
+            logger.warning("Particle view distance must be positive. Defaulting to " + ParticleFrameBuffer.DEFAULT_VIEW_DISTANCE);
+            viewDistance = ParticleFrameBuffer.DEFAULT_VIEW_DISTANCE;
+        }
+
+        particleFrameBuffer.setViewDistance(viewDistance);
+        particleFrameBuffer.setReducedDetailDistance(plugin.getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_REDUCED_DETAIL_DISTANCE, ParticleFrameBuffer.DEFAULT_REDUCED_DETAIL_DISTANCE));
+
+        ParticleAnimationScheduler particleAnimationScheduler = plugin.getParticleAnimationScheduler();
+        particleAnimationScheduler.setMaxSessions(plugin.getConfig().getInt(DEDConstants.CONFIG_PARTICLES_MAX_CONCURRENT_ANIMATIONS, -1));
+        particleAnimationScheduler.setTickBudget(plugin.getConfig().getDouble(DEDConstants.CONFIG_PARTICLES_TICK_BUDGET_MILLIS, -1));
+        particleAnimationScheduler.setWorkerThreads(Math.max(plugin.getConfig().getInt(DEDConstants.CONFIG_PARTICLES_WORKER_THREADS, 0), 0));
+        particleAnimationScheduler.setFrameLookahead(Math.max(plugin.getConfig().getInt(DEDConstants.CONFIG_PARTICLES_FRAME_LOOKAHEAD, ParticleAnimationScheduler.DEFAULT_FRAME_LOOKAHEAD), 1));
 
         // Load dragon templates
         if (log) {
@@ -0,0 +1,303 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * A {@link MathExpression} lowered into a flat postfix program. Instructions are packed
+ * into an int array (opcode in the lowest 8 bits, operand in the remaining bits) and
+ * numeric literals are held in a parallel double array. Evaluation is a single loop over
+ * the instructions using a primitive operand stack owned by the {@link ParticleVariables}
+ * against which the expression is evaluated.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class CompiledExpression implements MathExpression {
+
+    static final int OP_CONSTANT = 0;
+    static final int OP_VARIABLE = 1;
+    static final int OP_ADD = 2;
+    static final int OP_SUBTRACT = 3;
+    static final int OP_MULTIPLY = 4;
+    static final int OP_DIVIDE = 5;
+    static final int OP_POWER = 6;
+    static final int OP_NEGATE = 7;
+    static final int OP_FUNCTION = 8;
+    static final int OP_RANDOM = 20;
+
+    // Built-in functions. Kept as individual opcodes so they need not go through a DoubleUnaryOperator
+    static final int OP_SQRT = 9;
+    static final int OP_ABS = 10;
+    static final int OP_LOG = 11;
+    static final int OP_SIN = 12;
+    static final int OP_COS = 13;
+    static final int OP_TAN = 14;
+    static final int OP_CSC = 15;
+    static final int OP_SEC = 16;
+    static final int OP_COT = 17;
+    static final int OP_RAD = 18;
+    static final int OP_DEG = 19;
+
+    static final int OPCODE_MASK = 0xFF;
+    static final int OPERAND_SHIFT = 8;
+
+    private final String source;
+    private final int[] instructions;
+    private final double[] constants;
+    private final DoubleUnaryOperator[] functions;
+    private final int maxStackDepth;
+    private final boolean deterministic;
+
+    CompiledExpression(@NotNull String source, @NotNull int[] instructions, @NotNull double[] constants, @NotNull DoubleUnaryOperator @NotNull [] functions, int maxStackDepth) {
+        this.source = source;
+        this.instructions = instructions;
+        this.constants = constants;
+        this.functions = functions;
+        this.maxStackDepth = maxStackDepth;
+        this.deterministic = computeDeterministic(instructions);
+    }
+
+    @Override
+    public double evaluate(@NotNull ParticleVariables variables) {
+        // Entirely folded. Nothing to interpret
+        if (instructions.length == 1 && instructions[0] == OP_CONSTANT) {
+            return constants[0];
+        }
+
+        double[] stack = variables.getEvaluationStack(maxStackDepth); // Reused, evaluation does not allocate
+        int pointer = 0;
+
+        for (int instruction : instructions) {
+            switch (instruction & OPCODE_MASK) {
+                case OP_CONSTANT: stack[pointer++] = constants[instruction >>> OPERAND_SHIFT]; break;
+                case OP_VARIABLE: stack[pointer++] = variables.get(instruction >>> OPERAND_SHIFT); break;
+                case OP_RANDOM: stack[pointer++] = variables.nextRandom(); break;
+                case OP_ADD: pointer--; stack[pointer - 1] += stack[pointer]; break;
+                case OP_SUBTRACT: pointer--; stack[pointer - 1] -= stack[pointer]; break;
+                case OP_MULTIPLY: pointer--; stack[pointer - 1] *= stack[pointer]; break;
+                case OP_DIVIDE: pointer--; stack[pointer - 1] /= stack[pointer]; break;
+                case OP_POWER: pointer--; stack[pointer - 1] = Math.pow(stack[pointer - 1], stack[pointer]); break;
+                case OP_NEGATE: stack[pointer - 1] = -stack[pointer - 1]; break;
+                case OP_FUNCTION: stack[pointer - 1] = functions[instruction >>> OPERAND_SHIFT].applyAsDouble(stack[pointer - 1]); break;
+                default: stack[pointer - 1] = applyBuiltin(instruction & OPCODE_MASK, stack[pointer - 1]); break;
+            }
+        }
+
+        return stack[0];
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Get the source string from which this expression was compiled.
+     *
+     * @return the source expression
+     */
+    @NotNull
+    String getSource() {
+        return source;
+    }
+
+    @NotNull
+    int[] getInstructions() {
+        return instructions;
+    }
+
+    @NotNull
+    double[] getConstants() {
+        return constants;
+    }
+
+    @NotNull
+    DoubleUnaryOperator @NotNull [] getFunctions() {
+        return functions;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpression[" + source + ", instructions=" + instructions.length + ", constants=" + Arrays.toString(constants) + "]";
+    }
+
+    private static boolean computeDeterministic(int @NotNull [] instructions) {
+        // Injected operators are expected to be pure, so only variable reads matter
+        for (int instruction : instructions) {
+            int opcode = instruction & OPCODE_MASK;
+            if (opcode == OP_RANDOM) {
+                return false;
+            }
+
+            int slot = instruction >>> OPERAND_SHIFT;
+            if (opcode == OP_VARIABLE && slot != ParticleVariables.SLOT_T && slot != ParticleVariables.SLOT_THETA) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Apply a built-in function opcode to the given value.
+     *
+     * @param opcode the built-in function opcode
+     * @param x the function argument
+     *
+     * @return the result
+     */
+    static double applyBuiltin(int opcode, double x) {
+        switch (opcode) {
+            case OP_SQRT: return StrictMath.sqrt(x);
+            case OP_ABS: return Math.abs(x);
+            case OP_LOG: return x <= 0 ? Double.NaN : Math.log10(x);
+            case OP_SIN: return StrictMath.sin(Math.toRadians(x));
+            case OP_COS: return StrictMath.cos(Math.toRadians(x));
+            case OP_TAN: return StrictMath.tan(Math.toRadians(x));
+            case OP_CSC: return 1 / StrictMath.sin(Math.toRadians(x));
+            case OP_SEC: return 1 / StrictMath.cos(Math.toRadians(x));
+            case OP_COT: return 1 / StrictMath.tan(Math.toRadians(x));
+            case OP_RAD: return Math.toRadians(x);
+            case OP_DEG: return Math.toDegrees(x);
+            default: throw new IllegalStateException("Unknown built-in opcode " + opcode);
+        }
+    }
+
+    /**
+     * Incrementally assembles a {@link CompiledExpression} from postfix emissions. Constant
+     * sub-expressions are folded as they are emitted.
+     */
+    static final class Builder {
+
+        private final String source;
+
+        private int[] instructions = new int[16];
+        private int instructionCount = 0;
+
+        private double[] constants = new double[8];
+        private int constantCount = 0;
+
+        private DoubleUnaryOperator[] functions = new DoubleUnaryOperator[2];
+        private int functionCount = 0;
+
+        private int stackDepth = 0, maxStackDepth = 0;
+
+        Builder(@NotNull String source) {
+            this.source = source;
+        }
+
+        void constant(double value) {
+            if (constantCount == constants.length) {
+                this.constants = Arrays.copyOf(constants, constants.length * 2);
+            }
+
+            this.constants[constantCount] = value;
+            this.emit(OP_CONSTANT, constantCount++, 1);
+        }
+
+        void variable(@NotNull String name) {
+            // Bound to a slot now so evaluation never has to look up a name
+            int slot = ParticleVariables.getSlot(name);
+            if (slot == -1) {
+                throw new IllegalArgumentException("Unknown variable \"" + name + "\" in expression \"" + source + "\"");
+            }
+
+            if (slot == ParticleVariables.SLOT_RANDOM) {
+                this.emit(OP_RANDOM, 0, 1);
+            }
+            else {
+                this.emit(OP_VARIABLE, slot, 1);
+            }
+        }
+
+        void binary(int opcode) {
+            if (isConstant(1) && isConstant(2)) {
+                double b = popConstant(), a = popConstant();
+
+                switch (opcode) {
+                    case OP_ADD: this.constant(a + b); return;
+                    case OP_SUBTRACT: this.constant(a - b); return;
+                    case OP_MULTIPLY: this.constant(a * b); return;
+                    case OP_DIVIDE: this.constant(a / b); return;
+                    case OP_POWER: this.constant(Math.pow(a, b)); return;
+                    default: throw new IllegalArgumentException("Not a binary opcode: " + opcode);
+                }
+            }
+
+            this.emit(opcode, 0, -1);
+        }
+
+        void negate() {
+            if (isConstant(1)) {
+                this.constant(-popConstant());
+                return;
+            }
+
+            this.emit(OP_NEGATE, 0, 0);
+        }
+
+        void builtin(int opcode) {
+            if (isConstant(1)) {
+                this.constant(applyBuiltin(opcode, popConstant()));
+                return;
+            }
+
+            this.emit(opcode, 0, 0);
+        }
+
+        void function(@NotNull DoubleUnaryOperator function) {
+            if (isConstant(1)) { // Injected operators are expected to be pure functions
+                this.constant(function.applyAsDouble(popConstant()));
+                return;
+            }
+
+            if (functionCount == functions.length) {
+                this.functions = Arrays.copyOf(functions, functions.length * 2);
+            }
+
+            this.functions[functionCount] = function;
+            this.emit(OP_FUNCTION, functionCount++, 0);
+        }
+
+        @NotNull
+        CompiledExpression build() {
+            if (instructionCount == 0) {
+                throw new ArithmeticException("Empty expression");
+            }
+
+            return new CompiledExpression(source,
+                    Arrays.copyOf(instructions, instructionCount),
+                    Arrays.copyOf(constants, constantCount),
+                    Arrays.copyOf(functions, functionCount),
+                    maxStackDepth
+            );
+        }
+
+        private void emit(int opcode, int operand, int stackDelta) {
+            if (instructionCount == instructions.length) {
+                this.instructions = Arrays.copyOf(instructions, instructions.length * 2);
+            }
+
+            this.instructions[instructionCount++] = opcode | (operand << OPERAND_SHIFT);
+            this.stackDepth += stackDelta;
+            this.maxStackDepth = Math.max(maxStackDepth, stackDepth);
+        }
+
+        private boolean isConstant(int fromTop) {
+            return instructionCount >= fromTop && (instructions[instructionCount - fromTop] & OPCODE_MASK) == OP_CONSTANT;
+        }
+
+        private double popConstant() {
+            // Constants are only ever appended by constant pushes, so the last push always owns the last constant
+            this.instructionCount--;
+            this.stackDepth--;
+            return constants[--constantCount];
+        }
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a strategy with which parsed {@link MathExpression MathExpressions} are evaluated.
+ *
+ * @author Parker Hawke - Choco
+ */
+public enum ExpressionBackend {
+
+    /**
+     * Expressions are compiled to a compact postfix program and evaluated by an interpreter.
+     */
+    INTERPRETED,
+
+    /**
+     * Expressions are compiled to a JVM class per expression which may be inlined by the JIT.
+     * If classes cannot be defined at runtime, {@link #INTERPRETED} is used instead.
+     */
+    GENERATED;
+
+    /**
+     * Get a backend by its (case insensitive) name.
+     *
+     * @param name the name of the backend
+     *
+     * @return the backend. null if none matches
+     */
+    @Nullable
+    public static ExpressionBackend getByName(@NotNull String name) {
+        for (ExpressionBackend backend : values()) {
+            if (backend.name().equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,183 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Generates a JVM class for a {@link CompiledExpression}. Each postfix instruction maps
+ * directly onto the JVM operand stack, so the generated {@code evaluate()} method is a
+ * single straight-line block of arithmetic and static {@link Math}/{@link StrictMath}
+ * calls that the JIT is free to inline.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ExpressionClassGenerator {
+
+    private static final String SUPER_NAME = Type.getInternalName(GeneratedExpression.class);
+    private static final String CLASS_NAME_PREFIX = SUPER_NAME + "$Generated";
+
+    private static final String CONSTRUCTOR_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(String.class), Type.getType(DoubleUnaryOperator[].class), Type.BOOLEAN_TYPE);
+    private static final String EVALUATE_DESCRIPTOR = Type.getMethodDescriptor(Type.DOUBLE_TYPE, Type.getType(ParticleVariables.class));
+    private static final String VARIABLES_NAME = Type.getInternalName(ParticleVariables.class);
+    private static final String VARIABLE_GET_DESCRIPTOR = "(I)D";
+    private static final String RANDOM_DESCRIPTOR = "()D";
+    private static final String UNARY_DESCRIPTOR = "(D)D";
+    private static final String BINARY_DESCRIPTOR = "(DD)D";
+
+    // this, variables, then a double temporary used to reorder operands for injected operators
+    private static final int LOCAL_TEMPORARY = 2;
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private final ExpressionClassLoader classLoader = new ExpressionClassLoader(GeneratedExpression.class.getClassLoader());
+
+    /**
+     * Generate, define and instantiate a class evaluating the given program.
+     *
+     * @param program the program to generate
+     *
+     * @return the generated expression instance
+     *
+     * @throws ReflectiveOperationException if the generated class could not be instantiated
+     */
+    @NotNull
+    MathExpression generate(@NotNull CompiledExpression program) throws ReflectiveOperationException {
+        String className = CLASS_NAME_PREFIX + CLASS_COUNTER.incrementAndGet();
+        byte[] bytes = generateBytes(className, program);
+
+        Class<?> generatedClass = classLoader.define(className.replace('/', '.'), bytes);
+        Constructor<?> constructor = generatedClass.getConstructor(String.class, DoubleUnaryOperator[].class, boolean.class);
+        return (MathExpression) constructor.newInstance(program.getSource(), program.getFunctions(), program.isDeterministic());
+    }
+
+    private byte @NotNull [] generateBytes(@NotNull String className, @NotNull CompiledExpression program) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, className, null, SUPER_NAME, null);
+
+        // Constructor, delegating to GeneratedExpression
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitVarInsn(Opcodes.ALOAD, 1);
+        constructor.visitVarInsn(Opcodes.ALOAD, 2);
+        constructor.visitVarInsn(Opcodes.ILOAD, 3);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER_NAME, "<init>", CONSTRUCTOR_DESCRIPTOR, false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        // evaluate(ParticleVariables)
+        MethodVisitor evaluate = writer.visitMethod(Opcodes.ACC_PUBLIC, "evaluate", EVALUATE_DESCRIPTOR, null, null);
+        evaluate.visitCode();
+
+        double[] constants = program.getConstants();
+        for (int instruction : program.getInstructions()) {
+            int operand = instruction >>> CompiledExpression.OPERAND_SHIFT;
+
+            switch (instruction & CompiledExpression.OPCODE_MASK) {
+                case CompiledExpression.OP_CONSTANT:
+                    evaluate.visitLdcInsn(constants[operand]);
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    evaluate.visitVarInsn(Opcodes.ALOAD, 1);
+                    pushInt(evaluate, operand);
+                    evaluate.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VARIABLES_NAME, "get", VARIABLE_GET_DESCRIPTOR, false);
+                    break;
+                case CompiledExpression.OP_RANDOM:
+                    evaluate.visitVarInsn(Opcodes.ALOAD, 1);
+                    evaluate.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VARIABLES_NAME, "nextRandom", RANDOM_DESCRIPTOR, false);
+                    break;
+                case CompiledExpression.OP_ADD: evaluate.visitInsn(Opcodes.DADD); break;
+                case CompiledExpression.OP_SUBTRACT: evaluate.visitInsn(Opcodes.DSUB); break;
+                case CompiledExpression.OP_MULTIPLY: evaluate.visitInsn(Opcodes.DMUL); break;
+                case CompiledExpression.OP_DIVIDE: evaluate.visitInsn(Opcodes.DDIV); break;
+                case CompiledExpression.OP_NEGATE: evaluate.visitInsn(Opcodes.DNEG); break;
+                case CompiledExpression.OP_POWER: invokeStatic(evaluate, "java/lang/Math", "pow", BINARY_DESCRIPTOR); break;
+                case CompiledExpression.OP_FUNCTION:
+                    evaluate.visitVarInsn(Opcodes.DSTORE, LOCAL_TEMPORARY);
+                    evaluate.visitVarInsn(Opcodes.ALOAD, 0);
+                    evaluate.visitFieldInsn(Opcodes.GETFIELD, SUPER_NAME, "functions", Type.getDescriptor(DoubleUnaryOperator[].class));
+                    pushInt(evaluate, operand);
+                    evaluate.visitInsn(Opcodes.AALOAD);
+                    evaluate.visitVarInsn(Opcodes.DLOAD, LOCAL_TEMPORARY);
+                    evaluate.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(DoubleUnaryOperator.class), "applyAsDouble", UNARY_DESCRIPTOR, true);
+                    break;
+                case CompiledExpression.OP_SQRT: invokeStatic(evaluate, "java/lang/StrictMath", "sqrt", UNARY_DESCRIPTOR); break;
+                case CompiledExpression.OP_ABS: invokeStatic(evaluate, "java/lang/Math", "abs", UNARY_DESCRIPTOR); break;
+                case CompiledExpression.OP_LOG: invokeStatic(evaluate, SUPER_NAME, "log", UNARY_DESCRIPTOR); break;
+                case CompiledExpression.OP_SIN: trigonometric(evaluate, "sin", false); break;
+                case CompiledExpression.OP_COS: trigonometric(evaluate, "cos", false); break;
+                case CompiledExpression.OP_TAN: trigonometric(evaluate, "tan", false); break;
+                case CompiledExpression.OP_CSC: trigonometric(evaluate, "sin", true); break;
+                case CompiledExpression.OP_SEC: trigonometric(evaluate, "cos", true); break;
+                case CompiledExpression.OP_COT: trigonometric(evaluate, "tan", true); break;
+                case CompiledExpression.OP_RAD: invokeStatic(evaluate, "java/lang/Math", "toRadians", UNARY_DESCRIPTOR); break;
+                case CompiledExpression.OP_DEG: invokeStatic(evaluate, "java/lang/Math", "toDegrees", UNARY_DESCRIPTOR); break;
+                default: throw new IllegalStateException("Unknown opcode " + (instruction & CompiledExpression.OPCODE_MASK));
+            }
+        }
+
+        evaluate.visitInsn(Opcodes.DRETURN);
+        evaluate.visitMaxs(0, 0);
+        evaluate.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void trigonometric(@NotNull MethodVisitor method, @NotNull String function, boolean reciprocal) {
+        invokeStatic(method, "java/lang/Math", "toRadians", UNARY_DESCRIPTOR);
+        invokeStatic(method, "java/lang/StrictMath", function, UNARY_DESCRIPTOR);
+
+        if (reciprocal) { // [x] -> [x, 1] -> [1, x, 1] -> [1, x] -> [1 / x]
+            method.visitInsn(Opcodes.DCONST_1);
+            method.visitInsn(Opcodes.DUP2_X2);
+            method.visitInsn(Opcodes.POP2);
+            method.visitInsn(Opcodes.DDIV);
+        }
+    }
+
+    private void invokeStatic(@NotNull MethodVisitor method, @NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, owner, name, descriptor, false);
+    }
+
+    private void pushInt(@NotNull MethodVisitor method, int value) {
+        if (value <= 5) {
+            method.visitInsn(Opcodes.ICONST_0 + value);
+        }
+        else if (value <= Byte.MAX_VALUE) {
+            method.visitIntInsn(Opcodes.BIPUSH, value);
+        }
+        else {
+            method.visitLdcInsn(value);
+        }
+    }
+
+
+    private static final class ExpressionClassLoader extends ClassLoader {
+
+        static {
+            ClassLoader.registerAsParallelCapable();
+        }
+
+        private ExpressionClassLoader(@NotNull ClassLoader parent) {
+            super(parent);
+        }
+
+        @NotNull
+        private Class<?> define(@NotNull String name, byte @NotNull [] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+    }
+
+}
@@ -4,10 +4,13 @@ import com.google.common.base.Preconditions;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.DoubleUnaryOperator;
 
 import org.jetbrains.annotations.NotNull;
 
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
 /**
  * A utility class to parse and obtain instances of {@link MathExpression}
  *
@@ -25,44 +28,107 @@ public final class ExpressionUtils {
      */
 
     private static final Map<@NotNull String, @NotNull DoubleUnaryOperator> OPERATORS = new HashMap<>();
+    private static final Map<@NotNull String, @NotNull Integer> BUILTIN_OPCODES = new HashMap<>();
+
+    private static final Map<@NotNull String, @NotNull MathExpression> GENERATED_CACHE = new ConcurrentHashMap<>();
+
+    private static ExpressionBackend backend = ExpressionBackend.INTERPRETED;
+    private static ExpressionClassGenerator classGenerator;
+    private static boolean classGenerationUnavailable = false;
 
     static {
         // Basic arithmetics
-        OPERATORS.put("sqrt", StrictMath::sqrt);
-        OPERATORS.put("abs", Math::abs);
-        OPERATORS.put("log", x -> x <= 0 ? Double.NaN : Math.log10(x));
+        registerBuiltin("sqrt", CompiledExpression.OP_SQRT);
+        registerBuiltin("abs", CompiledExpression.OP_ABS);
+        registerBuiltin("log", CompiledExpression.OP_LOG);
 
         // Trigonometric
-        OPERATORS.put("sin", x -> StrictMath.sin(Math.toRadians(x)));
-        OPERATORS.put("cos", x -> StrictMath.cos(Math.toRadians(x)));
-        OPERATORS.put("tan", x -> StrictMath.tan(Math.toRadians(x)));
+        registerBuiltin("sin", CompiledExpression.OP_SIN);
+        registerBuiltin("cos", CompiledExpression.OP_COS);
+        registerBuiltin("tan", CompiledExpression.OP_TAN);
 
-        OPERATORS.put("csc", x -> 1 / StrictMath.sin(Math.toRadians(x)));
-        OPERATORS.put("sec", x -> 1 / StrictMath.cos(Math.toRadians(x)));
-        OPERATORS.put("cot", x -> 1 / StrictMath.tan(Math.toRadians(x)));
+        registerBuiltin("csc", CompiledExpression.OP_CSC);
+        registerBuiltin("sec", CompiledExpression.OP_SEC);
+        registerBuiltin("cot", CompiledExpression.OP_COT);
 
         // Conversion
-        OPERATORS.put("rad", Math::toRadians);
-        OPERATORS.put("deg", Math::toDegrees);
+        registerBuiltin("rad", CompiledExpression.OP_RAD);
+        registerBuiltin("deg", CompiledExpression.OP_DEG);
     }
 
     private ExpressionUtils() {}
 
     /**
-     * Evaluate a basic mathematical expression.
+     * Parse and compile a basic mathematical expression. Constant sub-expressions are folded
+     * at compile time and variables are bound to their {@link ParticleVariables} slots.
      *
      * @param expression the string to parse
      *
      * @return The mathematical expression
+     *
+     * @throws IllegalArgumentException if the expression references an unknown variable
      */
     @NotNull
     public static MathExpression parseExpression(@NotNull String expression) {
         Preconditions.checkArgument(expression != null, "expression must not be null");
-        return new ExpressionEvaluator(expression).parse();
+
+        if (getBackend() == ExpressionBackend.GENERATED) {
+            MathExpression generated = GENERATED_CACHE.get(expression);
+            if (generated != null) {
+                return generated;
+            }
+        }
+
+        CompiledExpression program = new ExpressionEvaluator(expression).parse();
+        if (getBackend() != ExpressionBackend.GENERATED) {
+            return program;
+        }
+
+        MathExpression generated = generate(program);
+        if (generated == program) { // Class generation failed, don't cache the fallback
+            return program;
+        }
+
+        MathExpression existing = GENERATED_CACHE.putIfAbsent(expression, generated);
+        return existing != null ? existing : generated;
     }
 
     /**
-     * Inject a custom mathematical operation into the expression parser.
+     * Set the backend with which subsequently parsed expressions will be evaluated. Already
+     * parsed expressions are unaffected.
+     *
+     * @param backend the backend to set
+     */
+    public static synchronized void setBackend(@NotNull ExpressionBackend backend) {
+        Preconditions.checkArgument(backend != null, "backend must not be null");
+        ExpressionUtils.backend = backend;
+    }
+
+    /**
+     * Get the backend with which expressions are currently being evaluated. If
+     * {@link ExpressionBackend#GENERATED} was requested but classes could not be defined
+     * at runtime, {@link ExpressionBackend#INTERPRETED} is returned instead.
+     *
+     * @return the effective backend
+     */
+    @NotNull
+    public static synchronized ExpressionBackend getBackend() {
+        return classGenerationUnavailable ? ExpressionBackend.INTERPRETED : backend;
+    }
+
+    /**
+     * Clear all cached generated expressions and discard the class loader into which they were
+     * defined. Generated classes are unloaded once no previously parsed expression remains
+     * referenced. Subsequently generated expressions are defined into a new class loader.
+     */
+    public static synchronized void clearCache() {
+        GENERATED_CACHE.clear();
+        classGenerator = null;
+    }
+
+    /**
+     * Inject a custom mathematical operation into the expression parser. Operators are
+     * expected to be pure functions as they will be folded when applied to constants.
      *
      * @param functionName the name of the function to inject (i.e. "sqrt")
      * @param operator the operation to perform when parsing this function
@@ -78,11 +144,41 @@ public final class ExpressionUtils {
         }
 
         OPERATORS.put(functionName, operator);
+        GENERATED_CACHE.clear(); // Names previously parsed as variables may now be functions
         return true;
     }
 
+    @NotNull
+    private static synchronized MathExpression generate(@NotNull CompiledExpression program) {
+        if (classGenerationUnavailable) {
+            return program;
+        }
+
+        try {
+            if (classGenerator == null) {
+                classGenerator = new ExpressionClassGenerator();
+            }
+
+            return classGenerator.generate(program);
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            // Class definition is unavailable in this environment. Fall back to the interpreter for good
+            classGenerationUnavailable = true;
+            return program;
+        } catch (RuntimeException e) {
+            // ASM could not generate this expression (i.e. MethodTooLargeException). Interpret it instead
+            return program;
+        }
+    }
+
+    private static void registerBuiltin(@NotNull String functionName, int opcode) {
+        OPERATORS.put(functionName, x -> CompiledExpression.applyBuiltin(opcode, x));
+        BUILTIN_OPCODES.put(functionName, opcode);
+    }
+
     /**
-     * The logic behind the parsing of {@link MathExpression} objects.
+     * The logic behind the parsing of {@link MathExpression} objects. Rather than building a
+     * tree of nested expressions, the parser emits a postfix program into a
+     * {@link CompiledExpression.Builder} as it descends.
      *
      * @author Parker Hawke - Choco
      */
@@ -91,9 +187,11 @@ public final class ExpressionUtils {
         private int pos = -1, ch;
 
         private final String expression;
+        private final CompiledExpression.Builder program;
 
         public ExpressionEvaluator(@NotNull String expression) {
             this.expression = expression;
+            this.program = new CompiledExpression.Builder(expression);
         }
 
         /**
@@ -130,15 +228,15 @@ public final class ExpressionUtils {
          * @return the parsed mathematical expression
          */
         @NotNull
-        public MathExpression parse() {
+        public CompiledExpression parse() {
             this.nextChar();
 
-            MathExpression x = this.parseExpression();
+            this.parseExpression();
             if (pos < expression.length()) {
                 throw new RuntimeException("Unexpected: " + (char) ch);
             }
 
-            return x;
+            return program.build();
         }
 
         /*
@@ -152,48 +250,42 @@ public final class ExpressionUtils {
         /**
          * Parse an entire sub-expression in the parent expression (including addition and
          * subtraction).
-         *
-         * @return the parsed expression
          */
-        @NotNull
-        public MathExpression parseExpression() {
-            MathExpression x = parseTerm();
+        public void parseExpression() {
+            this.parseTerm();
 
             while (true) {
                 if (eat('+')) { // addition
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) + b.evaluate(variables));
+                    this.parseTerm();
+                    this.program.binary(CompiledExpression.OP_ADD);
                 }
                 else if (eat('-')) { // subtraction
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) - b.evaluate(variables));
+                    this.parseTerm();
+                    this.program.binary(CompiledExpression.OP_SUBTRACT);
                 }
                 else {
-                    return x;
+                    return;
                 }
             }
         }
 
         /**
          * Parse a term in the parent expression (including multiplication and division).
-         *
-         * @return the parsed term
          */
-        @NotNull
-        public MathExpression parseTerm() {
-            MathExpression x = parseFactor();
+        public void parseTerm() {
+            this.parseFactor();
 
             while (true) {
                 if (eat('*')) { // multiplication
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) * b.evaluate(variables));
+                    this.parseFactor();
+                    this.program.binary(CompiledExpression.OP_MULTIPLY);
                 }
                 else if (eat('/')) { // division
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) / b.evaluate(variables));
+                    this.parseFactor();
+                    this.program.binary(CompiledExpression.OP_DIVIDE);
                 }
                 else {
-                    return x;
+                    return;
                 }
             }
         }
@@ -201,24 +293,23 @@ public final class ExpressionUtils {
         /**
          * Parse a factor in the parent expression (including addition, subtraction,
          * parentheses and injected operation functions).
-         *
-         * @return the parsed factor
          */
-        @NotNull
-        public MathExpression parseFactor() {
+        public void parseFactor() {
             if (eat('+')) {
-                return parseFactor(); // unary plus
+                this.parseFactor(); // unary plus
+                return;
             }
 
             if (eat('-')) {
-                return variables -> -parseFactor().evaluate(variables); // unary minus
+                this.parseFactor(); // unary minus
+                this.program.negate();
+                return;
             }
 
-            MathExpression x;
             int startPos = pos;
 
             if (eat('(')) { // parentheses
-                x = parseExpression();
+                this.parseExpression();
                 this.eat(')');
             }
             else if ((ch >= '0' && ch <= '9') || ch == '.') { // numbers
@@ -226,8 +317,8 @@ public final class ExpressionUtils {
                     this.nextChar();
                 }
 
-                String value = expression.substring(startPos, this.pos);
-                x = (variables -> Double.parseDouble(value));
+                // Parsed once here rather than on every evaluation
+                this.program.constant(Double.parseDouble(expression.substring(startPos, this.pos)));
             }
             else if (ch >= 'a' && ch <= 'z') { // functions
                 while (ch >= 'a' && ch <= 'z') {
@@ -236,13 +327,18 @@ public final class ExpressionUtils {
 
                 String function = expression.substring(startPos, this.pos);
 
-                if (OPERATORS.containsKey(function)) {
+                Integer builtin = BUILTIN_OPCODES.get(function);
+                if (builtin != null) {
+                    this.parseFactor();
+                    this.program.builtin(builtin);
+                }
+                else if (OPERATORS.containsKey(function)) {
                     DoubleUnaryOperator operand = OPERATORS.get(function);
-                    MathExpression a = this.parseFactor();
-                    x = (variables -> operand.applyAsDouble(a.evaluate(variables)));
+                    this.parseFactor();
+                    this.program.function(operand);
                 }
                 else {
-                    x = (variables -> variables.get(function, 0.0));
+                    this.program.variable(function);
                 }
             }
             else {
@@ -250,11 +346,9 @@ public final class ExpressionUtils {
             }
 
             if (eat('^')) { // exponentiation
-                MathExpression a = x, b = parseFactor();
-                x = (variables -> Math.pow(a.evaluate(variables), b.evaluate(variables)));
+                this.parseFactor();
+                this.program.binary(CompiledExpression.OP_POWER);
             }
-
-            return x;
         }
     }
 
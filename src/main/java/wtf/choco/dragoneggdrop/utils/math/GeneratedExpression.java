@@ -0,0 +1,62 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The base type of all {@link MathExpression MathExpressions} generated as JVM classes
+ * by the {@link ExpressionBackend#GENERATED} backend. Generated subclasses implement
+ * {@link #evaluate(wtf.choco.dragoneggdrop.particle.ParticleVariables)} as straight-line
+ * bytecode and read any injected operators from this class.
+ * <p>
+ * This class is public only so that it may be extended by generated classes defined in
+ * a separate class loader. It should not be extended manually.
+ *
+ * @author Parker Hawke - Choco
+ */
+public abstract class GeneratedExpression implements MathExpression {
+
+    /**
+     * Injected operators referenced by the generated bytecode, in order of their operand index.
+     */
+    protected final DoubleUnaryOperator[] functions;
+
+    private final String source;
+    private final boolean deterministic;
+
+    /**
+     * Construct a new generated expression.
+     *
+     * @param source the source expression
+     * @param functions the injected operators
+     * @param deterministic whether or not the expression depends only on t and theta
+     */
+    protected GeneratedExpression(@NotNull String source, @NotNull DoubleUnaryOperator @NotNull [] functions, boolean deterministic) {
+        this.source = source;
+        this.functions = functions;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * The built-in log function. Exposed for generated classes so they need not emit branches.
+     *
+     * @param x the value
+     *
+     * @return the base 10 logarithm of x, or NaN if x is not positive
+     */
+    protected static double log(double x) {
+        return x <= 0 ? Double.NaN : Math.log10(x);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + source + "]";
+    }
+
+}
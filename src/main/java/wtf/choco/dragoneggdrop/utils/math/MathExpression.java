@@ -21,4 +21,15 @@ public interface MathExpression {
      */
     public double evaluate(@NotNull ParticleVariables variables);
 
+    /**
+     * Check whether or not the result of this expression depends only on the t and theta
+     * variables. Deterministic expressions always evaluate to the same result given the
+     * same t and theta, regardless of location, world or randomness.
+     *
+     * @return true if deterministic, false otherwise
+     */
+    public default boolean isDeterministic() {
+        return false;
+    }
+
 }
@@ -6,6 +6,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 
 import java.time.Instant;
+import java.util.Base64;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -129,6 +130,17 @@ public class DragonBattleRecord {
         return Instant.ofEpochMilli(deathTimestamp);
     }
 
+    /**
+     * Get the amount of time it took to kill the dragon, measured from the first damage
+     * recorded in its damage history to its death.
+     *
+     * @return the time to kill in milliseconds. -1 if no damage was recorded
+     */
+    public long getTimeToKill() {
+        long firstRecordedTime = damageHistory.getFirstRecordedTime();
+        return (firstRecordedTime >= 0) ? Math.max(deathTimestamp - firstRecordedTime, 0) : -1;
+    }
+
     /**
      * Serialize this battle record as a {@link JsonObject}. This serialized object does not contain
      * the world ({@link #getWorld()}). When deserialized with {@link #fromJson(EndWorldWrapper, JsonObject)},
@@ -146,7 +158,7 @@ public class DragonBattleRecord {
             object.addProperty("lootTable", lootTable.getId());
         }
 
-        object.add("damageHistory", damageHistory.toJson());
+        object.addProperty("damageHistoryData", Base64.getEncoder().encodeToString(damageHistory.toBytes()));
         object.addProperty("deathTimestamp", deathTimestamp);
 
         return object;
@@ -168,7 +180,15 @@ public class DragonBattleRecord {
         String templateId = JsonUtils.getRequiredField(object, "template", JsonElement::getAsString);
         String lootTableId = JsonUtils.getOptionalField(object, "lootTable", JsonElement::getAsString, "");
         long deathTimestamp = JsonUtils.getOptionalField(object, "deathTimestamp", JsonElement::getAsLong, 0L);
-        DamageHistory damageHistory = JsonUtils.getOptionalField(object, "damageHistory", element -> DamageHistory.fromJson(element.getAsJsonObject()), DamageHistory.dummy());
+
+        // Damage history was previously serialized as json. Read it if present for compatibility
+        DamageHistory damageHistory;
+        if (object.has("damageHistoryData")) {
+            damageHistory = DamageHistory.fromBytes(Base64.getDecoder().decode(object.get("damageHistoryData").getAsString()));
+        }
+        else {
+            damageHistory = JsonUtils.getOptionalField(object, "damageHistory", element -> DamageHistory.fromJson(element.getAsJsonObject()), DamageHistory.dummy());
+        }
 
         DragonEggDrop plugin = DragonEggDrop.getInstance();
 
@@ -4,13 +4,14 @@ import com.google.common.base.Preconditions;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.Bukkit;
 import org.bukkit.World;
@@ -20,11 +21,14 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.api.BattleHistoryEvictEvent;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.tasks.DragonCheckRunnable;
 import wtf.choco.dragoneggdrop.tasks.RespawnRunnable;
-import wtf.choco.dragoneggdrop.utils.DEDConstants;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
+import wtf.choco.dragoneggdrop.world.history.BattleHistoryQuery;
+import wtf.choco.dragoneggdrop.world.history.BattleHistoryStore;
 
 /**
  * Represents a wrapped {@link World} object with {@link Environment#THE_END} to separate
@@ -34,12 +38,13 @@ import wtf.choco.dragoneggdrop.utils.DEDConstants;
  */
 public class EndWorldWrapper {
 
-    private static final Map<@NotNull UUID, @NotNull EndWorldWrapper> WRAPPERS = new HashMap<>();
+    // Read from any thread (i.e. by placeholders). Wrappers are created on first access and retained while their world is unloaded
+    private static final Map<@NotNull UUID, @NotNull EndWorldWrapper> WRAPPERS = new ConcurrentHashMap<>();
 
     private DragonTemplate activeTemplate, respawningTemplate;
     private DragonLootTable lootTableOverride = null;
 
-    private final LinkedList<DragonBattleRecord> battleHistory; // Intentionally not annotated
+    private final HistoryRing<BattleHistoryEntry> battleHistory; // Intentionally not annotated
 
     private RespawnRunnable respawnTask;
     private DragonRespawnData dragonRespawnData;
@@ -47,8 +52,12 @@ public class EndWorldWrapper {
     private DragonCheckRunnable dragonCheckRunnable;
     private boolean dragonDying = false;
 
+    // Whether the world is unloaded and, if so, whether its respawn should resume once loaded
+    private boolean suspended = false, respawnSuspended = false;
+
     private Reference<@Nullable World> worldReference;
     private final UUID worldUUID;
+    private final String worldName;
 
     private final DragonEggDrop plugin;
 
@@ -63,11 +72,12 @@ public class EndWorldWrapper {
 
         this.plugin = DragonEggDrop.getInstance();
         this.worldUUID = world.getUID();
+        this.worldName = world.getName();
         this.worldReference = new WeakReference<>(world);
-        this.battleHistory = new LinkedList<>();
+        this.battleHistory = new HistoryRing<>(getConfiguredBattleHistorySize(), this::onBattleEvicted);
 
         this.dragonCheckRunnable = new DragonCheckRunnable(plugin, this);
-        this.dragonCheckRunnable.runTaskTimer(plugin, 0L, 20L);
+        this.dragonCheckRunnable.start();
     }
 
     /**
@@ -101,6 +111,17 @@ public class EndWorldWrapper {
         return worldUUID;
     }
 
+    /**
+     * Get the name of the world represented by this wrapper. Unlike {@link #getWorld()}, the
+     * name is available while the world is unloaded.
+     *
+     * @return the represented world name
+     */
+    @NotNull
+    public String getWorldName() {
+        return worldName;
+    }
+
     /**
      * Commence the Dragon's respawning processes in this world with a specific dragon
      * template and respawn delay. This respawn may or may not fail depending on whether
@@ -125,13 +146,15 @@ public class EndWorldWrapper {
         }
 
         if (lootTable != null) { // Don't reset if it's null
-            this.setLootTableOverride(lootTable);
+            this.lootTableOverride = lootTable;
         }
 
         this.dragonRespawnData = respawnData;
-        this.setRespawningTemplate(template);
+        this.respawningTemplate = template;
         this.respawnTask = new RespawnRunnable(plugin, this);
         this.respawnTask.runTaskTimer(plugin, 0, 20);
+
+        this.journal().respawnStarted(this, respawnData, template, lootTable);
         return true;
     }
 
@@ -252,6 +275,15 @@ public class EndWorldWrapper {
      * Halt the Dragon respawning process if any are currently running.
      */
     public void stopRespawn() {
+        boolean respawning = (respawnTask != null || dragonRespawnData != null);
+        this.cancelRespawn();
+
+        if (respawning) {
+            this.journal().respawnStopped(this);
+        }
+    }
+
+    private void cancelRespawn() {
         // Cancels automatically but I want to be absolutely certain
         if (respawnTask != null) {
             this.respawnTask.cancel();
@@ -259,15 +291,17 @@ public class EndWorldWrapper {
 
         this.respawnTask = null;
         this.dragonRespawnData = null;
+        this.respawnSuspended = false;
     }
 
     /**
-     * Check whether or not a respawn is currently in progress.
+     * Check whether or not a respawn is currently in progress. A respawn remains in progress
+     * while its world is unloaded and resumes once the world is loaded again.
      *
      * @return true if a respawn is in progress, false otherwise
      */
     public boolean isRespawnInProgress() {
-        return dragonRespawnData != null && respawnTask != null;
+        return dragonRespawnData != null && (respawnTask != null || respawnSuspended);
     }
 
     /**
@@ -282,7 +316,15 @@ public class EndWorldWrapper {
      * @param dragonRespawnData the respawn data to set
      */
     public void setDragonRespawnData(@Nullable DragonRespawnData dragonRespawnData) {
+        DragonRespawnData previousRespawnData = this.dragonRespawnData;
         this.dragonRespawnData = dragonRespawnData;
+
+        if (dragonRespawnData != null && (respawnTask != null || respawnSuspended)) {
+            this.journal().respawnStarted(this, dragonRespawnData, null, null);
+        }
+        else if (dragonRespawnData == null && previousRespawnData != null) {
+            this.journal().respawnStopped(this);
+        }
     }
 
     /**
@@ -302,9 +344,21 @@ public class EndWorldWrapper {
      * @param dragonDying true if dying
      */
     public void setDragonDying(boolean dragonDying) {
+        if (this.dragonDying && !dragonDying) {
+            this.requestDragonCheck();
+        }
+
         this.dragonDying = dragonDying;
     }
 
+    /**
+     * Request that the presence of this world's dragon be checked on the next tick. This
+     * should be called whenever the dragon may have been removed or its state changed.
+     */
+    public void requestDragonCheck() {
+        this.dragonCheckRunnable.requestCheck();
+    }
+
     /**
      * Check whether or not the dragon is dying and its death animation is playing.
      *
@@ -321,7 +375,12 @@ public class EndWorldWrapper {
      * @param template the battle to set
      */
     public void setActiveTemplate(@Nullable DragonTemplate template) {
+        if (activeTemplate == template) {
+            return;
+        }
+
         this.activeTemplate = template;
+        this.journal().activeTemplateSet(this, template);
     }
 
     /**
@@ -343,7 +402,12 @@ public class EndWorldWrapper {
      * @param respawningTemplate the template to set
      */
     public void setRespawningTemplate(@Nullable DragonTemplate respawningTemplate) {
+        if (this.respawningTemplate == respawningTemplate) {
+            return;
+        }
+
         this.respawningTemplate = respawningTemplate;
+        this.journal().respawningTemplateSet(this, respawningTemplate);
     }
 
     /**
@@ -357,10 +421,13 @@ public class EndWorldWrapper {
     }
 
     /**
-     * Record a {@link DragonBattleRecord} to this world at the top of the history. If there are
-     * more recorded dragon battles than {@link #getMaxBattleHistorySize()}, the oldest entry will
-     * be pushed out and returned. Note that this method will push out any records that exceed the
-     * maximum battle history size but will only return the oldest.
+     * Record a {@link DragonBattleRecord} to this world at the top of the history. If the history
+     * already holds {@link #getMaxBattleHistorySize()} battles, the oldest entry will be pushed
+     * out, returned and announced with a {@link BattleHistoryEvictEvent}. If the max battle
+     * history size is 0, the record is not held and nothing is pushed out.
+     * <p>
+     * The record is additionally archived in the {@link BattleHistoryStore}, from which it may
+     * be queried with {@link #queryDragonBattles(BattleHistoryQuery)} once pushed out.
      *
      * @param record the record to record
      *
@@ -370,23 +437,64 @@ public class EndWorldWrapper {
     public DragonBattleRecord recordDragonBattle(@NotNull DragonBattleRecord record) {
         Preconditions.checkArgument(record != null, "record must not be null");
 
-        DragonBattleRecord lastRecord = null;
-        while (battleHistory.size() >= getMaxBattleHistorySize()) {
-            if (lastRecord == null) {
-                lastRecord = battleHistory.pollLast();
-                continue;
-            }
+        BattleHistoryEntry evictedEntry = battleHistory.push(new BattleHistoryEntry(record));
+        this.journal().battleRecorded(this, record);
+        this.plugin.getBattleHistoryStore().record(record);
+        return (evictedEntry != null) ? evictedEntry.resolve(this) : null;
+    }
 
-            this.battleHistory.pollLast();
+    /**
+     * Restore previously recorded battles to the bottom of this world's history. Unlike
+     * {@link #recordDragonBattle(DragonBattleRecord)}, the battles are not recorded anew (they
+     * are neither journaled nor archived). Battles exceeding {@link #getMaxBattleHistorySize()}
+     * are ignored.
+     * <p>
+     * Only the most recent battle is resolved immediately. All others are resolved into
+     * {@link DragonBattleRecord DragonBattleRecords} when first accessed, therefore restoring
+     * a long history does not require all of its damage histories to be decoded. Battles that
+     * cannot be resolved (i.e. their template no longer exists) are discarded when accessed.
+     *
+     * @param battles the battles to restore, most recent first
+     */
+    public void restoreDragonBattles(@NotNull List<@NotNull ArchivedBattle> battles) {
+        Preconditions.checkArgument(battles != null, "battles must not be null");
+
+        for (ArchivedBattle battle : battles) {
+            if (!battleHistory.offerLast(new BattleHistoryEntry(battle))) {
+                break;
+            }
         }
 
-        this.battleHistory.push(record);
-        return lastRecord;
+        this.getPreviousDragonBattle(); // Resolve the most recent battle eagerly. It is used by placeholders and loot
+    }
+
+    /**
+     * Query the battles archived in this world, including those no longer held in this world's
+     * history. Records are ordered from most to least recent. Battles whose template no longer
+     * exists or whose damage history is malformed are omitted.
+     * <p>
+     * The archived battles are read off the main thread but resolved into records on the main
+     * thread, on which the returned future is completed.
+     *
+     * @param query the query. Restricted to this world regardless of its world
+     *
+     * @return a future completed on the main thread with the matching records
+     *
+     * @see BattleHistoryStore#query(BattleHistoryQuery)
+     */
+    @NotNull
+    public CompletableFuture<@NotNull List<@NotNull DragonBattleRecord>> queryDragonBattles(@NotNull BattleHistoryQuery query) {
+        Preconditions.checkArgument(query != null, "query must not be null");
+        return plugin.getBattleHistoryStore().query(query.inWorld(worldUUID)).thenApplyAsync(this::resolveArchivedBattles, task -> Bukkit.getScheduler().runTask(plugin, task));
     }
 
     /**
      * Get a previous dragon battle at the given index. If the index is negative or exceeds
      * {@link #getMaxBattleHistorySize()}, null will be returned.
+     * <p>
+     * This may be called asynchronously (e.g. by placeholders), in which case the battle is
+     * read from a snapshot of the history. Battles that have not yet been resolved cannot be
+     * resolved off the main thread, therefore null is returned for them.
      *
      * @param index the index of the record to fetch. Must be between 0 and
      * {@link #getMaxBattleHistorySize()}
@@ -395,7 +503,21 @@ public class EndWorldWrapper {
      */
     @Nullable
     public DragonBattleRecord getPreviousDragonBattle(int index) {
-        return index >= 0 && index < getPreviousDragonBattleCount() ? battleHistory.get(index) : null;
+        if (!Bukkit.isPrimaryThread()) {
+            return getPreviousDragonBattleAsync(index);
+        }
+
+        BattleHistoryEntry entry;
+        while ((entry = battleHistory.get(index)) != null) {
+            DragonBattleRecord record = entry.resolve(this);
+            if (record != null) {
+                return record;
+            }
+
+            this.battleHistory.remove(index); // Unresolvable. The next battle takes its place
+        }
+
+        return null;
     }
 
     /**
@@ -405,18 +527,41 @@ public class EndWorldWrapper {
      */
     @Nullable
     public DragonBattleRecord getPreviousDragonBattle() {
-        return battleHistory.peek();
+        return getPreviousDragonBattle(0);
     }
 
     /**
      * Get a {@link List} of previous dragon battles where index 0 is the most recent dragon
-     * battle and {@link Collection#size()} is the oldest.
+     * battle and {@link Collection#size()} is the oldest. The returned list is an immutable
+     * snapshot and does not reflect battles recorded afterwards.
      *
      * @return all previous dragon battles
      */
     @NotNull
     public List<@NotNull DragonBattleRecord> getPreviousDragonBattles() {
-        return Collections.unmodifiableList(battleHistory);
+        List<@NotNull DragonBattleRecord> records = new ArrayList<>(battleHistory.size());
+
+        DragonBattleRecord record;
+        for (int i = 0; (record = getPreviousDragonBattle(i)) != null; i++) {
+            records.add(record);
+        }
+
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Get the previous dragon battles in their archived form where index 0 is the most recent
+     * dragon battle. Unlike {@link #getPreviousDragonBattles()}, battles that have not yet been
+     * resolved are not resolved.
+     *
+     * @return all previous dragon battles
+     */
+    @NotNull
+    List<@NotNull ArchivedBattle> getPreviousDragonBattlesArchived() {
+        List<BattleHistoryEntry> entries = battleHistory.snapshot();
+        List<@NotNull ArchivedBattle> battles = new ArrayList<>(entries.size());
+        entries.forEach(entry -> battles.add(entry.archive()));
+        return battles;
     }
 
     /**
@@ -429,12 +574,24 @@ public class EndWorldWrapper {
     }
 
     /**
-     * Get the maximum amount of battles recordable by this world.
+     * Get the maximum amount of battles recordable by this world. This is the configured world
+     * history size as of the last time the configuration was loaded.
      *
      * @return the max battle history size
+     *
+     * @see #updateMaxBattleHistorySize()
      */
     public int getMaxBattleHistorySize() {
-        return plugin.getConfig().getInt(DEDConstants.CONFIG_WORLD_HISTORY_SIZE, 5);
+        return battleHistory.getCapacity();
+    }
+
+    /**
+     * Resize this world's battle history to the configured world history size. If the history
+     * holds more battles than the new size, the oldest are evicted and announced with a
+     * {@link BattleHistoryEvictEvent}. Called whenever the configuration is reloaded.
+     */
+    public void updateMaxBattleHistorySize() {
+        this.battleHistory.resize(getConfiguredBattleHistorySize());
     }
 
     /**
@@ -444,7 +601,12 @@ public class EndWorldWrapper {
      * @param nextLootTable the next loot table to use
      */
     public void setLootTableOverride(@Nullable DragonLootTable nextLootTable) {
+        if (lootTableOverride == nextLootTable) {
+            return;
+        }
+
         this.lootTableOverride = nextLootTable;
+        this.journal().lootTableOverrideSet(this, nextLootTable);
     }
 
     /**
@@ -478,7 +640,87 @@ public class EndWorldWrapper {
     @NotNull
     public static EndWorldWrapper of(@NotNull World world) {
         Preconditions.checkArgument(world != null, "Cannot get wrapper for non-existent (null) world");
-        return WRAPPERS.computeIfAbsent(world.getUID(), uuid -> new EndWorldWrapper(world));
+
+        // Avoid allocating a capturing function for every lookup. Wrappers almost always exist
+        EndWorldWrapper wrapper = WRAPPERS.get(world.getUID());
+        return (wrapper != null) ? wrapper : WRAPPERS.computeIfAbsent(world.getUID(), uuid -> new EndWorldWrapper(world));
+    }
+
+    /**
+     * Get the world wrapper for the world with the specified UUID if one exists.
+     *
+     * @param worldUUID the UUID of the world to get
+     *
+     * @return the world's respective wrapper. null if none
+     */
+    @Nullable
+    public static EndWorldWrapper get(@NotNull UUID worldUUID) {
+        Preconditions.checkArgument(worldUUID != null, "worldUUID must not be null");
+        return WRAPPERS.get(worldUUID);
+    }
+
+    /**
+     * Load the world wrapper for the specified world. If the world was previously unloaded,
+     * the tasks of its wrapper are resumed, including any respawn that was in progress when
+     * it was unloaded. Otherwise this is equivalent to {@link #of(World)}.
+     *
+     * @param world the world whose wrapper to load
+     *
+     * @return the world's respective wrapper
+     */
+    @NotNull
+    public static EndWorldWrapper load(@NotNull World world) {
+        EndWorldWrapper wrapper = of(world);
+        wrapper.resume(world);
+        return wrapper;
+    }
+
+    /**
+     * Unload the world wrapper for the specified world, if one exists. Its tasks are cancelled
+     * but its state (its respawn countdown, templates, loot table override and battle history)
+     * is retained. It therefore continues to be persisted and is resumed once the world is
+     * loaded again with {@link #load(World)}. If the world will not be loaded again (i.e. it
+     * has been deleted), its wrapper should instead be removed with {@link #remove(UUID)}.
+     *
+     * @param world the world whose wrapper to unload
+     *
+     * @return the unloaded wrapper. null if the world had no wrapper
+     */
+    @Nullable
+    public static EndWorldWrapper unload(@NotNull World world) {
+        Preconditions.checkArgument(world != null, "Cannot unload wrapper for non-existent (null) world");
+
+        EndWorldWrapper wrapper = WRAPPERS.get(world.getUID());
+        if (wrapper != null) {
+            wrapper.suspend();
+        }
+
+        return wrapper;
+    }
+
+    /**
+     * Remove the world wrapper for the world with the specified UUID, if one exists. Its tasks
+     * are cancelled and its state is discarded, both in memory and in the world state journal,
+     * so it is no longer persisted. Unlike {@link #unload(World)}, this is intended for worlds
+     * that have been deleted and will not be loaded again. Should the world be loaded again
+     * regardless, a new wrapper without any state is created for it. Battles archived in the
+     * {@link BattleHistoryStore} are unaffected.
+     *
+     * @param worldUUID the UUID of the world whose wrapper to remove
+     *
+     * @return the removed wrapper. null if the world had no wrapper
+     */
+    @Nullable
+    public static EndWorldWrapper remove(@NotNull UUID worldUUID) {
+        Preconditions.checkArgument(worldUUID != null, "worldUUID must not be null");
+
+        EndWorldWrapper wrapper = WRAPPERS.remove(worldUUID);
+        if (wrapper != null) {
+            wrapper.teardown();
+            wrapper.journal().worldRemoved(wrapper);
+        }
+
+        return wrapper;
     }
 
     /**
@@ -496,8 +738,151 @@ public class EndWorldWrapper {
      * battles, as well as the state of a world according to DragonEggDrop.
      */
     public static void clear() {
-        WRAPPERS.values().forEach(world -> world.dragonCheckRunnable.cancel());
+        WRAPPERS.values().forEach(EndWorldWrapper::teardown);
         WRAPPERS.clear();
     }
 
+    @NotNull
+    private WorldStateJournal journal() {
+        return plugin.getWorldStateJournal();
+    }
+
+    private int getConfiguredBattleHistorySize() {
+        return Math.max(plugin.getDEDConfig().getWorldHistorySize(), 0);
+    }
+
+    private void onBattleEvicted(@NotNull BattleHistoryEntry entry) {
+        // Archiving the battle encodes its damage history. Avoid doing so if nobody is listening
+        if (BattleHistoryEvictEvent.getHandlerList().getRegisteredListeners().length == 0) {
+            return;
+        }
+
+        Bukkit.getPluginManager().callEvent(new BattleHistoryEvictEvent(this, entry.archive()));
+    }
+
+    @NotNull
+    private List<@NotNull DragonBattleRecord> resolveArchivedBattles(@NotNull List<@NotNull ArchivedBattle> battles) {
+        List<@NotNull DragonBattleRecord> records = new ArrayList<>(battles.size());
+
+        for (ArchivedBattle battle : battles) {
+            try {
+                DragonBattleRecord record = battle.toRecord(this);
+                if (record != null) {
+                    records.add(record);
+                }
+            } catch (IllegalArgumentException e) {
+                this.plugin.getLogger().warning("Skipping archived battle with malformed damage history in world " + worldName);
+            }
+        }
+
+        return records;
+    }
+
+    @Nullable
+    private DragonBattleRecord getPreviousDragonBattleAsync(int index) {
+        if (index < 0) {
+            return null;
+        }
+
+        // Unresolvable battles are skipped as if they had already been removed on the main thread
+        for (BattleHistoryEntry entry : battleHistory.snapshot()) {
+            if (entry.unresolvable) {
+                continue;
+            }
+
+            if (index-- == 0) {
+                return entry.record;
+            }
+        }
+
+        return null;
+    }
+
+    private void teardown() {
+        this.cancelRespawn();
+        this.dragonCheckRunnable.cancel();
+    }
+
+    private void suspend() {
+        if (suspended) {
+            return;
+        }
+
+        this.suspended = true;
+        this.respawnSuspended = (respawnTask != null);
+
+        if (respawnTask != null) {
+            this.respawnTask.cancel();
+            this.respawnTask = null;
+        }
+
+        this.dragonCheckRunnable.cancel();
+    }
+
+    private void resume(@NotNull World world) {
+        if (!suspended) {
+            return;
+        }
+
+        this.suspended = false;
+        this.worldReference = new WeakReference<>(world);
+
+        this.dragonCheckRunnable = new DragonCheckRunnable(plugin, this);
+        this.dragonCheckRunnable.start();
+
+        // The respawn data holds its start time, therefore the countdown continues where it would have been
+        if (respawnSuspended && dragonRespawnData != null) {
+            this.respawnTask = new RespawnRunnable(plugin, this);
+            this.respawnTask.runTaskTimer(plugin, 0, 20);
+        }
+
+        this.respawnSuspended = false;
+    }
+
+    // A battle in this world's history, held as a record, its archived form, or both once either has been converted
+    private static final class BattleHistoryEntry {
+
+        // Written on the main thread once resolved, read by asynchronous callers
+        private volatile DragonBattleRecord record;
+        private volatile boolean unresolvable = false;
+        private ArchivedBattle archived;
+
+        private BattleHistoryEntry(@NotNull DragonBattleRecord record) {
+            this.record = record;
+        }
+
+        private BattleHistoryEntry(@NotNull ArchivedBattle archived) {
+            this.archived = archived;
+        }
+
+        @Nullable
+        private DragonBattleRecord resolve(@NotNull EndWorldWrapper world) {
+            if (record != null || unresolvable) {
+                return record;
+            }
+
+            try {
+                this.record = archived.toRecord(world);
+            } catch (IllegalArgumentException e) {
+                world.plugin.getLogger().warning("Discarding battle in world " + archived.getWorldName() + " with malformed damage history");
+            }
+
+            if (record == null) {
+                this.unresolvable = true;
+            }
+
+            return record;
+        }
+
+        @NotNull
+        private ArchivedBattle archive() {
+            if (archived == null) {
+                this.archived = ArchivedBattle.of(record); // Cached, records do not change once recorded
+            }
+
+            return archived;
+        }
+
+    }
+
 }
@@ -0,0 +1,223 @@
+package wtf.choco.dragoneggdrop.world;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A fixed capacity history of elements where index 0 is the most recently pushed element.
+ * Elements are held in a preallocated array, therefore pushing an element and reading an
+ * element at any index are constant time operations. When an element is pushed to a full
+ * history, the oldest element is evicted and passed to the history's eviction handler.
+ * <p>
+ * This class is not thread safe and is expected to be modified from the main thread. An
+ * immutable {@link #snapshot()} is published on every modification and may be read from
+ * any thread.
+ *
+ * @param <E> the type of element
+ *
+ * @author Parker Hawke - Choco
+ */
+final class HistoryRing<E> {
+
+    private Object[] elements;
+    private int head = 0, size = 0; // head is the index of the most recent element
+
+    private volatile List<@NotNull E> snapshot = ImmutableList.of(); // Republished on every modification
+
+    private final Consumer<@NotNull E> evictionHandler;
+
+    /**
+     * Construct a new ring.
+     *
+     * @param capacity the maximum amount of elements. Must be positive or 0
+     * @param evictionHandler the handler to which evicted elements are passed
+     */
+    HistoryRing(int capacity, @NotNull Consumer<@NotNull E> evictionHandler) {
+        Preconditions.checkArgument(capacity >= 0, "capacity must be positive or 0");
+        Preconditions.checkArgument(evictionHandler != null, "evictionHandler must not be null");
+
+        this.elements = new Object[capacity];
+        this.evictionHandler = evictionHandler;
+    }
+
+    int getCapacity() {
+        return elements.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean isFull() {
+        return size == elements.length;
+    }
+
+    /**
+     * Push an element to the top of this history. If this history is full, the oldest element
+     * is evicted. If this history has a capacity of 0, the pushed element is discarded and
+     * nothing is evicted.
+     *
+     * @param element the element to push
+     *
+     * @return the evicted element. null if none
+     */
+    @Nullable
+    E push(@NotNull E element) {
+        Preconditions.checkArgument(element != null, "element must not be null");
+
+        if (elements.length == 0) {
+            return null;
+        }
+
+        E evicted = null;
+        if (isFull()) {
+            evicted = removeOldest();
+        }
+
+        this.head = (head == 0) ? elements.length - 1 : head - 1;
+        this.elements[head] = element;
+        this.size++;
+        this.publish();
+
+        if (evicted != null) {
+            this.evictionHandler.accept(evicted);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Append an element to the bottom of this history (i.e. as its oldest element) if this
+     * history is not full. Nothing is evicted.
+     *
+     * @param element the element to append
+     *
+     * @return true if appended, false if this history is full
+     */
+    boolean offerLast(@NotNull E element) {
+        Preconditions.checkArgument(element != null, "element must not be null");
+
+        if (isFull()) {
+            return false;
+        }
+
+        this.elements[(head + size) % elements.length] = element;
+        this.size++;
+        this.publish();
+        return true;
+    }
+
+    /**
+     * Get the element at the given index where index 0 is the most recent element.
+     *
+     * @param index the index
+     *
+     * @return the element. null if the index is out of bounds
+     */
+    @Nullable
+    E get(int index) {
+        return (index >= 0 && index < size) ? elementAt(index) : null;
+    }
+
+    /**
+     * Remove the element at the given index. More recent elements are shifted down to take
+     * its place. The removed element is not considered evicted.
+     *
+     * @param index the index of the element to remove
+     */
+    void remove(int index) {
+        Preconditions.checkElementIndex(index, size);
+
+        int capacity = elements.length;
+        for (int i = index; i > 0; i--) {
+            this.elements[(head + i) % capacity] = elements[(head + i - 1) % capacity];
+        }
+
+        this.elements[head] = null;
+        this.head = (head + 1) % capacity;
+        this.size--;
+        this.publish();
+    }
+
+    /**
+     * Change the capacity of this history. If the new capacity is less than the size of this
+     * history, the oldest elements are evicted, oldest first.
+     *
+     * @param capacity the new capacity. Must be positive or 0
+     */
+    void resize(int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "capacity must be positive or 0");
+
+        if (capacity == elements.length) {
+            return;
+        }
+
+        List<@NotNull E> evicted = ImmutableList.of();
+        if (size > capacity) {
+            ImmutableList.Builder<@NotNull E> evictedBuilder = ImmutableList.builder();
+            while (size > capacity) {
+                evictedBuilder.add(removeOldest());
+            }
+
+            evicted = evictedBuilder.build();
+        }
+
+        Object[] resized = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            resized[i] = elementAt(i);
+        }
+
+        this.elements = resized;
+        this.head = 0;
+        this.publish();
+
+        evicted.forEach(evictionHandler);
+    }
+
+    /**
+     * Get an immutable snapshot of the elements in this history where index 0 is the most
+     * recent element. Subsequent changes to this history are not reflected by the snapshot.
+     * Unlike all other methods, this may be called from any thread.
+     *
+     * @return the snapshot
+     */
+    @NotNull
+    List<@NotNull E> snapshot() {
+        return snapshot;
+    }
+
+    private void publish() {
+        ImmutableList.Builder<@NotNull E> builder = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(elementAt(i));
+        }
+
+        this.snapshot = builder.build();
+    }
+
+    @NotNull
+    private E removeOldest() {
+        int index = (head + size - 1) % elements.length;
+        E oldest = elementAt(size - 1);
+
+        this.elements[index] = null;
+        this.size--;
+        return oldest; // Published by the caller
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) elements[(head + index) % elements.length];
+    }
+
+}
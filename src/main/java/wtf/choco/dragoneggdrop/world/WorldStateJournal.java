@@ -0,0 +1,713 @@
+package wtf.choco.dragoneggdrop.world;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
+import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
+import wtf.choco.dragoneggdrop.utils.DataFileUtils;
+import wtf.choco.dragoneggdrop.world.WorldStateSnapshot.WorldState;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
+
+/**
+ * A write-ahead journal of the state of all {@link EndWorldWrapper EndWorldWrappers}.
+ * Changes to a world's state (respawns started or stopped, templates and loot tables
+ * set, battles recorded and worlds removed) are appended to the journal as they happen
+ * such that the state survives a server crash, not only a clean shutdown.
+ * <p>
+ * Entries are written to disk by a dedicated I/O thread. Entries queued while the thread
+ * is writing are written together and synced to disk once per batch, therefore the main
+ * thread never waits on disk I/O. The journal is periodically compacted by replacing it
+ * with a single {@link WorldStateSnapshot} of the current state. Snapshots are captured on
+ * the main thread but serialized by the I/O thread.
+ * <p>
+ * Each line of the journal is a json object. Snapshots hold the state of all worlds under
+ * "data", whereas all other entries hold the name of the world they affect under "world"
+ * and the changed properties under the same keys as those of the snapshot.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class WorldStateJournal {
+
+    /** The amount of entries after which the journal is compacted */
+    public static final int COMPACT_THRESHOLD = 256;
+
+    private static final String TYPE_SNAPSHOT = "snapshot", TYPE_RESPAWN = "respawn", TYPE_RESPAWN_STOP = "respawnStop",
+            TYPE_ACTIVE_TEMPLATE = "activeTemplate", TYPE_RESPAWN_TEMPLATE = "respawnTemplate",
+            TYPE_LOOT_TABLE_OVERRIDE = "lootTableOverride", TYPE_BATTLE = "battle", TYPE_REMOVE = "remove";
+
+    private static final JournalEntry SHUTDOWN = new JournalEntry("", null);
+
+    private final BlockingQueue<@NotNull JournalEntry> queue = new LinkedBlockingQueue<>();
+    private Thread writerThread;
+    private FileChannel channel; // Only accessed by the writer thread
+
+    private int entriesSinceCompaction = 0;
+    private volatile boolean open = false;
+
+    private final File file;
+    private final Supplier<@NotNull WorldStateSnapshot> snapshotSupplier;
+    private final Logger logger;
+
+    /**
+     * Construct a new {@link WorldStateJournal}. The journal must be {@link #open() opened}
+     * before entries are written.
+     *
+     * @param file the journal file
+     * @param snapshotSupplier the supplier of snapshots with which to compact the journal
+     * @param logger the logger to which errors should be logged
+     */
+    public WorldStateJournal(@NotNull File file, @NotNull Supplier<@NotNull WorldStateSnapshot> snapshotSupplier, @NotNull Logger logger) {
+        Preconditions.checkArgument(file != null, "file must not be null");
+        Preconditions.checkArgument(snapshotSupplier != null, "snapshotSupplier must not be null");
+        Preconditions.checkArgument(logger != null, "logger must not be null");
+
+        this.file = file;
+        this.snapshotSupplier = snapshotSupplier;
+        this.logger = logger;
+    }
+
+    /**
+     * Get the journal file.
+     *
+     * @return the file
+     */
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Check whether or not this journal is open and accepting entries.
+     *
+     * @return true if open, false otherwise
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Replay the journal, folding every entry into the snapshot that precedes it. If the
+     * journal ends with a partially written entry (i.e. the server crashed while it was being
+     * written), that entry is discarded. This should be called before the journal is opened.
+     * <p>
+     * Entries are streamed directly into a {@link WorldStateSnapshot}, no intermediate json
+     * tree is created. The state of worlds that cannot be resolved is skipped without being
+     * read, as are battles exceeding the maximum history size.
+     *
+     * @param maxHistorySize the maximum amount of battles to retain per world
+     * @param worldResolver the function resolving a world from its name. Called at most once
+     * per world name. May return null if the world's state should not be restored
+     *
+     * @return the replayed state. null if there is no journal to replay
+     */
+    @Nullable
+    public WorldStateSnapshot replay(int maxHistorySize, @NotNull Function<@NotNull String, @Nullable World> worldResolver) {
+        Preconditions.checkArgument(worldResolver != null, "worldResolver must not be null");
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        Replay replay = new Replay(maxHistorySize, worldResolver);
+        int lineNumber = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                try (JsonReader lineReader = new JsonReader(new StringReader(line))) {
+                    replay.apply(lineReader);
+                } catch (IOException | IllegalStateException | IllegalArgumentException | JsonParseException e) {
+                    this.logger.warning("Discarding partially written world state journal entries from line " + lineNumber);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Could not read world state journal", e);
+        }
+
+        return replay.toSnapshot();
+    }
+
+    /**
+     * Open this journal and start its I/O thread. The journal is immediately compacted such
+     * that it contains only the current state.
+     */
+    public void open() {
+        Preconditions.checkState(!open && writerThread == null, "Journal has already been opened");
+
+        this.open = true;
+        this.writerThread = new Thread(this::runWriter, "DragonEggDrop World State Journal");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+
+        this.compact();
+    }
+
+    /**
+     * Compact the journal, replacing its contents with a snapshot of the current state. The
+     * snapshot is taken immediately but written asynchronously. This must be called on the
+     * main thread.
+     */
+    public void compact() {
+        if (!open) {
+            return;
+        }
+
+        this.entriesSinceCompaction = 0;
+        this.queue.offer(new JournalEntry(null, snapshotSupplier.get()));
+    }
+
+    /**
+     * Check whether or not any entries have been appended since the journal was last
+     * compacted.
+     *
+     * @return true if compaction would shrink the journal, false otherwise
+     */
+    public boolean requiresCompaction() {
+        return entriesSinceCompaction > 0;
+    }
+
+    /**
+     * Compact this journal and close it, waiting for all queued entries to be written. Once
+     * closed, no further entries are accepted.
+     */
+    public void close() {
+        if (!open) {
+            return;
+        }
+
+        this.compact();
+        this.open = false;
+        this.queue.offer(SHUTDOWN);
+
+        try {
+            this.writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            this.logger.warning("Timed out while waiting for the world state journal to be written");
+        }
+
+        this.writerThread = null;
+    }
+
+    /**
+     * Journal the start of a respawn (or a change of its timings) in the given world.
+     *
+     * @param world the world
+     * @param respawnData the respawn data
+     * @param template the template being respawned. null if unchanged
+     * @param lootTable the loot table override. null if unchanged
+     */
+    public void respawnStarted(@NotNull EndWorldWrapper world, @NotNull DragonRespawnData respawnData, @Nullable DragonTemplate template, @Nullable DragonLootTable lootTable) {
+        if (!open) {
+            return;
+        }
+
+        JsonObject entry = createEntry(TYPE_RESPAWN, world);
+        entry.addProperty("respawnStartTime", respawnData.getStartTime());
+        entry.addProperty("respawnDuration", respawnData.getDuration());
+
+        if (template != null) {
+            entry.addProperty("respawnTemplate", template.getId());
+        }
+
+        if (lootTable != null) {
+            entry.addProperty("lootTableOverride", lootTable.getId());
+        }
+
+        this.append(entry);
+    }
+
+    /**
+     * Journal that the respawn in the given world has stopped.
+     *
+     * @param world the world
+     */
+    public void respawnStopped(@NotNull EndWorldWrapper world) {
+        if (open) {
+            this.append(createEntry(TYPE_RESPAWN_STOP, world));
+        }
+    }
+
+    /**
+     * Journal a change of the active template in the given world.
+     *
+     * @param world the world
+     * @param template the new active template. null if none
+     */
+    public void activeTemplateSet(@NotNull EndWorldWrapper world, @Nullable DragonTemplate template) {
+        this.appendId(TYPE_ACTIVE_TEMPLATE, world, (template != null) ? template.getId() : null);
+    }
+
+    /**
+     * Journal a change of the respawning template in the given world.
+     *
+     * @param world the world
+     * @param template the new respawning template. null if none
+     */
+    public void respawningTemplateSet(@NotNull EndWorldWrapper world, @Nullable DragonTemplate template) {
+        this.appendId(TYPE_RESPAWN_TEMPLATE, world, (template != null) ? template.getId() : null);
+    }
+
+    /**
+     * Journal a change of the loot table override in the given world.
+     *
+     * @param world the world
+     * @param lootTable the new loot table override. null if none
+     */
+    public void lootTableOverrideSet(@NotNull EndWorldWrapper world, @Nullable DragonLootTable lootTable) {
+        this.appendId(TYPE_LOOT_TABLE_OVERRIDE, world, (lootTable != null) ? lootTable.getId() : null);
+    }
+
+    /**
+     * Journal a battle recorded in the given world.
+     *
+     * @param world the world
+     * @param record the recorded battle
+     */
+    public void battleRecorded(@NotNull EndWorldWrapper world, @NotNull DragonBattleRecord record) {
+        if (!open) {
+            return;
+        }
+
+        JsonObject entry = createEntry(TYPE_BATTLE, world);
+        entry.add("record", record.toJson());
+        this.append(entry);
+    }
+
+    /**
+     * Journal the removal of the given world. All of its state is discarded.
+     *
+     * @param world the world
+     */
+    public void worldRemoved(@NotNull EndWorldWrapper world) {
+        if (open) {
+            this.append(createEntry(TYPE_REMOVE, world));
+        }
+    }
+
+    private void appendId(@NotNull String type, @NotNull EndWorldWrapper world, @Nullable String id) {
+        if (!open) {
+            return;
+        }
+
+        JsonObject entry = createEntry(type, world);
+        if (id != null) {
+            entry.addProperty(type, id);
+        }
+
+        this.append(entry);
+    }
+
+    private void append(@NotNull JsonObject entry) {
+        if (++entriesSinceCompaction >= COMPACT_THRESHOLD) {
+            this.compact(); // The snapshot includes the state changed by this entry
+            return;
+        }
+
+        this.queue.offer(new JournalEntry(entry.toString(), null));
+    }
+
+    @NotNull
+    private JsonObject createEntry(@NotNull String type, @NotNull EndWorldWrapper world) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("type", type);
+        entry.addProperty("world", world.getWorldName());
+        return entry;
+    }
+
+    private void runWriter() {
+        List<@NotNull JournalEntry> batch = new ArrayList<>();
+        boolean running = true;
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            this.queue.drainTo(batch);
+
+            try {
+                for (JournalEntry entry : batch) {
+                    if (entry == SHUTDOWN) {
+                        running = false;
+                        break;
+                    }
+
+                    if (entry.snapshot != null) {
+                        this.rewrite(entry.snapshot);
+                    }
+                    else {
+                        this.write(entry.line);
+                    }
+                }
+
+                // Sync once per batch rather than once per entry
+                if (channel != null) {
+                    this.channel.force(false);
+                }
+            } catch (IOException e) {
+                this.logger.log(Level.WARNING, "Could not write to world state journal", e);
+            }
+
+            batch.clear();
+        }
+
+        this.closeChannel();
+    }
+
+    private void write(@NotNull String line) throws IOException {
+        if (channel == null) {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        this.writeLine(channel, line);
+    }
+
+    private void rewrite(@NotNull WorldStateSnapshot snapshot) throws IOException {
+        Path path = file.toPath();
+        Path tempPath = path.resolveSibling(file.getName() + ".tmp");
+
+        // Write the snapshot to a separate file and move it into place so that the journal is never partially compacted
+        try (FileOutputStream out = new FileOutputStream(tempPath.toFile())) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            JsonWriter jsonWriter = new JsonWriter(writer);
+
+            jsonWriter.beginObject();
+            jsonWriter.name("type").value(TYPE_SNAPSHOT);
+            jsonWriter.name("data");
+            snapshot.write(jsonWriter);
+            jsonWriter.endObject();
+            jsonWriter.flush();
+
+            writer.write('\n');
+            writer.flush();
+            out.getChannel().force(true);
+        }
+
+        this.closeChannel();
+        DataFileUtils.replaceAtomically(tempPath, path);
+    }
+
+    private void writeLine(@NotNull FileChannel channel, @NotNull String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + '\n').getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Could not close world state journal", e);
+        }
+
+        this.channel = null;
+    }
+
+    // Folds journal entries into typed world states. Each entry is read fully before it is applied such that a torn entry changes nothing
+    private final class Replay {
+
+        private final int maxHistorySize;
+        private final Function<@NotNull String, @Nullable World> worldResolver;
+        private final Map<@NotNull String, @Nullable World> worlds = new HashMap<>();
+
+        private Map<@NotNull String, @NotNull ReplayedWorld> state = new LinkedHashMap<>();
+
+        private Replay(int maxHistorySize, @NotNull Function<@NotNull String, @Nullable World> worldResolver) {
+            this.maxHistorySize = Math.max(maxHistorySize, 0);
+            this.worldResolver = worldResolver;
+        }
+
+        private void apply(@NotNull JsonReader reader) throws IOException {
+            String type = "";
+            World world = null;
+            Long respawnStartTime = null, respawnDuration = null;
+            String respawnTemplate = null, activeTemplate = null, lootTableOverride = null;
+            ArchivedBattle battle = null;
+            Map<@NotNull String, @NotNull ReplayedWorld> snapshot = null;
+
+            // Entries are written with their type and world before any of their properties
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type":
+                        type = reader.nextString();
+                        break;
+                    case "data":
+                        snapshot = readSnapshot(reader);
+                        break;
+                    case "world":
+                        world = resolveWorld(reader.nextString());
+                        break;
+                    case "respawnStartTime":
+                        respawnStartTime = reader.nextLong();
+                        break;
+                    case "respawnDuration":
+                        respawnDuration = reader.nextLong();
+                        break;
+                    case TYPE_RESPAWN_TEMPLATE:
+                        respawnTemplate = reader.nextString();
+                        break;
+                    case TYPE_ACTIVE_TEMPLATE:
+                        activeTemplate = reader.nextString();
+                        break;
+                    case TYPE_LOOT_TABLE_OVERRIDE:
+                        lootTableOverride = reader.nextString();
+                        break;
+                    case "record":
+                        battle = (world != null) ? readBattle(reader, world) : skip(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            // Snapshots replace all previous state
+            if (type.equals(TYPE_SNAPSHOT)) {
+                this.state = (snapshot != null) ? snapshot : new LinkedHashMap<>();
+                return;
+            }
+
+            if (world == null) {
+                return;
+            }
+
+            switch (type) {
+                case TYPE_RESPAWN:
+                    ReplayedWorld respawnWorld = getWorld(world);
+                    respawnWorld.respawnStartTime = (respawnStartTime != null) ? respawnStartTime : respawnWorld.respawnStartTime;
+                    respawnWorld.respawnDuration = (respawnDuration != null) ? respawnDuration : respawnWorld.respawnDuration;
+                    respawnWorld.respawnTemplate = (respawnTemplate != null) ? respawnTemplate : respawnWorld.respawnTemplate;
+                    respawnWorld.lootTableOverride = (lootTableOverride != null) ? lootTableOverride : respawnWorld.lootTableOverride;
+                    break;
+                case TYPE_RESPAWN_STOP:
+                    ReplayedWorld stoppedWorld = getWorld(world);
+                    stoppedWorld.respawnStartTime = -1;
+                    stoppedWorld.respawnDuration = -1;
+                    break;
+                case TYPE_ACTIVE_TEMPLATE: // An absent id clears the value
+                    this.getWorld(world).activeTemplate = activeTemplate;
+                    break;
+                case TYPE_RESPAWN_TEMPLATE:
+                    this.getWorld(world).respawnTemplate = respawnTemplate;
+                    break;
+                case TYPE_LOOT_TABLE_OVERRIDE:
+                    this.getWorld(world).lootTableOverride = lootTableOverride;
+                    break;
+                case TYPE_BATTLE:
+                    if (battle != null) {
+                        this.getWorld(world).pushBattle(battle, maxHistorySize);
+                    }
+                    break;
+                case TYPE_REMOVE:
+                    this.state.remove(world.getName());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @NotNull
+        private Map<@NotNull String, @NotNull ReplayedWorld> readSnapshot(@NotNull JsonReader reader) throws IOException {
+            Map<@NotNull String, @NotNull ReplayedWorld> snapshot = new LinkedHashMap<>();
+
+            // Same format as WorldStateSnapshot#write(JsonWriter)
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String worldName = reader.nextName();
+                World world = resolveWorld(worldName);
+
+                if (world == null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                ReplayedWorld replayedWorld = new ReplayedWorld(world);
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "respawnStartTime":
+                            replayedWorld.respawnStartTime = reader.nextLong();
+                            break;
+                        case "respawnDuration":
+                            replayedWorld.respawnDuration = reader.nextLong();
+                            break;
+                        case TYPE_RESPAWN_TEMPLATE:
+                            replayedWorld.respawnTemplate = reader.nextString();
+                            break;
+                        case TYPE_ACTIVE_TEMPLATE:
+                            replayedWorld.activeTemplate = reader.nextString();
+                            break;
+                        case TYPE_LOOT_TABLE_OVERRIDE:
+                            replayedWorld.lootTableOverride = reader.nextString();
+                            break;
+                        case "history": // Most recent first
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                ArchivedBattle battle = (replayedWorld.history.size() < maxHistorySize) ? readBattle(reader, world) : skip(reader);
+                                if (battle != null) {
+                                    replayedWorld.history.addLast(battle);
+                                }
+                            }
+                            reader.endArray();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                snapshot.put(world.getName(), replayedWorld);
+            }
+            reader.endObject();
+
+            return snapshot;
+        }
+
+        @Nullable
+        private ArchivedBattle readBattle(@NotNull JsonReader reader, @NotNull World world) throws IOException {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return skip(reader);
+            }
+
+            try {
+                return ArchivedBattle.readRecordJson(reader, world.getUID(), world.getName());
+            } catch (JsonParseException e) {
+                logger.warning("Discarding malformed battle history entry in world " + world.getName() + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Nullable
+        private ArchivedBattle skip(@NotNull JsonReader reader) throws IOException {
+            reader.skipValue();
+            return null;
+        }
+
+        @Nullable
+        private World resolveWorld(@NotNull String worldName) {
+            if (worlds.containsKey(worldName)) {
+                return worlds.get(worldName);
+            }
+
+            World world = worldResolver.apply(worldName);
+            this.worlds.put(worldName, world);
+            return world;
+        }
+
+        @NotNull
+        private ReplayedWorld getWorld(@NotNull World world) {
+            return state.computeIfAbsent(world.getName(), name -> new ReplayedWorld(world));
+        }
+
+        @NotNull
+        private WorldStateSnapshot toSnapshot() {
+            ImmutableList.Builder<@NotNull WorldState> worldStates = ImmutableList.builder();
+            this.state.values().forEach(world -> worldStates.add(world.toState()));
+            return new WorldStateSnapshot(worldStates.build());
+        }
+
+    }
+
+    private static final class ReplayedWorld {
+
+        private final World world;
+        private String respawnTemplate, activeTemplate, lootTableOverride;
+        private long respawnStartTime = -1, respawnDuration = -1;
+        private final Deque<@NotNull ArchivedBattle> history = new ArrayDeque<>(); // Most recent first
+
+        private ReplayedWorld(@NotNull World world) {
+            this.world = world;
+        }
+
+        private void pushBattle(@NotNull ArchivedBattle battle, int maxHistorySize) {
+            if (maxHistorySize <= 0) {
+                return;
+            }
+
+            this.history.addFirst(battle);
+            while (history.size() > maxHistorySize) {
+                this.history.removeLast();
+            }
+        }
+
+        @NotNull
+        private WorldState toState() {
+            return new WorldState(world.getUID(), world.getName(), respawnTemplate, activeTemplate, lootTableOverride, respawnStartTime, respawnDuration, ImmutableList.copyOf(history));
+        }
+
+    }
+
+    private static final class JournalEntry {
+
+        private final String line;
+        private final WorldStateSnapshot snapshot;
+
+        private JournalEntry(@Nullable String line, @Nullable WorldStateSnapshot snapshot) {
+            this.line = line;
+            this.snapshot = snapshot;
+        }
+
+    }
+
+}
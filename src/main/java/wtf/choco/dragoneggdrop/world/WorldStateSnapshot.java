@@ -0,0 +1,302 @@
+package wtf.choco.dragoneggdrop.world;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
+import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
+
+/**
+ * An immutable snapshot of the state of {@link EndWorldWrapper EndWorldWrappers}. A
+ * snapshot is captured on the main thread and may be written from any thread, therefore
+ * serialization does not hold up the main thread.
+ * <p>
+ * Snapshots are written in the format replayed by {@link WorldStateJournal#replay(int, java.util.function.Function)},
+ * which folds its entries into a snapshot of its own. Snapshots are restored with
+ * {@link wtf.choco.dragoneggdrop.utils.DataFileUtils#readTempData(wtf.choco.dragoneggdrop.DragonEggDrop, WorldStateSnapshot)}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class WorldStateSnapshot {
+
+    private final List<@NotNull WorldState> worlds;
+
+    WorldStateSnapshot(@NotNull List<@NotNull WorldState> worlds) {
+        this.worlds = worlds;
+    }
+
+    /**
+     * Get the state of each world captured in this snapshot.
+     *
+     * @return the world states
+     */
+    @NotNull
+    public List<@NotNull WorldState> getWorlds() {
+        return worlds;
+    }
+
+    /**
+     * Get the amount of worlds captured in this snapshot.
+     *
+     * @return the amount of worlds
+     */
+    public int getWorldCount() {
+        return worlds.size();
+    }
+
+    /**
+     * Write this snapshot as a json object to the given {@link JsonWriter}. The object is
+     * streamed, no intermediate json tree is created.
+     *
+     * @param writer the writer to which the snapshot should be written
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(@NotNull JsonWriter writer) throws IOException {
+        Preconditions.checkArgument(writer != null, "writer must not be null");
+
+        writer.beginObject();
+
+        for (WorldState world : worlds) {
+            writer.name(world.name).beginObject();
+
+            if (world.respawnTemplate != null) {
+                writer.name("respawnTemplate").value(world.respawnTemplate);
+            }
+
+            if (world.activeTemplate != null) {
+                writer.name("activeTemplate").value(world.activeTemplate);
+            }
+
+            if (world.lootTableOverride != null) {
+                writer.name("lootTableOverride").value(world.lootTableOverride);
+            }
+
+            if (world.isRespawnInProgress()) {
+                writer.name("respawnStartTime").value(world.respawnStartTime);
+                writer.name("respawnDuration").value(world.respawnDuration);
+            }
+
+            if (!world.history.isEmpty()) {
+                writer.name("history").beginArray();
+
+                // Same format as DragonBattleRecord#toJson()
+                for (ArchivedBattle battle : world.history) {
+                    writer.beginObject();
+                    writer.name("template").value(battle.getTemplateId());
+
+                    if (battle.getLootTableId() != null) {
+                        writer.name("lootTable").value(battle.getLootTableId());
+                    }
+
+                    writer.name("damageHistoryData").value(Base64.getEncoder().encodeToString(battle.getDamageHistoryData()));
+                    writer.name("deathTimestamp").value(battle.getDeathTimestamp());
+                    writer.endObject();
+                }
+
+                writer.endArray();
+            }
+
+            writer.endObject();
+        }
+
+        writer.endObject();
+    }
+
+    /**
+     * Capture a snapshot of the given world wrappers. This must be called on the main thread.
+     *
+     * @param worlds the worlds to capture
+     *
+     * @return the snapshot
+     */
+    @NotNull
+    public static WorldStateSnapshot capture(@NotNull Collection<@NotNull EndWorldWrapper> worlds) {
+        Preconditions.checkArgument(worlds != null, "worlds must not be null");
+
+        ImmutableList.Builder<@NotNull WorldState> worldStates = ImmutableList.builder();
+        worlds.forEach(world -> worldStates.add(new WorldState(world)));
+        return new WorldStateSnapshot(worldStates.build());
+    }
+
+    /**
+     * Capture a snapshot of all world wrappers. This must be called on the main thread.
+     *
+     * @return the snapshot
+     *
+     * @see EndWorldWrapper#getAll()
+     */
+    @NotNull
+    public static WorldStateSnapshot capture() {
+        return capture(EndWorldWrapper.getAll());
+    }
+
+    /**
+     * The state of a single world held by a {@link WorldStateSnapshot}. Templates and loot
+     * tables are referenced by their id and battles are held as {@link ArchivedBattle
+     * ArchivedBattles}, therefore the state may be safely passed between threads.
+     *
+     * @author Parker Hawke - Choco
+     */
+    public static final class WorldState {
+
+        private final UUID worldUUID;
+        private final String name;
+        private final String respawnTemplate, activeTemplate, lootTableOverride;
+        private final long respawnStartTime, respawnDuration;
+        private final List<@NotNull ArchivedBattle> history;
+
+        /**
+         * Construct a new {@link WorldState}. If either of the respawn start time or duration
+         * is negative, no respawn is in progress.
+         *
+         * @param worldUUID the UUID of the world
+         * @param name the name of the world
+         * @param respawnTemplate the id of the respawning template. null if none
+         * @param activeTemplate the id of the active template. null if none
+         * @param lootTableOverride the id of the loot table override. null if none
+         * @param respawnStartTime the time at which the respawn started
+         * @param respawnDuration the duration of the respawn in milliseconds
+         * @param history the battle history, most recent first
+         */
+        public WorldState(@NotNull UUID worldUUID, @NotNull String name, @Nullable String respawnTemplate, @Nullable String activeTemplate, @Nullable String lootTableOverride, long respawnStartTime, long respawnDuration, @NotNull List<@NotNull ArchivedBattle> history) {
+            Preconditions.checkArgument(worldUUID != null, "worldUUID must not be null");
+            Preconditions.checkArgument(name != null, "name must not be null");
+            Preconditions.checkArgument(history != null, "history must not be null");
+
+            boolean respawning = respawnStartTime >= 0 && respawnDuration >= 0;
+
+            this.worldUUID = worldUUID;
+            this.name = name;
+            this.respawnTemplate = respawnTemplate;
+            this.activeTemplate = activeTemplate;
+            this.lootTableOverride = lootTableOverride;
+            this.respawnStartTime = respawning ? respawnStartTime : -1;
+            this.respawnDuration = respawning ? respawnDuration : -1;
+            this.history = ImmutableList.copyOf(history);
+        }
+
+        private WorldState(@NotNull EndWorldWrapper world) {
+            this.worldUUID = world.getWorldUUID();
+            this.name = world.getWorldName(); // The world may be unloaded
+            this.respawnTemplate = getId(world.getRespawningTemplate());
+            this.activeTemplate = getId(world.getActiveTemplate());
+
+            DragonLootTable lootTableOverride = world.getLootTableOverride();
+            this.lootTableOverride = (lootTableOverride != null) ? lootTableOverride.getId() : null;
+
+            DragonRespawnData respawnData = world.getDragonRespawnData();
+            boolean respawning = world.isRespawnInProgress() && respawnData != null;
+            this.respawnStartTime = respawning ? respawnData.getStartTime() : -1;
+            this.respawnDuration = respawning ? respawnData.getDuration() : -1;
+
+            // Battles restored but not yet accessed are captured without being resolved
+            this.history = ImmutableList.copyOf(world.getPreviousDragonBattlesArchived());
+        }
+
+        /**
+         * Get the UUID of the world.
+         *
+         * @return the world UUID
+         */
+        @NotNull
+        public UUID getWorldUUID() {
+            return worldUUID;
+        }
+
+        /**
+         * Get the name of the world.
+         *
+         * @return the world name
+         */
+        @NotNull
+        public String getWorldName() {
+            return name;
+        }
+
+        /**
+         * Get the id of the template set to respawn in the world.
+         *
+         * @return the respawning template id. null if none
+         */
+        @Nullable
+        public String getRespawnTemplate() {
+            return respawnTemplate;
+        }
+
+        /**
+         * Get the id of the template active in the world.
+         *
+         * @return the active template id. null if none
+         */
+        @Nullable
+        public String getActiveTemplate() {
+            return activeTemplate;
+        }
+
+        /**
+         * Get the id of the loot table overriding that of the world's templates.
+         *
+         * @return the loot table override id. null if none
+         */
+        @Nullable
+        public String getLootTableOverride() {
+            return lootTableOverride;
+        }
+
+        /**
+         * Check whether or not a respawn was in progress in the world.
+         *
+         * @return true if respawning, false otherwise
+         */
+        public boolean isRespawnInProgress() {
+            return respawnDuration >= 0;
+        }
+
+        /**
+         * Get the time at which the respawn in the world started (relative to epoch time).
+         *
+         * @return the respawn start time. -1 if no respawn is in progress
+         */
+        public long getRespawnStartTime() {
+            return respawnStartTime;
+        }
+
+        /**
+         * Get the duration of the respawn in the world in milliseconds.
+         *
+         * @return the respawn duration. -1 if no respawn is in progress
+         */
+        public long getRespawnDuration() {
+            return respawnDuration;
+        }
+
+        /**
+         * Get the battle history of the world, most recent first.
+         *
+         * @return the battle history
+         */
+        @NotNull
+        public List<@NotNull ArchivedBattle> getHistory() {
+            return history;
+        }
+
+        @Nullable
+        private static String getId(@Nullable DragonTemplate template) {
+            return (template != null) ? template.getId() : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,318 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.dragon.DamageHistory;
+import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
+import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
+import wtf.choco.dragoneggdrop.utils.JsonUtils;
+import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
+import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+
+/**
+ * An immutable, detached form of a {@link DragonBattleRecord} as held by a
+ * {@link BattleHistoryStore}. Unlike a record, an archived battle references its world,
+ * template and loot table by identifier only and may therefore be safely passed between
+ * threads.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ArchivedBattle {
+
+    private final UUID worldUUID;
+    private final String worldName;
+    private final String templateId, lootTableId;
+    private final long deathTimestamp;
+    private final byte[] damageHistoryData;
+
+    /**
+     * Construct a new {@link ArchivedBattle}.
+     *
+     * @param worldUUID the UUID of the world in which the battle occurred
+     * @param worldName the name of the world in which the battle occurred
+     * @param templateId the id of the dragon template in this battle
+     * @param lootTableId the id of the loot table used in this battle (may be null)
+     * @param deathTimestamp the timestamp at which the dragon was slain
+     * @param damageHistoryData the damage history as written by {@link DamageHistory#toBytes()}
+     */
+    public ArchivedBattle(@NotNull UUID worldUUID, @NotNull String worldName, @NotNull String templateId, @Nullable String lootTableId, long deathTimestamp, @NotNull byte[] damageHistoryData) {
+        Preconditions.checkArgument(worldUUID != null, "worldUUID must not be null");
+        Preconditions.checkArgument(worldName != null, "worldName must not be null");
+        Preconditions.checkArgument(templateId != null, "templateId must not be null");
+        Preconditions.checkArgument(damageHistoryData != null, "damageHistoryData must not be null");
+
+        this.worldUUID = worldUUID;
+        this.worldName = worldName;
+        this.templateId = templateId;
+        this.lootTableId = lootTableId;
+        this.deathTimestamp = deathTimestamp;
+        this.damageHistoryData = damageHistoryData;
+    }
+
+    /**
+     * Get the UUID of the world in which this battle occurred.
+     *
+     * @return the world UUID
+     */
+    @NotNull
+    public UUID getWorldUUID() {
+        return worldUUID;
+    }
+
+    /**
+     * Get the name of the world in which this battle occurred at the time it was archived.
+     *
+     * @return the world name
+     */
+    @NotNull
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Get the id of the dragon template in this battle.
+     *
+     * @return the template id
+     */
+    @NotNull
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    /**
+     * Get the id of the loot table used in this battle.
+     *
+     * @return the loot table id. null if none
+     */
+    @Nullable
+    public String getLootTableId() {
+        return lootTableId;
+    }
+
+    /**
+     * Get the timestamp at which the dragon was slain (relative to epoch time).
+     *
+     * @return the death timestamp
+     */
+    public long getDeathTimestamp() {
+        return deathTimestamp;
+    }
+
+    /**
+     * Get the damage history of this battle as written by {@link DamageHistory#toBytes()}.
+     * The returned array is shared and must not be modified.
+     *
+     * @return the damage history data
+     */
+    @NotNull
+    public byte[] getDamageHistoryData() {
+        return damageHistoryData;
+    }
+
+    /**
+     * Resolve this archived battle into a {@link DragonBattleRecord}. This must be called on
+     * the main thread.
+     *
+     * @return the record. null if its world has not been loaded or its template no longer exists
+     *
+     * @throws IllegalArgumentException if the damage history data is malformed
+     */
+    @Nullable
+    public DragonBattleRecord toRecord() {
+        EndWorldWrapper world = EndWorldWrapper.get(worldUUID);
+        return (world != null) ? toRecord(world) : null;
+    }
+
+    /**
+     * Resolve this archived battle into a {@link DragonBattleRecord} associated with the given
+     * world. This must be called on the main thread.
+     *
+     * @param world the world to which the record should be associated
+     *
+     * @return the record. null if its template no longer exists
+     *
+     * @throws IllegalArgumentException if the damage history data is malformed
+     */
+    @Nullable
+    public DragonBattleRecord toRecord(@NotNull EndWorldWrapper world) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+
+        DragonEggDrop plugin = DragonEggDrop.getInstance();
+        DragonTemplate template = plugin.getDragonTemplateRegistry().get(templateId);
+        if (template == null) {
+            return null;
+        }
+
+        DragonLootTable lootTable = plugin.getLootTableRegistry().get(lootTableId); // Can be null
+        return new DragonBattleRecord(world, template, DamageHistory.fromBytes(damageHistoryData), deathTimestamp, lootTable);
+    }
+
+    /**
+     * Serialize this archived battle as a {@link JsonObject}.
+     *
+     * @return the json object
+     */
+    @NotNull
+    public JsonObject toJson() {
+        JsonObject object = new JsonObject();
+
+        object.addProperty("world", worldUUID.toString());
+        object.addProperty("worldName", worldName);
+        object.addProperty("template", templateId);
+
+        if (lootTableId != null) {
+            object.addProperty("lootTable", lootTableId);
+        }
+
+        object.addProperty("deathTimestamp", deathTimestamp);
+        object.addProperty("damageHistoryData", Base64.getEncoder().encodeToString(damageHistoryData));
+
+        return object;
+    }
+
+    /**
+     * Deserialize an {@link ArchivedBattle} from the given {@link JsonObject}.
+     *
+     * @param object the json object
+     *
+     * @return the deserialized archived battle
+     */
+    @NotNull
+    public static ArchivedBattle fromJson(@NotNull JsonObject object) {
+        Preconditions.checkArgument(object != null, "object must not be null");
+
+        UUID worldUUID = UUID.fromString(JsonUtils.getRequiredField(object, "world", JsonElement::getAsString));
+        String worldName = JsonUtils.getOptionalField(object, "worldName", JsonElement::getAsString, "");
+        String templateId = JsonUtils.getRequiredField(object, "template", JsonElement::getAsString);
+        String lootTableId = object.has("lootTable") ? object.get("lootTable").getAsString() : null;
+        long deathTimestamp = JsonUtils.getOptionalField(object, "deathTimestamp", JsonElement::getAsLong, 0L);
+        byte[] damageHistoryData = Base64.getDecoder().decode(JsonUtils.getRequiredField(object, "damageHistoryData", JsonElement::getAsString));
+
+        return new ArchivedBattle(worldUUID, worldName, templateId, lootTableId, deathTimestamp, damageHistoryData);
+    }
+
+    /**
+     * Deserialize an {@link ArchivedBattle} from a {@link JsonObject} written by
+     * {@link DragonBattleRecord#toJson()}. Unlike {@link DragonBattleRecord#fromJson(EndWorldWrapper, JsonObject)},
+     * the damage history is not decoded and the template is not resolved. Damage histories
+     * in the legacy json format are converted.
+     *
+     * @param world the world in which the battle occurred
+     * @param object the json object
+     *
+     * @return the deserialized archived battle
+     */
+    @NotNull
+    public static ArchivedBattle fromRecordJson(@NotNull EndWorldWrapper world, @NotNull JsonObject object) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+        Preconditions.checkArgument(object != null, "object must not be null");
+
+        String templateId = JsonUtils.getRequiredField(object, "template", JsonElement::getAsString);
+        String lootTableId = object.has("lootTable") ? object.get("lootTable").getAsString() : null;
+        long deathTimestamp = JsonUtils.getOptionalField(object, "deathTimestamp", JsonElement::getAsLong, 0L);
+
+        byte[] damageHistoryData;
+        if (object.has("damageHistoryData")) {
+            damageHistoryData = Base64.getDecoder().decode(object.get("damageHistoryData").getAsString());
+        }
+        else {
+            damageHistoryData = JsonUtils.getOptionalField(object, "damageHistory", element -> DamageHistory.fromJson(element.getAsJsonObject()), DamageHistory.dummy()).toBytes();
+        }
+
+        return new ArchivedBattle(world.getWorldUUID(), world.getWorldName(), templateId, lootTableId, deathTimestamp, damageHistoryData);
+    }
+
+    /**
+     * Read an {@link ArchivedBattle} from the given {@link JsonReader} in the format written by
+     * {@link DragonBattleRecord#toJson()}. The object is streamed, no intermediate json tree
+     * is created. Like {@link #fromRecordJson(EndWorldWrapper, JsonObject)}, the damage history
+     * is not decoded and the template is not resolved. Damage histories in the legacy json
+     * format are converted.
+     * <p>
+     * The entire object is consumed, even if the battle is rejected for missing its template.
+     *
+     * @param reader the reader, positioned at the beginning of the object
+     * @param worldUUID the UUID of the world in which the battle occurred
+     * @param worldName the name of the world in which the battle occurred
+     *
+     * @return the read archived battle
+     *
+     * @throws IOException if the object could not be read
+     * @throws JsonParseException if the object has no template
+     */
+    @NotNull
+    public static ArchivedBattle readRecordJson(@NotNull JsonReader reader, @NotNull UUID worldUUID, @NotNull String worldName) throws IOException {
+        Preconditions.checkArgument(reader != null, "reader must not be null");
+
+        String templateId = null, lootTableId = null;
+        byte[] damageHistoryData = null;
+        long deathTimestamp = 0L;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "template":
+                    templateId = reader.nextString();
+                    break;
+                case "lootTable":
+                    lootTableId = reader.nextString();
+                    break;
+                case "damageHistoryData":
+                    damageHistoryData = Base64.getDecoder().decode(reader.nextString());
+                    break;
+                case "damageHistory": // Legacy json damage history
+                    damageHistoryData = DamageHistory.fromJson(DragonEggDrop.GSON.fromJson(reader, JsonObject.class)).toBytes();
+                    break;
+                case "deathTimestamp":
+                    deathTimestamp = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (templateId == null) {
+            throw new JsonParseException("Missing element \"template\". This element is required.");
+        }
+
+        if (damageHistoryData == null) {
+            damageHistoryData = DamageHistory.dummy().toBytes();
+        }
+
+        return new ArchivedBattle(worldUUID, worldName, templateId, lootTableId, deathTimestamp, damageHistoryData);
+    }
+
+    /**
+     * Create an {@link ArchivedBattle} from the given {@link DragonBattleRecord}. This must be
+     * called on the main thread.
+     *
+     * @param record the record to archive
+     *
+     * @return the archived battle
+     */
+    @NotNull
+    public static ArchivedBattle of(@NotNull DragonBattleRecord record) {
+        Preconditions.checkArgument(record != null, "record must not be null");
+
+        EndWorldWrapper world = record.getWorld();
+        DragonLootTable lootTable = record.getLootTable();
+
+        return new ArchivedBattle(world.getWorldUUID(), world.getWorldName(), record.getTemplate().getId(),
+                (lootTable != null) ? lootTable.getId() : null, record.getDeathTimestamp(), record.getDamageHistory().toBytes());
+    }
+
+}
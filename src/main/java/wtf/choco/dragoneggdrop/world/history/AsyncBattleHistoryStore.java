@@ -0,0 +1,179 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
+
+/**
+ * A {@link BattleHistoryStore} whose reads and writes are performed on a dedicated thread.
+ * Records are detached into {@link ArchivedBattle ArchivedBattles} on the main thread and
+ * queued. All records queued by the time the store's thread is free are written together
+ * in a single batch. Queries are evaluated, and their futures completed, on the same thread
+ * and therefore observe every record archived before the query was made.
+ *
+ * @author Parker Hawke - Choco
+ */
+public abstract class AsyncBattleHistoryStore implements BattleHistoryStore {
+
+    private final Queue<@NotNull ArchivedBattle> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private ExecutorService executor;
+    private volatile boolean open = false;
+
+    /** The logger to which errors should be logged */
+    protected final Logger logger;
+
+    /**
+     * Construct a new {@link AsyncBattleHistoryStore}.
+     *
+     * @param logger the logger to which errors should be logged
+     */
+    protected AsyncBattleHistoryStore(@NotNull Logger logger) {
+        Preconditions.checkArgument(logger != null, "logger must not be null");
+        this.logger = logger;
+    }
+
+    @Override
+    public final void open() throws IOException {
+        Preconditions.checkState(!open, "Store has already been opened");
+
+        this.openStore();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DragonEggDrop Battle History");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.open = true;
+    }
+
+    @Override
+    public final void record(@NotNull DragonBattleRecord record) {
+        Preconditions.checkArgument(record != null, "record must not be null");
+
+        if (!open) {
+            return;
+        }
+
+        this.pending.add(ArchivedBattle.of(record));
+
+        // Records queued while a flush is pending are written in the same batch
+        if (flushScheduled.compareAndSet(false, true)) {
+            this.executor.execute(this::flush);
+        }
+    }
+
+    @NotNull
+    @Override
+    public final CompletableFuture<@NotNull List<@NotNull ArchivedBattle>> query(@NotNull BattleHistoryQuery query) {
+        Preconditions.checkArgument(query != null, "query must not be null");
+
+        if (!open) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        // Completed on the store's thread. Battles are resolved into records by the caller
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(query);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public final void close() {
+        if (!open) {
+            return;
+        }
+
+        this.open = false;
+        this.executor.execute(this::flush);
+        this.executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.logger.warning("Timed out while waiting for battle history to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.executor = null;
+        this.closeStore();
+    }
+
+    private void flush() {
+        this.flushScheduled.set(false);
+
+        List<@NotNull ArchivedBattle> batch = new ArrayList<>();
+        ArchivedBattle battle;
+        while ((battle = pending.poll()) != null) {
+            batch.add(battle);
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.write(batch);
+        } catch (IOException e) {
+            this.logger.log(Level.WARNING, "Could not write " + batch.size() + " battle(s) to the battle history", e);
+        }
+    }
+
+    /**
+     * Open the underlying storage. Called on the thread opening the store.
+     *
+     * @throws IOException if the storage could not be opened
+     */
+    protected abstract void openStore() throws IOException;
+
+    /**
+     * Write a batch of archived battles. Called on the store's thread.
+     *
+     * @param battles the battles to write, oldest first
+     *
+     * @throws IOException if the battles could not be written
+     */
+    protected abstract void write(@NotNull List<@NotNull ArchivedBattle> battles) throws IOException;
+
+    /**
+     * Read the archived battles matching the given query, most recent first. Called on the
+     * store's thread.
+     *
+     * @param query the query
+     *
+     * @return the matching battles
+     *
+     * @throws IOException if the battles could not be read
+     */
+    @NotNull
+    protected abstract List<@NotNull ArchivedBattle> read(@NotNull BattleHistoryQuery query) throws IOException;
+
+    /**
+     * Close the underlying storage. Called on the thread closing the store once all pending
+     * battles have been written.
+     */
+    protected abstract void closeStore();
+
+}
@@ -0,0 +1,169 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import com.google.common.base.Preconditions;
+
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable query of archived battle records in a {@link BattleHistoryStore}. Queries
+ * are created with {@link #all()} and narrowed with the various filter methods, each of
+ * which returns a new query.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class BattleHistoryQuery {
+
+    private static final BattleHistoryQuery ALL = new BattleHistoryQuery(null, null, Long.MIN_VALUE, Long.MAX_VALUE, -1);
+
+    private final UUID worldUUID;
+    private final String templateId;
+    private final long since, until;
+    private final int limit;
+
+    private BattleHistoryQuery(@Nullable UUID worldUUID, @Nullable String templateId, long since, long until, int limit) {
+        this.worldUUID = worldUUID;
+        this.templateId = templateId;
+        this.since = since;
+        this.until = until;
+        this.limit = limit;
+    }
+
+    /**
+     * Get a copy of this query restricted to battles fought in the world with the given UUID.
+     *
+     * @param worldUUID the world UUID. null to match all worlds
+     *
+     * @return the new query
+     */
+    @NotNull
+    public BattleHistoryQuery inWorld(@Nullable UUID worldUUID) {
+        return new BattleHistoryQuery(worldUUID, templateId, since, until, limit);
+    }
+
+    /**
+     * Get a copy of this query restricted to battles against dragons of the template with the
+     * given id.
+     *
+     * @param templateId the template id. null to match all templates
+     *
+     * @return the new query
+     */
+    @NotNull
+    public BattleHistoryQuery withTemplate(@Nullable String templateId) {
+        return new BattleHistoryQuery(worldUUID, templateId, since, until, limit);
+    }
+
+    /**
+     * Get a copy of this query restricted to battles in which the dragon was slain at or after
+     * the given time.
+     *
+     * @param since the time in milliseconds since epoch (inclusive)
+     *
+     * @return the new query
+     */
+    @NotNull
+    public BattleHistoryQuery since(long since) {
+        return new BattleHistoryQuery(worldUUID, templateId, since, until, limit);
+    }
+
+    /**
+     * Get a copy of this query restricted to battles in which the dragon was slain before the
+     * given time.
+     *
+     * @param until the time in milliseconds since epoch (exclusive)
+     *
+     * @return the new query
+     */
+    @NotNull
+    public BattleHistoryQuery until(long until) {
+        return new BattleHistoryQuery(worldUUID, templateId, since, until, limit);
+    }
+
+    /**
+     * Get a copy of this query that matches at most the given amount of battles.
+     *
+     * @param limit the maximum amount of battles. Must be positive
+     *
+     * @return the new query
+     */
+    @NotNull
+    public BattleHistoryQuery limit(int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be positive");
+        return new BattleHistoryQuery(worldUUID, templateId, since, until, limit);
+    }
+
+    /**
+     * Get the UUID of the world to which this query is restricted.
+     *
+     * @return the world UUID. null if all worlds are matched
+     */
+    @Nullable
+    public UUID getWorldUUID() {
+        return worldUUID;
+    }
+
+    /**
+     * Get the id of the template to which this query is restricted.
+     *
+     * @return the template id. null if all templates are matched
+     */
+    @Nullable
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    /**
+     * Get the time (inclusive) at or after which matched dragons were slain.
+     *
+     * @return the time in milliseconds since epoch
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Get the time (exclusive) before which matched dragons were slain.
+     *
+     * @return the time in milliseconds since epoch
+     */
+    public long getUntil() {
+        return until;
+    }
+
+    /**
+     * Get the maximum amount of battles matched by this query.
+     *
+     * @return the limit. -1 if unlimited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Check whether or not the given archived battle is matched by this query. The limit is
+     * not considered.
+     *
+     * @param battle the battle to check
+     *
+     * @return true if matched, false otherwise
+     */
+    public boolean matches(@NotNull ArchivedBattle battle) {
+        return (worldUUID == null || worldUUID.equals(battle.getWorldUUID()))
+                && (templateId == null || templateId.equals(battle.getTemplateId()))
+                && battle.getDeathTimestamp() >= since && battle.getDeathTimestamp() < until;
+    }
+
+    /**
+     * Get a query that matches all archived battles.
+     *
+     * @return the query
+     */
+    @NotNull
+    public static BattleHistoryQuery all() {
+        return ALL;
+    }
+
+}
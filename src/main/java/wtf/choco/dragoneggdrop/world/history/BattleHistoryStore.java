@@ -0,0 +1,61 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
+import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+
+/**
+ * Represents a persistent archive of every {@link DragonBattleRecord}. Whereas an
+ * {@link EndWorldWrapper} only holds its most recent battles in memory, a store holds
+ * all battles ever recorded and may be queried for leaderboards and the like.
+ * <p>
+ * Implementations should not block the calling thread. Records are expected to be written,
+ * and queries evaluated, asynchronously.
+ *
+ * @author Parker Hawke - Choco
+ */
+public interface BattleHistoryStore {
+
+    /**
+     * Open this store. Records are not archived until the store has been opened.
+     *
+     * @throws IOException if the store could not be opened
+     */
+    public void open() throws IOException;
+
+    /**
+     * Archive the given battle record. This method returns immediately, the record is
+     * written at a later time. This must be called on the main thread.
+     *
+     * @param record the record to archive
+     */
+    public void record(@NotNull DragonBattleRecord record);
+
+    /**
+     * Query the archived battles matching the given query, most recent first.
+     * <p>
+     * The returned future may be completed on a thread other than the main thread (i.e. the
+     * store's own thread) and any dependent stages run on that thread unless an executor is
+     * specified. Archived battles are detached and safe to handle on any thread, but resolving
+     * them into {@link DragonBattleRecord DragonBattleRecords} must be done on the main thread.
+     *
+     * @param query the query
+     *
+     * @return a future completed with the matching battles
+     *
+     * @see EndWorldWrapper#queryDragonBattles(BattleHistoryQuery)
+     */
+    @NotNull
+    public CompletableFuture<@NotNull List<@NotNull ArchivedBattle>> query(@NotNull BattleHistoryQuery query);
+
+    /**
+     * Close this store, waiting for all pending records to be written.
+     */
+    public void close();
+
+}
@@ -0,0 +1,172 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.DragonEggDrop;
+
+/**
+ * A {@link BattleHistoryStore} backed by json files, one per world. Each line of a file is
+ * an {@link ArchivedBattle#toJson() archived battle}. Battles are appended as they are
+ * recorded. Queries scan the files of matched worlds, retaining only as many battles as the
+ * query's limit.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class BattleHistoryStoreJson extends AsyncBattleHistoryStore {
+
+    private static final String FILE_EXTENSION = ".jsonl";
+    private static final Comparator<@NotNull ArchivedBattle> MOST_RECENT_FIRST = Comparator.comparingLong(ArchivedBattle::getDeathTimestamp).reversed();
+
+    private final File directory;
+
+    /**
+     * Construct a new {@link BattleHistoryStoreJson}.
+     *
+     * @param directory the directory in which to store battle history files
+     * @param logger the logger to which errors should be logged
+     */
+    public BattleHistoryStoreJson(@NotNull File directory, @NotNull Logger logger) {
+        super(logger);
+
+        Preconditions.checkArgument(directory != null, "directory must not be null");
+        this.directory = directory;
+    }
+
+    @Override
+    protected void openStore() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create battle history directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        // Terminate lines left partially written by a crash so that they do not corrupt the next appended battle
+        for (File file : files) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                long length = randomAccessFile.length();
+                if (length == 0) {
+                    continue;
+                }
+
+                randomAccessFile.seek(length - 1);
+                if (randomAccessFile.read() != '\n') {
+                    randomAccessFile.write('\n');
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void write(@NotNull List<@NotNull ArchivedBattle> battles) throws IOException {
+        Map<@NotNull UUID, @NotNull List<@NotNull ArchivedBattle>> battlesByWorld = new LinkedHashMap<>();
+        battles.forEach(battle -> battlesByWorld.computeIfAbsent(battle.getWorldUUID(), uuid -> new ArrayList<>()).add(battle));
+
+        for (Map.Entry<@NotNull UUID, @NotNull List<@NotNull ArchivedBattle>> entry : battlesByWorld.entrySet()) {
+            try (FileOutputStream out = new FileOutputStream(getFile(entry.getKey()), true)) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                for (ArchivedBattle battle : entry.getValue()) {
+                    writer.write(battle.toJson().toString());
+                    writer.write('\n');
+                }
+
+                writer.flush();
+                out.getChannel().force(false);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    protected List<@NotNull ArchivedBattle> read(@NotNull BattleHistoryQuery query) throws IOException {
+        File[] files;
+        if (query.getWorldUUID() != null) {
+            files = new File[] { getFile(query.getWorldUUID()) };
+        }
+        else {
+            files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        }
+
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        // Retain only the most recent battles. The head of the queue is the least recent, evicted when the limit is exceeded
+        int limit = query.getLimit();
+        PriorityQueue<@NotNull ArchivedBattle> matches = new PriorityQueue<>(MOST_RECENT_FIRST.reversed());
+
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ArchivedBattle battle = parse(line);
+                    if (battle == null || !query.matches(battle)) {
+                        continue;
+                    }
+
+                    matches.add(battle);
+                    if (limit > 0 && matches.size() > limit) {
+                        matches.poll();
+                    }
+                }
+            }
+        }
+
+        List<@NotNull ArchivedBattle> result = new ArrayList<>(matches);
+        result.sort(MOST_RECENT_FIRST);
+        return result;
+    }
+
+    @Override
+    protected void closeStore() { }
+
+    @NotNull
+    private File getFile(@NotNull UUID worldUUID) {
+        return new File(directory, worldUUID + FILE_EXTENSION);
+    }
+
+    @Nullable
+    private ArchivedBattle parse(@NotNull String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+
+        try {
+            JsonObject object = DragonEggDrop.GSON.fromJson(line, JsonObject.class);
+            return (object != null) ? ArchivedBattle.fromJson(object) : null;
+        } catch (JsonParseException | IllegalArgumentException e) {
+            return null; // Partially written (i.e. the server crashed) or otherwise malformed
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link BattleHistoryStore} backed by an embedded SQL database accessed through JDBC.
+ * SQLite is supported out of the box as its driver is bundled with the server. H2 is
+ * supported if its driver is present on the classpath.
+ * <p>
+ * Battles are inserted in batches, one transaction per batch. Battles are indexed by world,
+ * template and time of death such that queries do not scan the entire history.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class BattleHistoryStoreSQL extends AsyncBattleHistoryStore {
+
+    private static final String TABLE = "ded_battle_history";
+    private static final String COLUMNS = "world_uuid, world_name, template, loot_table, death_timestamp, damage_history";
+
+    private Connection connection; // Only accessed by the store's thread once opened
+
+    private final String url;
+
+    /**
+     * Construct a new {@link BattleHistoryStoreSQL}.
+     *
+     * @param url the JDBC url of the database (i.e. "jdbc:sqlite:plugins/DragonEggDrop/battle_history.db")
+     * @param logger the logger to which errors should be logged
+     */
+    public BattleHistoryStoreSQL(@NotNull String url, @NotNull Logger logger) {
+        super(logger);
+
+        Preconditions.checkArgument(url != null, "url must not be null");
+        this.url = url;
+    }
+
+    @Override
+    protected void openStore() throws IOException {
+        // Drivers bundled with the server are not always registered with the DriverManager
+        if (url.startsWith("jdbc:sqlite:")) {
+            this.loadDriver("org.sqlite.JDBC");
+        }
+        else if (url.startsWith("jdbc:h2:")) {
+            this.loadDriver("org.h2.Driver");
+        }
+
+        try {
+            this.connection = DriverManager.getConnection(url);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                        + "world_uuid CHAR(36) NOT NULL, "
+                        + "world_name VARCHAR(255) NOT NULL, "
+                        + "template VARCHAR(255) NOT NULL, "
+                        + "loot_table VARCHAR(255), "
+                        + "death_timestamp BIGINT NOT NULL, "
+                        + "damage_history BLOB NOT NULL)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + TABLE + "_world ON " + TABLE + " (world_uuid, death_timestamp)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + TABLE + "_template ON " + TABLE + " (template, death_timestamp)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + TABLE + "_time ON " + TABLE + " (death_timestamp)");
+            }
+        } catch (SQLException e) {
+            this.closeStore();
+            throw new IOException("Could not open battle history database " + url, e);
+        }
+    }
+
+    @Override
+    protected void write(@NotNull List<@NotNull ArchivedBattle> battles) throws IOException {
+        try {
+            this.connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + TABLE + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (ArchivedBattle battle : battles) {
+                    statement.setString(1, battle.getWorldUUID().toString());
+                    statement.setString(2, battle.getWorldName());
+                    statement.setString(3, battle.getTemplateId());
+                    statement.setString(4, battle.getLootTableId());
+                    statement.setLong(5, battle.getDeathTimestamp());
+                    statement.setBytes(6, battle.getDamageHistoryData());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+                this.connection.commit();
+            } catch (SQLException e) {
+                this.connection.rollback();
+                throw e;
+            } finally {
+                this.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    protected List<@NotNull ArchivedBattle> read(@NotNull BattleHistoryQuery query) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM ").append(TABLE).append(" WHERE death_timestamp >= ? AND death_timestamp < ?");
+        if (query.getWorldUUID() != null) {
+            sql.append(" AND world_uuid = ?");
+        }
+        if (query.getTemplateId() != null) {
+            sql.append(" AND template = ?");
+        }
+
+        sql.append(" ORDER BY death_timestamp DESC");
+        if (query.getLimit() > 0) {
+            sql.append(" LIMIT ").append(query.getLimit());
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            statement.setLong(parameter++, query.getSince());
+            statement.setLong(parameter++, query.getUntil());
+
+            if (query.getWorldUUID() != null) {
+                statement.setString(parameter++, query.getWorldUUID().toString());
+            }
+            if (query.getTemplateId() != null) {
+                statement.setString(parameter++, query.getTemplateId());
+            }
+
+            List<@NotNull ArchivedBattle> battles = new ArrayList<>();
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    battles.add(new ArchivedBattle(UUID.fromString(result.getString(1)), result.getString(2), result.getString(3), result.getString(4), result.getLong(5), result.getBytes(6)));
+                }
+            }
+
+            return battles;
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    protected void closeStore() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            this.connection.close();
+        } catch (SQLException e) {
+            this.logger.log(Level.WARNING, "Could not close battle history database", e);
+        }
+
+        this.connection = null;
+    }
+
+    private void loadDriver(@NotNull String driverClassName) {
+        try {
+            Class.forName(driverClassName);
+        } catch (ClassNotFoundException e) {
+            // Not present. DriverManager reports a more helpful error if no other driver accepts the url
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.bukkit.entity.EnderDragon.Phase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.dragon.DamageHistory.DamageEntry;
+
+public class DamageHistoryTest {
+
+    private static final UUID ENTITY = new UUID(0L, 42L);
+    private static final UUID ALICE = new UUID(1L, 1L), BOB = new UUID(2L, 2L), CAROL = new UUID(3L, 3L);
+
+    @Test
+    public void testEmptyRoundTrip() {
+        DamageHistory history = DamageHistory.dummy();
+        DamageHistory copy = roundTrip(history);
+
+        Assert.assertEquals(history.getEntityUUID(), copy.getEntityUUID());
+        Assert.assertEquals(-1L, copy.getFirstRecordedTime()); // Zig-zag encoded as a negative value
+        Assert.assertEquals(history.getLastRecordedTime(), copy.getLastRecordedTime());
+        Assert.assertEquals(0, copy.size());
+        Assert.assertEquals(0, copy.uniqueDamagers());
+        Assert.assertNull(copy.getTopDamager());
+        Assert.assertNull(copy.getMostRecentDamage());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        DamageHistory history = DamageHistory.dummy();
+        history.recordDamage(ALICE, 5.0, Phase.CIRCLING);
+        history.recordDamage(BOB, 7.5, Phase.STRAFING);
+        history.recordDamage(ALICE, 4.0, Phase.STRAFING);
+        history.recordDamage(CAROL, 0.1);
+        history.recordDamage(BOB, 12.25, Phase.BREATH_ATTACK);
+
+        DamageHistory copy = roundTrip(history);
+        assertEquivalent(history, copy);
+
+        Assert.assertEquals(BOB, copy.getTopDamager().getSource());
+        Assert.assertEquals(19.75, copy.getTotalDamageFrom(BOB), 0.0);
+        Assert.assertEquals(4.0, copy.getDamageDuring(ALICE, Phase.STRAFING), 0.0);
+        Assert.assertEquals(11.5, copy.getTotalDamageDuring(Phase.STRAFING), 0.0);
+        Assert.assertEquals(0.0, copy.getDamageDuring(CAROL, Phase.CIRCLING), 0.0);
+    }
+
+    @Test
+    public void testBytesAreStable() {
+        DamageHistory history = DamageHistory.dummy();
+        history.recordDamage(ALICE, 3.0, Phase.HOVER);
+        history.recordDamage(BOB, 1.0);
+
+        byte[] bytes = history.toBytes();
+        Assert.assertArrayEquals(bytes, DamageHistory.fromBytes(bytes).toBytes());
+    }
+
+    @Test
+    public void testSpecialDamageValues() {
+        JsonObject object = legacyHistory(
+            entry(ALICE, -0.0, 1000L),
+            entry(BOB, Double.NaN, 2000L),
+            entry(CAROL, 2.0, 3000L)
+        );
+
+        DamageHistory history = DamageHistory.fromJson(object);
+        DamageHistory copy = roundTrip(history);
+
+        // Most recent first. Raw bits are preserved exactly
+        Assert.assertEquals(3, copy.size());
+        Assert.assertEquals(Double.doubleToRawLongBits(2.0), Double.doubleToRawLongBits(copy.getMostRecentDamage(0).getDamage()));
+        Assert.assertEquals(Double.doubleToRawLongBits(Double.NaN), Double.doubleToRawLongBits(copy.getMostRecentDamage(1).getDamage()));
+        Assert.assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(copy.getMostRecentDamage(2).getDamage()));
+
+        Assert.assertTrue(Double.isNaN(copy.getTotalDamageFrom(BOB)));
+        Assert.assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(copy.getTotalDamageFrom(ALICE)));
+    }
+
+    @Test
+    public void testLegacyJsonToBytes() {
+        // Legacy data serialized neither total damage nor timestamps in order
+        JsonObject object = legacyHistory(
+            entry(ALICE, 6.0, 5000L),
+            entry(BOB, 2.0, 9000L),
+            entry(ALICE, 1.5, 4000L), // Earlier than the entry before it. Encoded as a negative delta
+            entry(CAROL, 3.0, 4500L)
+        );
+
+        DamageHistory history = DamageHistory.fromJson(object);
+        Assert.assertEquals(3, history.uniqueDamagers());
+        Assert.assertEquals(7.5, history.getTotalDamageFrom(ALICE), 0.0);
+        Assert.assertEquals(ALICE, history.getTopDamager().getSource());
+
+        DamageHistory copy = roundTrip(history);
+        assertEquivalent(history, copy);
+
+        Assert.assertEquals(4, copy.size());
+        Assert.assertEquals(CAROL, copy.getMostRecentDamage(0).getSource());
+        Assert.assertEquals(ALICE, copy.getMostRecentDamage(3).getSource());
+        Assert.assertEquals(history.toJson(), copy.toJson());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        byte[] bytes = DamageHistory.dummy().toBytes();
+        bytes[0] = Byte.MAX_VALUE;
+        DamageHistory.fromBytes(bytes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedBytes() {
+        DamageHistory history = DamageHistory.dummy();
+        history.recordDamage(ALICE, 3.0);
+
+        byte[] bytes = history.toBytes();
+        DamageHistory.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    private static DamageHistory roundTrip(DamageHistory history) {
+        return DamageHistory.fromBytes(history.toBytes());
+    }
+
+    private static void assertEquivalent(DamageHistory expected, DamageHistory actual) {
+        Assert.assertEquals(expected.getEntityUUID(), actual.getEntityUUID());
+        Assert.assertEquals(expected.getFirstRecordedTime(), actual.getFirstRecordedTime());
+        Assert.assertEquals(expected.getLastRecordedTime(), actual.getLastRecordedTime());
+
+        Assert.assertEquals(expected.uniqueDamagers(), actual.uniqueDamagers());
+        for (int i = 0; i < expected.uniqueDamagers(); i++) {
+            DamageEntry expectedEntry = expected.getTopDamager(i), actualEntry = actual.getTopDamager(i);
+            Assert.assertEquals(expectedEntry.getSource(), actualEntry.getSource());
+            Assert.assertEquals(expectedEntry.getDamage(), actualEntry.getDamage(), 0.0);
+
+            for (Phase phase : Phase.values()) {
+                Assert.assertEquals(expected.getDamageDuring(expectedEntry.getSource(), phase), actual.getDamageDuring(actualEntry.getSource(), phase), 0.0);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int offset = 0; offset < expected.size(); offset++) {
+            DamageEntry expectedEntry = expected.getMostRecentDamage(offset), actualEntry = actual.getMostRecentDamage(offset);
+            Assert.assertEquals(expectedEntry.getSource(), actualEntry.getSource());
+            Assert.assertEquals(Double.doubleToRawLongBits(expectedEntry.getDamage()), Double.doubleToRawLongBits(actualEntry.getDamage()));
+        }
+    }
+
+    private static JsonObject legacyHistory(JsonObject... entries) {
+        JsonArray entriesArray = new JsonArray();
+        for (int i = entries.length - 1; i >= 0; i--) { // Serialized most recent first
+            entriesArray.add(entries[i]);
+        }
+
+        JsonObject object = new JsonObject();
+        object.addProperty("entityUUID", ENTITY.toString());
+        object.add("damageEntries", entriesArray);
+        return object;
+    }
+
+    private static JsonObject entry(UUID source, double damage, long timestamp) {
+        JsonObject object = new JsonObject();
+        object.addProperty("source", source.toString());
+        object.addProperty("damage", damage);
+        object.addProperty("timestamp", timestamp);
+        return object;
+    }
+
+}
@@ -0,0 +1,126 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DamageLogTest {
+
+    @Test
+    public void testBoundedOverwritesOldest() {
+        DamageLog log = new DamageLog(4);
+        for (int i = 0; i < 10; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        Assert.assertEquals(4, log.size());
+        for (int offset = 0; offset < 4; offset++) {
+            assertEntry(log, offset, 9 - offset);
+        }
+    }
+
+    @Test
+    public void testBoundedBeforeFull() {
+        DamageLog log = new DamageLog(4);
+        log.add(source(0), 0, 0L);
+        log.add(source(1), 1, 100L);
+
+        Assert.assertEquals(2, log.size());
+        assertEntry(log, 0, 1);
+        assertEntry(log, 1, 0);
+    }
+
+    @Test
+    public void testUnboundedGrows() {
+        DamageLog log = new DamageLog(0);
+        for (int i = 0; i < 100; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        Assert.assertEquals(100, log.size());
+        for (int offset = 0; offset < 100; offset++) {
+            assertEntry(log, offset, 99 - offset);
+        }
+    }
+
+    @Test
+    public void testUnboundedGrowsWhileWrapped() {
+        DamageLog log = new DamageLog(-1);
+        for (int i = 0; i < 16; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        // Trim the 10 oldest entries so that subsequent entries wrap around to index 0
+        log.discardBefore(1000L);
+        Assert.assertEquals(6, log.size());
+
+        for (int i = 16; i < 26; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        Assert.assertEquals(16, log.size());
+
+        // The log is full and wrapped. Growing must unroll the oldest entry to the front
+        for (int i = 26; i < 40; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        Assert.assertEquals(30, log.size());
+        for (int offset = 0; offset < 30; offset++) {
+            assertEntry(log, offset, 39 - offset);
+        }
+    }
+
+    @Test
+    public void testDiscardBefore() {
+        DamageLog log = new DamageLog(8);
+        for (int i = 0; i < 12; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        log.discardBefore(650L); // Retains entries 7 through 11
+        Assert.assertEquals(5, log.size());
+        assertEntry(log, 0, 11);
+        assertEntry(log, 4, 7);
+
+        log.discardBefore(700L); // Inclusive of the given timestamp
+        Assert.assertEquals(5, log.size());
+
+        log.discardBefore(0L);
+        Assert.assertEquals(5, log.size());
+
+        log.discardBefore(Long.MAX_VALUE);
+        Assert.assertEquals(0, log.size());
+
+        log.add(source(12), 12, 1200L);
+        Assert.assertEquals(1, log.size());
+        assertEntry(log, 0, 12);
+    }
+
+    @Test
+    public void testClear() {
+        DamageLog log = new DamageLog(0);
+        for (int i = 0; i < 20; i++) {
+            log.add(source(i), i, i * 100L);
+        }
+
+        log.clear();
+        Assert.assertEquals(0, log.size());
+
+        log.add(source(20), 20, 2000L);
+        Assert.assertEquals(1, log.size());
+        assertEntry(log, 0, 20);
+    }
+
+    private static UUID source(int entry) {
+        return new UUID(entry, -entry);
+    }
+
+    private static void assertEntry(DamageLog log, int offset, int entry) {
+        Assert.assertEquals(source(entry), log.getSource(offset));
+        Assert.assertEquals(entry, log.getDamage(offset), 0.0);
+        Assert.assertEquals(entry * 100L, log.getTimestamp(offset));
+    }
+
+}
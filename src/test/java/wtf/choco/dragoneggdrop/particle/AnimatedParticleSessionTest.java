@@ -0,0 +1,119 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+
+public class AnimatedParticleSessionTest {
+
+    private static final int TICKS = 120;
+
+    // Runs each task to completion on a new thread before returning
+    private static final Executor WORKER = task -> {
+        Thread thread = new Thread(task, "particle-worker-test");
+        thread.start();
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    };
+
+    @Test
+    public void testAsyncFramesMatchSyncFrames() {
+        ParticleShapeDefinition shape = createShape();
+        Assert.assertFalse("Expected a shape evaluated live", shape.isDeterministic());
+
+        List<String> syncSpawns = new ArrayList<>(), asyncSpawns = new ArrayList<>();
+        AnimatedParticleSession sync = shape.createSession(createWorld(syncSpawns), 10.0, -20.0);
+        AnimatedParticleSession async = shape.createSession(createWorld(asyncSpawns), 10.0, -20.0);
+
+        Assert.assertTrue(async.computeAsynchronously(8));
+        Assert.assertTrue(async.isComputedAsynchronously());
+        async.requestFrames(WORKER);
+
+        int spawns = 0;
+        for (int tick = 0; tick < TICKS; tick++) {
+            sync.tick();
+            async.tick();
+            async.requestFrames(WORKER);
+
+            Assert.assertEquals("Frame differs at tick " + tick, syncSpawns, asyncSpawns);
+            Assert.assertEquals("Location differs at tick " + tick, sync.getCurrentLocation().getY(), async.getCurrentLocation().getY(), 0.0);
+
+            spawns += syncSpawns.size();
+            syncSpawns.clear();
+            asyncSpawns.clear();
+        }
+
+        Assert.assertTrue(spawns > 0);
+    }
+
+    @Test
+    public void testComputeAsynchronouslyAfterTick() {
+        List<String> spawns = new ArrayList<>();
+        AnimatedParticleSession session = createShape().createSession(createWorld(spawns), 0.0, 0.0);
+
+        session.tick();
+        session.tick();
+        Assert.assertFalse(spawns.isEmpty());
+
+        Assert.assertFalse(session.computeAsynchronously(8));
+        Assert.assertFalse(session.isComputedAsynchronously());
+    }
+
+    private ParticleShapeDefinition createShape() {
+        // Non-deterministic expressions are evaluated live rather than replayed from keyframes
+        ConditionalEquationData early = createData("x / 10 + sin(theta) * t / 4", "cos(theta) * t / 4", Particle.FLAME, 4, 1);
+        early.addCondition(context -> context.getVariables().getT() < 20);
+
+        ConditionalEquationData late = createData("sin(theta) * (y / 20)", "z / 10 + cos(theta) * 2", Particle.PORTAL, 2, 3);
+        return new ParticleShapeDefinition("test", 80.0, Arrays.asList(early, late));
+    }
+
+    private ConditionalEquationData createData(String x, String z, Particle particle, int streams, int frameIntervalTicks) {
+        ConditionalEquationData data = new ConditionalEquationData(ExpressionUtils.parseExpression(x), ExpressionUtils.parseExpression(z));
+        data.particle = particle;
+        data.particleAmount = 1;
+        data.particleStreams = streams;
+        data.speedMultiplier = 0.5;
+        data.frameIntervalTicks = frameIntervalTicks;
+        data.thetaIncrement = 7.5;
+        return data;
+    }
+
+    private World createWorld(List<String> spawns) {
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "spawnParticle":
+                    Location location = (Location) args[1];
+                    spawns.add(args[0] + " " + location.getX() + " " + location.getY() + " " + location.getZ() + " " + args[2]);
+                    return null;
+                case "getName":
+                    return "world_the_end";
+                case "getPlayers":
+                    return Collections.emptyList();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,160 @@
+package wtf.choco.dragoneggdrop.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryUtilsTest {
+
+    private static final long[] LONGS = { 0L, 1L, -1L, 63L, -64L, 64L, 127L, 128L, -129L, 300L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+
+    @Test
+    public void testZigZag() {
+        Assert.assertEquals(0L, BinaryUtils.zigZag(0L));
+        Assert.assertEquals(1L, BinaryUtils.zigZag(-1L));
+        Assert.assertEquals(2L, BinaryUtils.zigZag(1L));
+        Assert.assertEquals(3L, BinaryUtils.zigZag(-2L));
+        Assert.assertEquals(-1L, BinaryUtils.zigZag(Long.MIN_VALUE)); // All bits set
+
+        for (long value : LONGS) {
+            Assert.assertEquals(value, BinaryUtils.unZigZag(BinaryUtils.zigZag(value)));
+        }
+    }
+
+    @Test
+    public void testVarLongRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (long value : LONGS) {
+                BinaryUtils.writeVarLong(out, value);
+                BinaryUtils.writeVarLong(out, BinaryUtils.zigZag(value));
+            }
+        }
+
+        try (DataInputStream in = input(bytes.toByteArray())) {
+            for (long value : LONGS) {
+                Assert.assertEquals(value, BinaryUtils.readVarLong(in));
+                Assert.assertEquals(value, BinaryUtils.unZigZag(BinaryUtils.readVarLong(in)));
+            }
+
+            Assert.assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    public void testVarLongSize() throws IOException {
+        Assert.assertEquals(1, varLongSize(0L));
+        Assert.assertEquals(1, varLongSize(127L));
+        Assert.assertEquals(2, varLongSize(128L));
+        Assert.assertEquals(1, varLongSize(BinaryUtils.zigZag(-64L)));
+        Assert.assertEquals(10, varLongSize(-1L));
+    }
+
+    @Test
+    public void testVarIntRoundTrip() throws IOException {
+        int[] values = { 0, 1, 127, 128, 16384, Integer.MAX_VALUE };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (int value : values) {
+                BinaryUtils.writeVarInt(out, value);
+            }
+        }
+
+        try (DataInputStream in = input(bytes.toByteArray())) {
+            for (int value : values) {
+                Assert.assertEquals(value, BinaryUtils.readVarInt(in));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testVarIntRejectsNegative() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryUtils.writeVarInt(out, -1);
+        }
+
+        BinaryUtils.readVarInt(input(bytes.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedVarLong() throws IOException {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80); // Continuation bit is never cleared
+
+        BinaryUtils.readVarLong(input(bytes));
+    }
+
+    @Test
+    public void testDeltaDoubleRoundTrip() throws IOException {
+        double[] values = { 0.0, -0.0, 1.0, 1.5, -2.25, 10.0, 10.000001, Double.NaN, Double.longBitsToDouble(0x7FF8000000000001L), Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            long previous = 0;
+            for (double value : values) {
+                previous = BinaryUtils.writeDeltaDouble(out, value, previous);
+                Assert.assertEquals(Double.doubleToRawLongBits(value), previous);
+            }
+        }
+
+        try (DataInputStream in = input(bytes.toByteArray())) {
+            long previous = 0;
+            for (double value : values) {
+                previous = BinaryUtils.readDeltaDouble(in, previous);
+
+                // Compare raw bits such that -0.0 and NaN payloads are preserved exactly
+                Assert.assertEquals(Double.doubleToRawLongBits(value), previous);
+            }
+
+            Assert.assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    public void testDeltaDoubleRepeatedValue() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            long previous = BinaryUtils.writeDeltaDouble(out, 7.5, 0);
+            int written = out.size();
+
+            BinaryUtils.writeDeltaDouble(out, 7.5, previous);
+            Assert.assertEquals(1, out.size() - written);
+        }
+    }
+
+    @Test
+    public void testUUIDRoundTrip() throws IOException {
+        UUID uuid = UUID.randomUUID();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryUtils.writeUUID(out, uuid);
+        }
+
+        Assert.assertEquals(16, bytes.size());
+        Assert.assertEquals(uuid, BinaryUtils.readUUID(input(bytes.toByteArray())));
+    }
+
+    private static int varLongSize(long value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryUtils.writeVarLong(out, value);
+        }
+
+        return bytes.size();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+}
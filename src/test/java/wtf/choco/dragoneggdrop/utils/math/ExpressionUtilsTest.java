@@ -0,0 +1,145 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+public class ExpressionUtilsTest {
+
+    private static final double EPSILON = 1.0E-9;
+
+    private final ParticleVariables variables = new ParticleVariables(3.0, 5.0, 7.0, 2.0, 90.0);
+
+    @Test
+    public void testOperatorPrecedence() {
+        Assert.assertEquals(14.0, evaluate("2 + 3 * 4"), EPSILON);
+        Assert.assertEquals(20.0, evaluate("(2 + 3) * 4"), EPSILON);
+        Assert.assertEquals(3.0, evaluate("8 - 3 - 2"), EPSILON);
+        Assert.assertEquals(1.0, evaluate("8 / 4 / 2"), EPSILON);
+        Assert.assertEquals(2.5, evaluate("10 / 4"), EPSILON);
+        Assert.assertEquals(18.0, evaluate("2 * 3 ^ 2"), EPSILON);
+        Assert.assertEquals(0.5, evaluate(".5"), EPSILON);
+    }
+
+    @Test
+    public void testVariables() {
+        Assert.assertEquals(3.0 + 2.0 * 90.0, evaluate("x + t * theta"), EPSILON);
+        Assert.assertEquals(5.0 * 7.0, evaluate("y * z"), EPSILON);
+        Assert.assertEquals(9.0, evaluate("x ^ t"), EPSILON);
+    }
+
+    @Test
+    public void testUnaryMinus() {
+        Assert.assertEquals(-3.0, evaluate("-x"), EPSILON);
+        Assert.assertEquals(3.0, evaluate("--x"), EPSILON);
+        Assert.assertEquals(-6.0, evaluate("2 * -x"), EPSILON);
+        Assert.assertEquals(-3.0, evaluate("-(2 + 1)"), EPSILON);
+        Assert.assertEquals(-1.0, evaluate("2 - x"), EPSILON);
+        Assert.assertEquals(3.0, evaluate("+x"), EPSILON);
+    }
+
+    @Test
+    public void testBuiltinFunctions() {
+        Assert.assertEquals(4.0, evaluate("sqrt(16)"), EPSILON);
+        Assert.assertEquals(3.0, evaluate("abs(-x)"), EPSILON);
+        Assert.assertEquals(2.0, evaluate("log(100)"), EPSILON);
+        Assert.assertTrue(Double.isNaN(evaluate("log(0)")));
+        Assert.assertEquals(1.0, evaluate("sin(theta)"), EPSILON);
+        Assert.assertEquals(0.0, evaluate("cos(theta)"), EPSILON);
+        Assert.assertEquals(Math.PI, evaluate("rad(180)"), EPSILON);
+        Assert.assertEquals(180.0, evaluate("deg(rad(180))"), EPSILON);
+    }
+
+    @Test
+    public void testConstantFolding() {
+        CompiledExpression folded = compile("2 * 3 + sqrt(16) - -1");
+        Assert.assertArrayEquals(new int[] { CompiledExpression.OP_CONSTANT }, folded.getInstructions());
+        Assert.assertArrayEquals(new double[] { 11.0 }, folded.getConstants(), EPSILON);
+        Assert.assertEquals(11.0, folded.evaluate(variables), EPSILON);
+
+        // Only the constant sub-expression is folded
+        CompiledExpression partial = compile("x * (2 + 3)");
+        Assert.assertEquals(3, partial.getInstructions().length);
+        Assert.assertArrayEquals(new double[] { 5.0 }, partial.getConstants(), EPSILON);
+        Assert.assertEquals(15.0, partial.evaluate(variables), EPSILON);
+
+        CompiledExpression negated = compile("-(4 / 2)");
+        Assert.assertArrayEquals(new double[] { -2.0 }, negated.getConstants(), EPSILON);
+    }
+
+    @Test
+    public void testPostfixProgram() {
+        CompiledExpression program = compile("x + t * 2");
+        int[] instructions = program.getInstructions();
+
+        Assert.assertEquals(5, instructions.length);
+        Assert.assertEquals(CompiledExpression.OP_VARIABLE | (ParticleVariables.SLOT_X << CompiledExpression.OPERAND_SHIFT), instructions[0]);
+        Assert.assertEquals(CompiledExpression.OP_VARIABLE | (ParticleVariables.SLOT_T << CompiledExpression.OPERAND_SHIFT), instructions[1]);
+        Assert.assertEquals(CompiledExpression.OP_CONSTANT, instructions[2]);
+        Assert.assertEquals(CompiledExpression.OP_MULTIPLY, instructions[3]);
+        Assert.assertEquals(CompiledExpression.OP_ADD, instructions[4]);
+    }
+
+    @Test
+    public void testInjectedOperator() {
+        ExpressionUtils.injectMathematicalOperator("triple", value -> value * 3);
+
+        CompiledExpression folded = compile("triple(2)");
+        Assert.assertArrayEquals(new double[] { 6.0 }, folded.getConstants(), EPSILON);
+
+        CompiledExpression applied = compile("triple(x) + 1");
+        Assert.assertEquals(1, applied.getFunctions().length);
+        Assert.assertEquals(10.0, applied.evaluate(variables), EPSILON);
+    }
+
+    @Test
+    public void testDeterminism() {
+        Assert.assertTrue(compile("t * theta + 2").isDeterministic());
+        Assert.assertFalse(compile("x + t").isDeterministic());
+        Assert.assertFalse(compile("random * t").isDeterministic());
+    }
+
+    @Test
+    public void testRandomIsNotFolded() {
+        CompiledExpression program = compile("random * 0 + random");
+        Assert.assertTrue(program.getInstructions().length > 1);
+
+        double value = program.evaluate(variables);
+        Assert.assertTrue(value >= 0.0 && value < 1.0);
+    }
+
+    @Test
+    public void testRepeatedEvaluation() {
+        // Expressions of different stack depths share the variables' operand stack
+        MathExpression shallow = ExpressionUtils.parseExpression("x + t");
+        MathExpression deep = ExpressionUtils.parseExpression("x + (y * (z - (t / (theta - x))))");
+
+        double expectedDeep = 3.0 + (5.0 * (7.0 - (2.0 / (90.0 - 3.0))));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(5.0, shallow.evaluate(variables), EPSILON);
+            Assert.assertEquals(expectedDeep, deep.evaluate(variables), EPSILON);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVariable() {
+        ExpressionUtils.parseExpression("x + unknown");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnexpectedCharacter() {
+        ExpressionUtils.parseExpression("x + 2)");
+    }
+
+    private double evaluate(String expression) {
+        return ExpressionUtils.parseExpression(expression).evaluate(variables);
+    }
+
+    private CompiledExpression compile(String expression) {
+        MathExpression parsed = ExpressionUtils.parseExpression(expression);
+        Assert.assertTrue("Expected the interpreted backend", parsed instanceof CompiledExpression);
+        return (CompiledExpression) parsed;
+    }
+
+}
@@ -0,0 +1,123 @@
+package wtf.choco.dragoneggdrop.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistoryRingTest {
+
+    private final List<Integer> evicted = new ArrayList<>();
+
+    @Test
+    public void testPushEvictsOldest() {
+        HistoryRing<Integer> ring = new HistoryRing<>(3, evicted::add);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNull(ring.push(i));
+        }
+
+        Assert.assertTrue(ring.isFull());
+        Assert.assertEquals(Integer.valueOf(0), ring.push(3));
+        Assert.assertEquals(Integer.valueOf(1), ring.push(4));
+
+        Assert.assertEquals(Arrays.asList(0, 1), evicted);
+        Assert.assertEquals(Arrays.asList(4, 3, 2), ring.snapshot());
+        Assert.assertEquals(Integer.valueOf(4), ring.get(0));
+        Assert.assertEquals(Integer.valueOf(2), ring.get(2));
+        Assert.assertNull(ring.get(3));
+        Assert.assertNull(ring.get(-1));
+    }
+
+    @Test
+    public void testZeroCapacity() {
+        HistoryRing<Integer> ring = new HistoryRing<>(0, evicted::add);
+
+        // The pushed element is never held, therefore it is not reported as evicted
+        Assert.assertNull(ring.push(1));
+        Assert.assertFalse(ring.offerLast(2));
+
+        Assert.assertTrue(evicted.isEmpty());
+        Assert.assertEquals(0, ring.size());
+        Assert.assertNull(ring.get(0));
+        Assert.assertEquals(Collections.emptyList(), ring.snapshot());
+    }
+
+    @Test
+    public void testSnapshotPublishedOnModification() {
+        HistoryRing<Integer> ring = new HistoryRing<>(4, evicted::add);
+        Assert.assertEquals(Collections.emptyList(), ring.snapshot());
+
+        ring.push(1);
+        ring.push(2);
+        List<Integer> snapshot = ring.snapshot();
+        Assert.assertSame(snapshot, ring.snapshot());
+
+        ring.push(3);
+        Assert.assertEquals(Arrays.asList(2, 1), snapshot); // Unaffected by later modifications
+        Assert.assertEquals(Arrays.asList(3, 2, 1), ring.snapshot());
+
+        ring.offerLast(0);
+        Assert.assertEquals(Arrays.asList(3, 2, 1, 0), ring.snapshot());
+
+        ring.remove(1);
+        Assert.assertEquals(Arrays.asList(3, 1, 0), ring.snapshot());
+
+        ring.resize(2);
+        Assert.assertEquals(Arrays.asList(3, 1), ring.snapshot());
+    }
+
+    @Test
+    public void testOfferLast() {
+        HistoryRing<Integer> ring = new HistoryRing<>(3, evicted::add);
+        ring.push(2);
+
+        Assert.assertTrue(ring.offerLast(1));
+        Assert.assertTrue(ring.offerLast(0));
+        Assert.assertFalse(ring.offerLast(-1));
+
+        Assert.assertTrue(evicted.isEmpty());
+        Assert.assertEquals(Arrays.asList(2, 1, 0), ring.snapshot());
+    }
+
+    @Test
+    public void testRemoveWhileWrapped() {
+        HistoryRing<Integer> ring = new HistoryRing<>(4, evicted::add);
+        for (int i = 0; i < 6; i++) {
+            ring.push(i);
+        }
+
+        ring.remove(0);
+        ring.remove(2);
+        Assert.assertEquals(Arrays.asList(4, 3), ring.snapshot());
+        Assert.assertEquals(Arrays.asList(0, 1), evicted); // Removed elements are not evicted
+
+        ring.push(6);
+        Assert.assertEquals(Arrays.asList(6, 4, 3), ring.snapshot());
+    }
+
+    @Test
+    public void testResize() {
+        HistoryRing<Integer> ring = new HistoryRing<>(4, evicted::add);
+        for (int i = 0; i < 6; i++) {
+            ring.push(i);
+        }
+
+        ring.resize(2); // Oldest first
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), evicted);
+        Assert.assertEquals(Arrays.asList(5, 4), ring.snapshot());
+
+        ring.resize(3);
+        Assert.assertEquals(3, ring.getCapacity());
+        Assert.assertNull(ring.push(6));
+        Assert.assertEquals(Integer.valueOf(4), ring.push(7));
+        Assert.assertEquals(Arrays.asList(7, 6, 5), ring.snapshot());
+
+        ring.resize(0);
+        Assert.assertEquals(0, ring.size());
+        Assert.assertEquals(Collections.emptyList(), ring.snapshot());
+    }
+
+}
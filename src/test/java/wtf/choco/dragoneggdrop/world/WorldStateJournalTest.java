@@ -0,0 +1,289 @@
+package wtf.choco.dragoneggdrop.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.World;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.world.WorldStateSnapshot.WorldState;
+import wtf.choco.dragoneggdrop.world.history.ArchivedBattle;
+
+public class WorldStateJournalTest {
+
+    private static final List<String> WORLDS = Arrays.asList("world", "world_a", "world_b");
+
+    private File file;
+    private WorldStateJournal journal;
+    private final List<String> resolvedWorlds = new ArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        this.file = File.createTempFile("world-state-journal", ".jsonl");
+        this.journal = new WorldStateJournal(file, () -> WorldStateSnapshot.capture(Collections.emptyList()), Logger.getLogger("WorldStateJournalTest"));
+    }
+
+    @After
+    public void teardown() {
+        this.file.delete();
+    }
+
+    @Test
+    public void testMissingJournal() {
+        Assert.assertTrue(file.delete());
+        Assert.assertNull(replay(5));
+    }
+
+    @Test
+    public void testEmptyJournal() throws IOException {
+        write("", "");
+        Assert.assertEquals(0, replay(5).getWorldCount());
+    }
+
+    @Test
+    public void testSnapshotResetsState() throws IOException {
+        write(
+            "{\"type\":\"activeTemplate\",\"world\":\"world_a\",\"activeTemplate\":\"red\"}",
+            "{\"type\":\"snapshot\",\"data\":{\"world_b\":{\"activeTemplate\":\"blue\",\"lootTableOverride\":\"rare\",\"respawnStartTime\":1000,\"respawnDuration\":5000}}}",
+            "{\"type\":\"activeTemplate\",\"world\":\"world_b\",\"activeTemplate\":\"green\"}"
+        );
+
+        WorldStateSnapshot snapshot = replay(5);
+        Assert.assertEquals(1, snapshot.getWorldCount());
+        Assert.assertNull(world(snapshot, "world_a"));
+
+        WorldState world = world(snapshot, "world_b");
+        Assert.assertEquals(uuid("world_b"), world.getWorldUUID());
+        Assert.assertEquals("green", world.getActiveTemplate());
+        Assert.assertEquals("rare", world.getLootTableOverride());
+        Assert.assertNull(world.getRespawnTemplate());
+        Assert.assertTrue(world.isRespawnInProgress());
+        Assert.assertEquals(1000L, world.getRespawnStartTime());
+        Assert.assertEquals(5000L, world.getRespawnDuration());
+    }
+
+    @Test
+    public void testRespawnAndRespawnStop() throws IOException {
+        write(
+            "{\"type\":\"respawn\",\"world\":\"world\",\"respawnStartTime\":1000,\"respawnDuration\":300000,\"respawnTemplate\":\"red\",\"lootTableOverride\":\"rare\"}",
+            "{\"type\":\"respawn\",\"world\":\"world\",\"respawnStartTime\":2000,\"respawnDuration\":60000}" // Timings changed. Template unchanged
+        );
+
+        WorldState world = world(replay(5), "world");
+        Assert.assertTrue(world.isRespawnInProgress());
+        Assert.assertEquals(2000L, world.getRespawnStartTime());
+        Assert.assertEquals(60000L, world.getRespawnDuration());
+        Assert.assertEquals("red", world.getRespawnTemplate());
+        Assert.assertEquals("rare", world.getLootTableOverride());
+
+        append("{\"type\":\"respawnStop\",\"world\":\"world\"}");
+
+        world = world(replay(5), "world");
+        Assert.assertFalse(world.isRespawnInProgress());
+        Assert.assertEquals(-1L, world.getRespawnStartTime());
+        Assert.assertEquals(-1L, world.getRespawnDuration());
+        Assert.assertEquals("red", world.getRespawnTemplate());
+        Assert.assertEquals("rare", world.getLootTableOverride());
+    }
+
+    @Test
+    public void testAbsentIdClears() throws IOException {
+        write(
+            "{\"type\":\"snapshot\",\"data\":{\"world\":{\"activeTemplate\":\"red\",\"respawnTemplate\":\"blue\",\"lootTableOverride\":\"rare\"}}}",
+            "{\"type\":\"activeTemplate\",\"world\":\"world\"}",
+            "{\"type\":\"lootTableOverride\",\"world\":\"world\"}"
+        );
+
+        WorldState world = world(replay(5), "world");
+        Assert.assertNull(world.getActiveTemplate());
+        Assert.assertNull(world.getLootTableOverride());
+        Assert.assertEquals("blue", world.getRespawnTemplate());
+
+        append("{\"type\":\"respawnTemplate\",\"world\":\"world\"}");
+        Assert.assertNull(world(replay(5), "world").getRespawnTemplate());
+    }
+
+    @Test
+    public void testRemoveDiscardsState() throws IOException {
+        write(
+            "{\"type\":\"snapshot\",\"data\":{\"world_a\":{\"activeTemplate\":\"red\",\"history\":[" + record("first") + "]},\"world_b\":{\"activeTemplate\":\"blue\"}}}",
+            "{\"type\":\"respawn\",\"world\":\"world_a\",\"respawnStartTime\":1000,\"respawnDuration\":5000}",
+            "{\"type\":\"remove\",\"world\":\"world_a\"}"
+        );
+
+        WorldStateSnapshot snapshot = replay(5);
+        Assert.assertEquals(1, snapshot.getWorldCount());
+        Assert.assertNull(world(snapshot, "world_a"));
+        Assert.assertEquals("blue", world(snapshot, "world_b").getActiveTemplate());
+
+        // State journalled after the removal starts afresh
+        append("{\"type\":\"lootTableOverride\",\"world\":\"world_a\",\"lootTableOverride\":\"rare\"}");
+
+        WorldState world = world(replay(5), "world_a");
+        Assert.assertEquals("rare", world.getLootTableOverride());
+        Assert.assertNull(world.getActiveTemplate());
+        Assert.assertFalse(world.isRespawnInProgress());
+        Assert.assertTrue(world.getHistory().isEmpty());
+    }
+
+    @Test
+    public void testHistoryCappedAtMaxHistorySize() throws IOException {
+        write(
+            "{\"type\":\"snapshot\",\"data\":{\"world\":{\"history\":[" + record("second") + "," + record("first") + "]}}}",
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":" + record("third") + "}",
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":" + record("fourth") + "}",
+            "{\"type\":\"battle\",\"world\":\"world\"}", // No record. Ignored
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":" + record("fifth") + "}"
+        );
+
+        // Most recent first
+        Assert.assertEquals(Arrays.asList("fifth", "fourth"), templates(replay(2)));
+        Assert.assertEquals(Arrays.asList("fifth", "fourth", "third", "second", "first"), templates(replay(10)));
+        Assert.assertEquals(Collections.singletonList("fifth"), templates(replay(1)));
+        Assert.assertEquals(Collections.emptyList(), templates(replay(0)));
+
+        ArchivedBattle battle = world(replay(1), "world").getHistory().get(0);
+        Assert.assertEquals(uuid("world"), battle.getWorldUUID());
+        Assert.assertEquals("world", battle.getWorldName());
+        Assert.assertEquals(1L, battle.getDeathTimestamp());
+    }
+
+    @Test
+    public void testSnapshotHistoryCappedAtMaxHistorySize() throws IOException {
+        write("{\"type\":\"snapshot\",\"data\":{\"world\":{\"history\":[" + record("third") + "," + record("second") + "," + record("first") + "]}}}");
+
+        Assert.assertEquals(Arrays.asList("third", "second"), templates(replay(2)));
+    }
+
+    @Test
+    public void testMalformedBattleDiscarded() throws IOException {
+        write(
+            "{\"type\":\"snapshot\",\"data\":{\"world\":{\"history\":[{\"deathTimestamp\":1}," + record("first") + ",5]}}}",
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":{\"lootTable\":\"rare\"}}", // No template
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":" + record("second") + "}"
+        );
+
+        Assert.assertEquals(Arrays.asList("second", "first"), templates(replay(5)));
+    }
+
+    @Test
+    public void testTornTrailingLine() throws IOException {
+        write(
+            "{\"type\":\"activeTemplate\",\"world\":\"world\",\"activeTemplate\":\"red\"}",
+            "",
+            "{\"type\":\"battle\",\"world\":\"world\",\"record\":" + record("first") + "}"
+        );
+
+        // The server crashed while the last entry was being written
+        Files.write(file.toPath(), "{\"type\":\"activeTemplate\",\"world\":\"world\",\"activeTem".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        WorldStateSnapshot snapshot = replay(5);
+        Assert.assertEquals("red", world(snapshot, "world").getActiveTemplate());
+        Assert.assertEquals(Collections.singletonList("first"), templates(snapshot));
+    }
+
+    @Test
+    public void testTornSnapshotLine() throws IOException {
+        write("{\"type\":\"activeTemplate\",\"world\":\"world\",\"activeTemplate\":\"red\"}");
+
+        // A partially written snapshot must not reset the state that precedes it
+        Files.write(file.toPath(), "{\"type\":\"snapshot\",\"data\":{\"world_a\":{\"activeTemplate\":\"bl".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        WorldStateSnapshot snapshot = replay(5);
+        Assert.assertEquals(1, snapshot.getWorldCount());
+        Assert.assertEquals("red", world(snapshot, "world").getActiveTemplate());
+    }
+
+    @Test
+    public void testUnresolvedWorldsSkipped() throws IOException {
+        write(
+            "{\"type\":\"snapshot\",\"data\":{\"unknown\":{\"activeTemplate\":\"red\",\"history\":[" + record("first") + "]},\"world\":{\"activeTemplate\":\"blue\"}}}",
+            "{\"type\":\"activeTemplate\",\"world\":\"unknown\",\"activeTemplate\":\"green\"}",
+            "{\"type\":\"battle\",\"world\":\"unknown\",\"record\":" + record("second") + "}"
+        );
+
+        WorldStateSnapshot snapshot = replay(5);
+        Assert.assertEquals(1, snapshot.getWorldCount());
+        Assert.assertEquals("blue", world(snapshot, "world").getActiveTemplate());
+
+        // Each world is resolved at most once
+        Assert.assertEquals(Arrays.asList("unknown", "world"), resolvedWorlds);
+    }
+
+    @Test
+    public void testEntriesWithoutWorldIgnored() throws IOException {
+        write(
+            "{\"type\":\"activeTemplate\",\"activeTemplate\":\"red\"}",
+            "{\"world\":\"world\"}"
+        );
+
+        Assert.assertEquals(0, replay(5).getWorldCount());
+    }
+
+    private WorldStateSnapshot replay(int maxHistorySize) {
+        this.resolvedWorlds.clear();
+        return journal.replay(maxHistorySize, worldName -> {
+            this.resolvedWorlds.add(worldName);
+            return WORLDS.contains(worldName) ? createWorld(worldName) : null;
+        });
+    }
+
+    private void write(String... lines) throws IOException {
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private void append(String line) throws IOException {
+        Files.write(file.toPath(), Collections.singletonList(line), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private static String record(String template) {
+        return "{\"template\":\"" + template + "\",\"damageHistoryData\":\"AA==\",\"deathTimestamp\":1}";
+    }
+
+    private static WorldState world(WorldStateSnapshot snapshot, String name) {
+        for (WorldState world : snapshot.getWorlds()) {
+            if (world.getWorldName().equals(name)) {
+                return world;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<String> templates(WorldStateSnapshot snapshot) {
+        List<String> templates = new ArrayList<>();
+        world(snapshot, "world").getHistory().forEach(battle -> templates.add(battle.getTemplateId()));
+        return templates;
+    }
+
+    private static UUID uuid(String worldName) {
+        return UUID.nameUUIDFromBytes(worldName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static World createWorld(String name) {
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUID":
+                    return uuid(name);
+                default:
+                    return null;
+            }
+        });
+    }
+
+}
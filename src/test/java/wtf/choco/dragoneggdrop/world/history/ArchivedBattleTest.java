@@ -0,0 +1,97 @@
+package wtf.choco.dragoneggdrop.world.history;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.dragon.DamageHistory;
+import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
+import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
+import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
+
+public class ArchivedBattleTest {
+
+    private static final UUID WORLD_UUID = new UUID(0L, 7L);
+    private static final String WORLD_NAME = "world_the_end";
+
+    @BeforeClass
+    public static void setupServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        // No worlds are loaded
+        Bukkit.setServer((Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class }, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == Logger.class) {
+                return Logger.getLogger("ArchivedBattleTest");
+            }
+            else if (returnType == String.class) {
+                return "test";
+            }
+            else if (returnType == boolean.class) {
+                return false;
+            }
+
+            return null;
+        }));
+    }
+
+    @Test
+    public void testArchiveFromUnloadedWorld() throws ReflectiveOperationException {
+        EndWorldWrapper world = createUnloadedWrapper();
+        Assert.assertThrows(IllegalStateException.class, world::getWorld);
+
+        DragonBattleRecord record = new DragonBattleRecord(world, DragonTemplate.builder("red").build(), DamageHistory.dummy(), 1000L);
+        ArchivedBattle battle = ArchivedBattle.of(record);
+
+        Assert.assertEquals(WORLD_UUID, battle.getWorldUUID());
+        Assert.assertEquals(WORLD_NAME, battle.getWorldName());
+        Assert.assertEquals("red", battle.getTemplateId());
+        Assert.assertNull(battle.getLootTableId());
+        Assert.assertEquals(1000L, battle.getDeathTimestamp());
+        Assert.assertArrayEquals(record.getDamageHistory().toBytes(), battle.getDamageHistoryData());
+    }
+
+    @Test
+    public void testFromRecordJsonInUnloadedWorld() throws ReflectiveOperationException {
+        EndWorldWrapper world = createUnloadedWrapper();
+
+        DragonBattleRecord record = new DragonBattleRecord(world, DragonTemplate.builder("red").build(), DamageHistory.dummy(), 1000L);
+        ArchivedBattle battle = ArchivedBattle.fromRecordJson(world, record.toJson());
+
+        Assert.assertEquals(WORLD_UUID, battle.getWorldUUID());
+        Assert.assertEquals(WORLD_NAME, battle.getWorldName());
+        Assert.assertEquals("red", battle.getTemplateId());
+        Assert.assertEquals(1000L, battle.getDeathTimestamp());
+    }
+
+    // Wrappers cannot be constructed without a running server. Allocate one as it is left once its world has been unloaded and collected
+    private static EndWorldWrapper createUnloadedWrapper() throws ReflectiveOperationException {
+        Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+
+        Object unsafe = unsafeField.get(null);
+        EndWorldWrapper wrapper = (EndWorldWrapper) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, EndWorldWrapper.class);
+
+        setField(wrapper, "worldUUID", WORLD_UUID);
+        setField(wrapper, "worldName", WORLD_NAME);
+        setField(wrapper, "worldReference", new WeakReference<>(null));
+        return wrapper;
+    }
+
+    private static void setField(EndWorldWrapper wrapper, String name, Object value) throws ReflectiveOperationException {
+        Field field = EndWorldWrapper.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(wrapper, value);
+    }
+
+}